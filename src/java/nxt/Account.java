@@ -26,6 +26,7 @@ import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.DbUtils;
 import nxt.db.DerivedDbTable;
+import nxt.db.TransactionalDb;
 import nxt.db.VersionedEntityDbTable;
 import nxt.db.VersionedPersistentDbTable;
 import nxt.util.Convert;
@@ -41,10 +42,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 @SuppressWarnings({"UnusedDeclaration", "SuspiciousNameCombination"})
 public final class Account {
@@ -456,6 +463,318 @@ public final class Account {
 
     }
 
+    /**
+     * In-memory copy of the account_guaranteed_balance table.  The additions made within the last
+     * GUARANTEED_BALANCE_CONFIRMATIONS blocks are also summed per account, so the guaranteed balance at the
+     * current height can be computed without scanning the additions.
+     * <p>
+     * Changes made within a database transaction are kept for the thread processing the transaction and are
+     * applied to the index when the transaction is committed, or dropped if it is rolled back.  The index is
+     * loaded from the table when it is first used by a thread without pending changes, and the table is queried
+     * directly until then.
+     */
+    private static final class GuaranteedBalances implements TransactionalDb.TransactionCallback {
+
+        private final Map<Long, NavigableMap<Integer, Long>> accountAdditions = new HashMap<>();
+        private final NavigableMap<Integer, Set<Long>> heightAccounts = new TreeMap<>();
+        private final Map<Long, Long> windowAdditions = new HashMap<>();
+        private final ThreadLocal<Changes> pendingChanges = new ThreadLocal<>();
+        private int windowHeight = -1;
+        private boolean loaded;
+
+        /**
+         * Return the additions for an account at heights greater than fromHeight and not greater than toHeight
+         */
+        long getAdditions(long accountId, int fromHeight, int toHeight) {
+            Changes changes = pendingChanges.get();
+            synchronized (this) {
+                if (!isLoaded(changes)) {
+                    return selectAdditions(accountId, fromHeight, toHeight);
+                }
+                long total = 0;
+                int height = Nxt.getBlockchain().getHeight();
+                if (toHeight >= height && fromHeight == height - Constants.GUARANTEED_BALANCE_CONFIRMATIONS
+                        && (changes == null || !changes.removesHeights())) {
+                    moveWindow(height);
+                    total = windowAdditions.getOrDefault(accountId, 0L);
+                } else {
+                    NavigableMap<Integer, Long> additions = accountAdditions.get(accountId);
+                    if (additions != null) {
+                        for (Map.Entry<Integer, Long> entry : additions.subMap(fromHeight, false, toHeight, true).entrySet()) {
+                            if (changes == null || changes.isVisible(entry.getKey())) {
+                                total = Math.addExact(total, entry.getValue());
+                            }
+                        }
+                    }
+                }
+                if (changes != null) {
+                    NavigableMap<Integer, Long> pendingAdditions = changes.additions.get(accountId);
+                    if (pendingAdditions != null) {
+                        for (Map.Entry<Integer, Long> entry : pendingAdditions.subMap(fromHeight, false, toHeight, true).entrySet()) {
+                            total = Math.addExact(total, entry.getValue() - getCommittedAdditions(accountId, entry.getKey(), changes));
+                        }
+                    }
+                }
+                return total;
+            }
+        }
+
+        /**
+         * Add to the additions of an account at a height and return the new additions at that height
+         */
+        long add(long accountId, long amountNQT, int height) {
+            Changes changes = pendingChanges.get();
+            synchronized (this) {
+                long additions;
+                NavigableMap<Integer, Long> pendingAdditions = changes != null ? changes.additions.get(accountId) : null;
+                if (pendingAdditions != null && pendingAdditions.containsKey(height)) {
+                    additions = pendingAdditions.get(height);
+                } else if (isLoaded(changes)) {
+                    additions = getCommittedAdditions(accountId, height, changes);
+                } else {
+                    additions = selectAdditions(accountId, height - 1, height);
+                }
+                long total = Math.addExact(additions, amountNQT);
+                if (Db.db.isInTransaction()) {
+                    getChanges().additions.computeIfAbsent(accountId, id -> new TreeMap<>()).put(height, total);
+                } else if (loaded) {
+                    setAdditions(accountId, height, total);
+                }
+                return total;
+            }
+        }
+
+        /**
+         * Remove the additions at heights greater than height
+         */
+        void rollback(int height) {
+            update(changes -> {
+                changes.rollbackHeight = Math.min(changes.rollbackHeight, height);
+                changes.additions.values().forEach(additions -> additions.tailMap(height, false).clear());
+            });
+        }
+
+        /**
+         * Remove the additions at heights less than height
+         */
+        void trim(int height) {
+            int trimHeight = Math.max(height, 0);
+            update(changes -> {
+                changes.trimHeight = Math.max(changes.trimHeight, trimHeight);
+                changes.additions.values().forEach(additions -> additions.headMap(trimHeight, false).clear());
+            });
+        }
+
+        void truncate() {
+            update(changes -> {
+                changes.truncated = true;
+                changes.additions.clear();
+            });
+        }
+
+        @Override
+        public void commit() {
+            Changes changes = pendingChanges.get();
+            if (changes == null) {
+                return;
+            }
+            pendingChanges.remove();
+            synchronized (this) {
+                apply(changes);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            pendingChanges.remove();
+        }
+
+        private Changes getChanges() {
+            Changes changes = pendingChanges.get();
+            if (changes == null) {
+                changes = new Changes();
+                pendingChanges.set(changes);
+                Db.db.registerCallback(this);
+            }
+            return changes;
+        }
+
+        private void update(Consumer<Changes> change) {
+            if (Db.db.isInTransaction()) {
+                change.accept(getChanges());
+            } else {
+                Changes changes = new Changes();
+                change.accept(changes);
+                synchronized (this) {
+                    apply(changes);
+                }
+            }
+        }
+
+        /**
+         * Apply committed changes.  The new additions are set and not added, so changes which are already
+         * included in a concurrent load of the table are not counted twice.
+         */
+        private void apply(Changes changes) {
+            if (changes.truncated) {
+                clear();
+                loaded = true;
+            }
+            if (!loaded) {
+                return;
+            }
+            if (changes.rollbackHeight != Integer.MAX_VALUE) {
+                removeHeights(heightAccounts.tailMap(changes.rollbackHeight, false));
+            }
+            if (changes.trimHeight != Integer.MIN_VALUE) {
+                removeHeights(heightAccounts.headMap(changes.trimHeight, false));
+            }
+            changes.additions.forEach((accountId, additions) ->
+                    additions.forEach((height, total) -> setAdditions(accountId, height, total)));
+        }
+
+        /**
+         * Load the index if needed.  The index is not loaded by a thread with pending changes, since the database
+         * transaction of the thread contains uncommitted changes to the table.
+         */
+        private boolean isLoaded(Changes changes) {
+            if (!loaded && changes == null) {
+                load();
+            }
+            return loaded;
+        }
+
+        private void load() {
+            try (Connection con = Db.db.getConnection();
+                 PreparedStatement pstmt = con.prepareStatement("SELECT account_id, additions, height FROM account_guaranteed_balance");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long accountId = rs.getLong("account_id");
+                    int height = rs.getInt("height");
+                    accountAdditions.computeIfAbsent(accountId, id -> new TreeMap<>()).put(height, rs.getLong("additions"));
+                    heightAccounts.computeIfAbsent(height, h -> new HashSet<>()).add(accountId);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            loaded = true;
+        }
+
+        private long selectAdditions(long accountId, int fromHeight, int toHeight) {
+            try (Connection con = Db.db.getConnection();
+                 PreparedStatement pstmt = con.prepareStatement("SELECT SUM (additions) AS additions "
+                         + "FROM account_guaranteed_balance WHERE account_id = ? AND height > ? AND height <= ?")) {
+                pstmt.setLong(1, accountId);
+                pstmt.setInt(2, fromHeight);
+                pstmt.setInt(3, toHeight);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getLong("additions") : 0;
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+
+        private long getCommittedAdditions(long accountId, int height, Changes changes) {
+            if (changes != null && !changes.isVisible(height)) {
+                return 0;
+            }
+            NavigableMap<Integer, Long> additions = accountAdditions.get(accountId);
+            return additions == null ? 0 : additions.getOrDefault(height, 0L);
+        }
+
+        private void setAdditions(long accountId, int height, long total) {
+            Long previous = accountAdditions.computeIfAbsent(accountId, id -> new TreeMap<>()).put(height, total);
+            heightAccounts.computeIfAbsent(height, h -> new HashSet<>()).add(accountId);
+            if (isInWindow(height)) {
+                addToWindow(accountId, previous == null ? total : total - previous);
+            }
+        }
+
+        private void clear() {
+            accountAdditions.clear();
+            heightAccounts.clear();
+            windowAdditions.clear();
+            windowHeight = -1;
+            loaded = false;
+        }
+
+        private void removeHeights(NavigableMap<Integer, Set<Long>> heights) {
+            heights.forEach((height, accountIds) -> accountIds.forEach(accountId -> {
+                NavigableMap<Integer, Long> additions = accountAdditions.get(accountId);
+                long amountNQT = additions.remove(height);
+                if (additions.isEmpty()) {
+                    accountAdditions.remove(accountId);
+                }
+                if (isInWindow(height)) {
+                    addToWindow(accountId, -amountNQT);
+                }
+            }));
+            heights.clear();
+        }
+
+        private boolean isInWindow(int height) {
+            return windowHeight >= 0 && height <= windowHeight && height > windowHeight - Constants.GUARANTEED_BALANCE_CONFIRMATIONS;
+        }
+
+        private void moveWindow(int height) {
+            if (windowHeight < 0 || Math.abs(height - windowHeight) > Constants.GUARANTEED_BALANCE_CONFIRMATIONS) {
+                windowAdditions.clear();
+                windowHeight = height;
+                heightAccounts.subMap(height - Constants.GUARANTEED_BALANCE_CONFIRMATIONS, false, height, true).keySet()
+                        .forEach(h -> addHeightToWindow(h, 1));
+                return;
+            }
+            while (windowHeight < height) {
+                windowHeight += 1;
+                addHeightToWindow(windowHeight, 1);
+                addHeightToWindow(windowHeight - Constants.GUARANTEED_BALANCE_CONFIRMATIONS, -1);
+            }
+            while (windowHeight > height) {
+                addHeightToWindow(windowHeight, -1);
+                addHeightToWindow(windowHeight - Constants.GUARANTEED_BALANCE_CONFIRMATIONS, 1);
+                windowHeight -= 1;
+            }
+        }
+
+        private void addHeightToWindow(int height, int sign) {
+            Set<Long> accountIds = heightAccounts.get(height);
+            if (accountIds != null) {
+                accountIds.forEach(accountId -> addToWindow(accountId, sign * accountAdditions.get(accountId).get(height)));
+            }
+        }
+
+        private void addToWindow(long accountId, long amountNQT) {
+            windowAdditions.merge(accountId, amountNQT, (a, b) -> a + b == 0 ? null : a + b);
+        }
+
+        /**
+         * Changes made within a database transaction
+         */
+        private static final class Changes {
+
+            /** New additions by account and height */
+            private final Map<Long, NavigableMap<Integer, Long>> additions = new HashMap<>();
+
+            /** Additions at heights greater than the rollback height have been removed */
+            private int rollbackHeight = Integer.MAX_VALUE;
+
+            /** Additions at heights less than the trim height have been removed */
+            private int trimHeight = Integer.MIN_VALUE;
+
+            /** All additions have been removed */
+            private boolean truncated;
+
+            private boolean isVisible(int height) {
+                return !truncated && height <= rollbackHeight && height >= trimHeight;
+            }
+
+            private boolean removesHeights() {
+                return truncated || rollbackHeight != Integer.MAX_VALUE || trimHeight != Integer.MIN_VALUE;
+            }
+        }
+    }
+
     private static final DbKey.LongKeyFactory<Account> accountDbKeyFactory = new DbKey.LongKeyFactory<Account>("id") {
 
         @Override
@@ -470,7 +789,7 @@ public final class Account {
 
     };
 
-    private static final VersionedEntityDbTable<Account> accountTable = new VersionedEntityDbTable<Account>("account", accountDbKeyFactory) {
+    private static final VersionedEntityDbTable<Account> accountTable = new VersionedEntityDbTable<Account>("account", accountDbKeyFactory, true) {
 
         @Override
         protected Account load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException {
@@ -569,7 +888,7 @@ public final class Account {
 
     };
 
-    private static final VersionedEntityDbTable<AccountAsset> accountAssetTable = new VersionedEntityDbTable<AccountAsset>("account_asset", accountAssetDbKeyFactory) {
+    private static final VersionedEntityDbTable<AccountAsset> accountAssetTable = new VersionedEntityDbTable<AccountAsset>("account_asset", accountAssetDbKeyFactory, true) {
 
         @Override
         protected AccountAsset load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException {
@@ -612,7 +931,7 @@ public final class Account {
 
     };
 
-    private static final VersionedEntityDbTable<AccountCurrency> accountCurrencyTable = new VersionedEntityDbTable<AccountCurrency>("account_currency", accountCurrencyDbKeyFactory) {
+    private static final VersionedEntityDbTable<AccountCurrency> accountCurrencyTable = new VersionedEntityDbTable<AccountCurrency>("account_currency", accountCurrencyDbKeyFactory, true) {
 
         @Override
         protected AccountCurrency load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException {
@@ -631,10 +950,25 @@ public final class Account {
 
     };
 
+    private static final GuaranteedBalances guaranteedBalances = new GuaranteedBalances();
+
     private static final DerivedDbTable accountGuaranteedBalanceTable = new DerivedDbTable("account_guaranteed_balance") {
 
+        @Override
+        public void rollback(int height) {
+            guaranteedBalances.rollback(height);
+            super.rollback(height);
+        }
+
+        @Override
+        public void truncate() {
+            guaranteedBalances.truncate();
+            super.truncate();
+        }
+
         @Override
         public void trim(int height) {
+            guaranteedBalances.trim(height - Constants.GUARANTEED_BALANCE_CONFIRMATIONS);
             try (Connection con = Db.db.getConnection();
                  PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM account_guaranteed_balance "
                          + "WHERE height < ? AND height >= 0")) {
@@ -825,6 +1159,21 @@ public final class Account {
         return account;
     }
 
+    /**
+     * Return the balances of a set of accounts at a height using a single query
+     *
+     * @param   accountIds          Account identifiers
+     * @param   height              Height
+     * @return                      Balances by account identifier.  Accounts without a balance are not included.
+     */
+    public static Map<Long, Long> getBalancesNQT(long[] accountIds, int height) {
+        Map<Long, Long> balances = new HashMap<>();
+        for (Account account : accountTable.getManyAt(new DbClause.LongArrayClause("id", accountIds), height)) {
+            balances.put(account.id, account.balanceNQT);
+        }
+        return balances;
+    }
+
     public static Account getAccount(long id, int height) {
         DbKey dbKey = accountDbKeyFactory.newKey(id);
         Account account = accountTable.get(dbKey, height);
@@ -966,6 +1315,23 @@ public final class Account {
         return accountAsset == null ? 0 : accountAsset.quantityQNT;
     }
 
+    /**
+     * Return the asset balances of a set of accounts at a height using a single query
+     *
+     * @param   accountIds          Account identifiers
+     * @param   assetId             Asset identifier
+     * @param   height              Height
+     * @return                      Asset balances by account identifier.  Accounts without the asset are not included.
+     */
+    public static Map<Long, Long> getAssetBalancesQNT(long[] accountIds, long assetId, int height) {
+        Map<Long, Long> balances = new HashMap<>();
+        for (AccountAsset accountAsset : accountAssetTable.getManyAt(new DbClause.LongArrayClause("account_id", accountIds)
+                .and(new DbClause.LongClause("asset_id", assetId)), height)) {
+            balances.put(accountAsset.accountId, accountAsset.quantityQNT);
+        }
+        return balances;
+    }
+
     public static long getAssetBalanceQNT(long accountId, long assetId) {
         AccountAsset accountAsset = accountAssetTable.get(accountAssetDbKeyFactory.newKey(accountId, assetId));
         return accountAsset == null ? 0 : accountAsset.quantityQNT;
@@ -981,6 +1347,23 @@ public final class Account {
         return accountCurrency == null ? 0 : accountCurrency.units;
     }
 
+    /**
+     * Return the currency balances of a set of accounts at a height using a single query
+     *
+     * @param   accountIds          Account identifiers
+     * @param   currencyId          Currency identifier
+     * @param   height              Height
+     * @return                      Currency units by account identifier.  Accounts without the currency are not included.
+     */
+    public static Map<Long, Long> getCurrencyUnits(long[] accountIds, long currencyId, int height) {
+        Map<Long, Long> balances = new HashMap<>();
+        for (AccountCurrency accountCurrency : accountCurrencyTable.getManyAt(new DbClause.LongArrayClause("account_id", accountIds)
+                .and(new DbClause.LongClause("currency_id", currencyId)), height)) {
+            balances.put(accountCurrency.accountId, accountCurrency.units);
+        }
+        return balances;
+    }
+
     public static long getCurrencyUnits(long accountId, long currencyId) {
         AccountCurrency accountCurrency = accountCurrencyTable.get(accountCurrencyDbKeyFactory.newKey(accountId, currencyId));
         return accountCurrency == null ? 0 : accountCurrency.units;
@@ -1235,43 +1618,12 @@ public final class Account {
                 lessors.add(iterator.next());
             }
         }
-        Long[] lessorIds = new Long[lessors.size()];
-        long[] balances = new long[lessors.size()];
-        for (int i = 0; i < lessors.size(); i++) {
-            lessorIds[i] = lessors.get(i).getId();
-            balances[i] = lessors.get(i).getBalanceNQT();
-        }
-        int blockchainHeight = Nxt.getBlockchain().getHeight();
-        try (Connection con = Db.db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT account_id, SUM (additions) AS additions "
-                     + "FROM account_guaranteed_balance, TABLE (id BIGINT=?) T WHERE account_id = T.id AND height > ? "
-                     + (height < blockchainHeight ? " AND height <= ? " : "")
-                     + " GROUP BY account_id ORDER BY account_id")) {
-            pstmt.setObject(1, lessorIds);
-            pstmt.setInt(2, height - Constants.GUARANTEED_BALANCE_CONFIRMATIONS);
-            if (height < blockchainHeight) {
-                pstmt.setInt(3, height);
-            }
-            long total = 0;
-            int i = 0;
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    long accountId = rs.getLong("account_id");
-                    while (lessorIds[i] < accountId && i < lessorIds.length) {
-                        total += balances[i++];
-                    }
-                    if (lessorIds[i] == accountId) {
-                        total += Math.max(balances[i++] - rs.getLong("additions"), 0);
-                    }
-                }
-            }
-            while (i < balances.length) {
-                total += balances[i++];
-            }
-            return total;
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
+        long total = 0;
+        for (Account lessor : lessors) {
+            long additions = guaranteedBalances.getAdditions(lessor.getId(), height - Constants.GUARANTEED_BALANCE_CONFIRMATIONS, height);
+            total += Math.max(lessor.getBalanceNQT() - additions, 0);
         }
+        return total;
     }
 
     public DbIterator<Account> getLessors() {
@@ -1294,21 +1646,8 @@ public final class Account {
                     || height > Nxt.getBlockchain().getHeight()) {
                 throw new IllegalArgumentException("Height " + height + " not available for guaranteed balance calculation");
             }
-            try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT SUM (additions) AS additions "
-                         + "FROM account_guaranteed_balance WHERE account_id = ? AND height > ? AND height <= ?")) {
-                pstmt.setLong(1, this.id);
-                pstmt.setInt(2, height);
-                pstmt.setInt(3, currentHeight);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (!rs.next()) {
-                        return balanceNQT;
-                    }
-                    return Math.max(Math.subtractExact(balanceNQT, rs.getLong("additions")), 0);
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
-            }
+            long additions = guaranteedBalances.getAdditions(this.id, height, currentHeight);
+            return Math.max(Math.subtractExact(balanceNQT, additions), 0);
         } finally {
             Nxt.getBlockchain().readUnlock();
         }
@@ -1771,51 +2110,82 @@ public final class Account {
             return;
         }
         int blockchainHeight = Nxt.getBlockchain().getHeight();
-        try (Connection con = Db.db.getConnection();
-             PreparedStatement pstmtSelect = con.prepareStatement("SELECT additions FROM account_guaranteed_balance "
-                     + "WHERE account_id = ? and height = ?");
+        long additions = guaranteedBalances.add(this.id, amountNQT, blockchainHeight);
+        try (Connection con = Db.db.getBatchConnection();
              PreparedStatement pstmtUpdate = con.prepareStatement("MERGE INTO account_guaranteed_balance (account_id, "
                      + " additions, height) KEY (account_id, height) VALUES(?, ?, ?)")) {
-            pstmtSelect.setLong(1, this.id);
-            pstmtSelect.setInt(2, blockchainHeight);
-            try (ResultSet rs = pstmtSelect.executeQuery()) {
-                long additions = amountNQT;
-                if (rs.next()) {
-                    additions = Math.addExact(additions, rs.getLong("additions"));
-                }
-                pstmtUpdate.setLong(1, this.id);
-                pstmtUpdate.setLong(2, additions);
-                pstmtUpdate.setInt(3, blockchainHeight);
-                pstmtUpdate.executeUpdate();
-            }
+            pstmtUpdate.setLong(1, this.id);
+            pstmtUpdate.setLong(2, additions);
+            pstmtUpdate.setInt(3, blockchainHeight);
+            pstmtUpdate.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
     }
 
     void payDividends(final long transactionId, Attachment.ColoredCoinsDividendPayment attachment) {
-        long totalDividend = 0;
-        List<AccountAsset> accountAssets = new ArrayList<>();
+        //
+        // Compute the payouts in one pass over the asset holders at the snapshot height
+        //
+        final long amountNQTPerQNT = attachment.getAmountNQTPerQNT();
+        long[] accountIds = new long[64];
+        long[] dividends = new long[64];
+        int numAccounts = 0;
         try (DbIterator<AccountAsset> iterator = getAssetAccounts(attachment.getAssetId(), attachment.getHeight(), 0, -1)) {
             while (iterator.hasNext()) {
-                accountAssets.add(iterator.next());
+                AccountAsset accountAsset = iterator.next();
+                if (accountAsset.getAccountId() != this.id && accountAsset.getQuantityQNT() != 0) {
+                    if (numAccounts == accountIds.length) {
+                        accountIds = Arrays.copyOf(accountIds, numAccounts * 2);
+                        dividends = Arrays.copyOf(dividends, numAccounts * 2);
+                    }
+                    accountIds[numAccounts] = accountAsset.getAccountId();
+                    dividends[numAccounts] = Math.multiplyExact(accountAsset.getQuantityQNT(), amountNQTPerQNT);
+                    numAccounts++;
+                }
             }
         }
-        final long amountNQTPerQNT = attachment.getAmountNQTPerQNT();
-        long numAccounts = 0;
-        for (final AccountAsset accountAsset : accountAssets) {
-            if (accountAsset.getAccountId() != this.id && accountAsset.getQuantityQNT() != 0) {
-                long dividend = Math.multiplyExact(accountAsset.getQuantityQNT(), amountNQTPerQNT);
-                Account.getAccount(accountAsset.getAccountId())
-                        .addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, dividend);
-                totalDividend += dividend;
-                numAccounts += 1;
+        //
+        // Load the recipient accounts with a single query and apply the payouts.  The account, guaranteed
+        // balance and ledger updates are deferred to batches which are executed when the transaction
+        // connection is next used.
+        //
+        Map<Long, Account> accounts = getAccounts(accountIds, numAccounts);
+        long totalDividend = 0;
+        for (int i = 0; i < numAccounts; i++) {
+            Account account = accounts.get(accountIds[i]);
+            if (account == null) {
+                account = Account.getAccount(accountIds[i]);
             }
+            account.addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, dividends[i]);
+            totalDividend += dividends[i];
         }
         this.addToBalanceNQT(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, -totalDividend);
         AssetDividend.addAssetDividend(transactionId, attachment, totalDividend, numAccounts);
     }
 
+    /**
+     * Load the current rows of a set of accounts.  Accounts which have been read in the current
+     * database transaction are returned from the transaction cache.
+     *
+     * @param   accountIds          Account identifiers
+     * @param   count               Number of account identifiers
+     * @return                      Accounts by identifier
+     */
+    private static Map<Long, Account> getAccounts(long[] accountIds, int count) {
+        Map<Long, Account> accounts = new HashMap<>();
+        if (count == 0) {
+            return accounts;
+        }
+        try (DbIterator<Account> iterator = accountTable.getManyBy(new DbClause.LongArrayClause("id",
+                Arrays.copyOf(accountIds, count)), 0, -1, "")) {
+            for (Account account : iterator) {
+                accounts.put(account.id, account);
+            }
+        }
+        return accounts;
+    }
+
     @Override
     public String toString() {
         return "Account " + Long.toUnsignedString(getId());
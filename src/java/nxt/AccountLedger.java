@@ -105,13 +105,28 @@ public class AccountLedger {
         }
 
         /**
-         * Insert an entry into the table
+         * Insert entries into the table using a single batch
          *
-         * @param   ledgerEntry             Ledger entry
+         * @param   ledgerEntries           Ledger entries
          */
-        public void insert(LedgerEntry ledgerEntry) {
-            try (Connection con = db.getConnection()) {
-                ledgerEntry.save(con);
+        public void insert(List<LedgerEntry> ledgerEntries) {
+            try (Connection con = db.getConnection();
+                 PreparedStatement stmt = con.prepareStatement("INSERT INTO account_ledger "
+                         + "(account_id, event_type, event_id, holding_type, holding_id, change, balance, "
+                         + "block_id, height, timestamp) "
+                         + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+                for (LedgerEntry ledgerEntry : ledgerEntries) {
+                    ledgerEntry.setValues(stmt);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    for (LedgerEntry ledgerEntry : ledgerEntries) {
+                        if (rs.next()) {
+                            ledgerEntry.ledgerId = rs.getLong(1);
+                        }
+                    }
+                }
             } catch (SQLException e) {
                 throw new RuntimeException(e.toString(), e);
             }
@@ -255,9 +270,11 @@ public class AccountLedger {
      * Commit pending ledger entries
      */
     static void commitEntries() {
-        for (LedgerEntry ledgerEntry : pendingEntries) {
-            accountLedgerTable.insert(ledgerEntry);
-            listeners.notify(ledgerEntry, Event.ADD_ENTRY);
+        if (!pendingEntries.isEmpty()) {
+            accountLedgerTable.insert(pendingEntries);
+            for (LedgerEntry ledgerEntry : pendingEntries) {
+                listeners.notify(ledgerEntry, Event.ADD_ENTRY);
+            }
         }
         pendingEntries.clear();
     }
@@ -838,38 +855,27 @@ public class AccountLedger {
         }
 
         /**
-         * Save the ledger entry
+         * Set the ledger entry values for an insert statement
          *
-         * @param   con                     Database connection
+         * @param   stmt                    Insert statement
          * @throws  SQLException            Database error occurred
          */
-        private void save(Connection con) throws SQLException {
-            try (PreparedStatement stmt = con.prepareStatement("INSERT INTO account_ledger "
-                    + "(account_id, event_type, event_id, holding_type, holding_id, change, balance, "
-                    + "block_id, height, timestamp) "
-                    + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
-                int i=0;
-                stmt.setLong(++i, accountId);
-                stmt.setByte(++i, (byte) event.getCode());
-                stmt.setLong(++i, eventId);
-                if (holding != null) {
-                    stmt.setByte(++i, (byte)holding.getCode());
-                } else {
-                    stmt.setByte(++i, (byte)-1);
-                }
-                DbUtils.setLong(stmt, ++i, holdingId);
-                stmt.setLong(++i, change);
-                stmt.setLong(++i, balance);
-                stmt.setLong(++i, blockId);
-                stmt.setInt(++i, height);
-                stmt.setInt(++i, timestamp);
-                stmt.executeUpdate();
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        ledgerId = rs.getLong(1);
-                    }
-                }
+        private void setValues(PreparedStatement stmt) throws SQLException {
+            int i=0;
+            stmt.setLong(++i, accountId);
+            stmt.setByte(++i, (byte) event.getCode());
+            stmt.setLong(++i, eventId);
+            if (holding != null) {
+                stmt.setByte(++i, (byte)holding.getCode());
+            } else {
+                stmt.setByte(++i, (byte)-1);
             }
+            DbUtils.setLong(stmt, ++i, holdingId);
+            stmt.setLong(++i, change);
+            stmt.setLong(++i, balance);
+            stmt.setLong(++i, blockId);
+            stmt.setInt(++i, height);
+            stmt.setInt(++i, timestamp);
         }
     }
 }
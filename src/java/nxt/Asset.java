@@ -37,7 +37,7 @@ public final class Asset {
 
     };
 
-    private static final VersionedEntityDbTable<Asset> assetTable = new VersionedEntityDbTable<Asset>("asset", assetDbKeyFactory, "name,description") {
+    private static final VersionedEntityDbTable<Asset> assetTable = new VersionedEntityDbTable<Asset>("asset", assetDbKeyFactory, "name,description", true) {
 
         @Override
         protected Asset load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException {
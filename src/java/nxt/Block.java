@@ -16,9 +16,11 @@
 
 package nxt;
 
+import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Block {
@@ -63,6 +65,18 @@ public interface Block {
 
     byte[] getBytes();
 
+    /**
+     * Return the binary peer representation of the block.  The representation is shared and the
+     * returned buffer is read-only.
+     */
+    ByteBuffer getPeerBuffer();
+
+    /**
+     * Return the JSON peer representation of the block.  The representation is shared and is
+     * serialized once.
+     */
+    JSONAware getPeerJSON();
+
     JSONObject getJSONObject();
 
 }
@@ -40,6 +40,7 @@ final class BlockDb {
     static final Map<Long, BlockImpl> blockCache = new HashMap<>();
     static final SortedMap<Integer, BlockImpl> heightMap = new TreeMap<>();
     static final Map<Long, TransactionImpl> transactionCache = new HashMap<>();
+    static final IdIndex blockIndex = new IdIndex("block");
     static final Blockchain blockchain = Nxt.getBlockchain();
     static {
         Nxt.getBlockchainProcessor().addListener((block) -> {
@@ -68,6 +69,9 @@ final class BlockDb {
             heightMap.clear();
             transactionCache.clear();
         }
+        blockIndex.clearRecent();
+        TransactionDb.transactionIndex.clearRecent();
+        PeerBlockCache.clear();
     }
 
     static BlockImpl findBlock(long blockId) {
@@ -78,6 +82,10 @@ final class BlockDb {
                 return block;
             }
         }
+        // Check the index
+        if (!blockIndex.mightContain(blockId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block WHERE id = ?")) {
@@ -106,6 +114,14 @@ final class BlockDb {
                 return block.getHeight() <= height;
             }
         }
+        // Check the index
+        if (!blockIndex.mightContain(blockId)) {
+            return false;
+        }
+        int blockHeight = blockIndex.getHeight(blockId);
+        if (blockHeight >= 0) {
+            return blockHeight <= height;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT height FROM block WHERE id = ?")) {
@@ -272,6 +288,9 @@ final class BlockDb {
                 pstmt.executeUpdate();
                 TransactionDb.saveTransactions(con, block.getTransactions());
             }
+            blockIndex.add(block.getId(), block.getHeight());
+            block.getTransactions().forEach(transaction ->
+                    TransactionDb.transactionIndex.add(transaction.getId(), block.getHeight()));
             if (block.getPreviousBlockId() != 0) {
                 try (PreparedStatement pstmt = con.prepareStatement("UPDATE block SET next_block_id = ? WHERE id = ?")) {
                     pstmt.setLong(1, block.getId());
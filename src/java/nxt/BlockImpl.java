@@ -19,8 +19,10 @@ package nxt;
 import nxt.AccountLedger.LedgerEvent;
 import nxt.crypto.Crypto;
 import nxt.util.Convert;
+import nxt.util.JSON;
 import nxt.util.Logger;
 import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
 
 import java.math.BigInteger;
@@ -55,6 +57,8 @@ final class BlockImpl implements Block {
     private volatile String stringId = null;
     private volatile long generatorId;
     private volatile byte[] bytes = null;
+    private volatile byte[] peerBytes = null;
+    private volatile JSONAware peerJSON = null;
 
 
     BlockImpl(int version, int timestamp, long previousBlockId, long totalAmountNQT, long totalFeeNQT, int payloadLength, byte[] payloadHash,
@@ -289,6 +293,129 @@ final class BlockImpl implements Block {
         }
     }
 
+    @Override
+    public ByteBuffer getPeerBuffer() {
+        return ByteBuffer.wrap(peerBytes()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public JSONAware getPeerJSON() {
+        JSONAware json = peerJSON;
+        if (json == null) {
+            String jsonString = JSON.toJSONString(getJSONObject());
+            json = () -> jsonString;
+            peerJSON = json;
+        }
+        return json;
+    }
+
+    /**
+     * Return the binary peer representation of the block.  This consists of the block bytes followed
+     * by the peer bytes of each block transaction, each prefixed with its length.  The peer representation
+     * is computed once and must not be modified by the caller.
+     *
+     * @return                      Block peer bytes
+     */
+    byte[] peerBytes() {
+        if (peerBytes != null) {
+            return peerBytes;
+        }
+        byte[] blockBytes = bytes();
+        List<byte[]> transactionsBytes = new ArrayList<>(getTransactions().size());
+        int length = 4 + blockBytes.length + 4;
+        for (TransactionImpl transaction : getTransactions()) {
+            byte[] transactionBytes = transaction.getPeerBytes();
+            transactionsBytes.add(transactionBytes);
+            length += 4 + transactionBytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(blockBytes.length);
+        buffer.put(blockBytes);
+        buffer.putInt(transactionsBytes.size());
+        for (byte[] transactionBytes : transactionsBytes) {
+            buffer.putInt(transactionBytes.length);
+            buffer.put(transactionBytes);
+        }
+        peerBytes = buffer.array();
+        return peerBytes;
+    }
+
+    static BlockImpl parseBlock(byte[] blockData) throws NxtException.NotValidException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(blockData);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] blockBytes = TransactionImpl.readPeerBytes(buffer);
+            int transactionCount = buffer.getInt();
+            if (transactionCount < 0 || transactionCount > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+                throw new NxtException.NotValidException("Invalid transaction count " + transactionCount);
+            }
+            List<TransactionImpl> blockTransactions = new ArrayList<>(transactionCount);
+            for (int i = 0; i < transactionCount; i++) {
+                blockTransactions.add(TransactionImpl.parseTransaction(TransactionImpl.readPeerBytes(buffer)));
+            }
+            if (buffer.hasRemaining()) {
+                throw new NxtException.NotValidException("Block bytes too long, " + buffer.remaining() + " extra bytes");
+            }
+            return parseBlock(blockBytes, blockTransactions);
+        } catch (NxtException.NotValidException|RuntimeException e) {
+            Logger.logDebugMessage("Failed to parse block bytes: " + Convert.toHexString(blockData));
+            throw e;
+        }
+    }
+
+    /**
+     * Create a block from the signed block bytes and the block transactions
+     *
+     * @param   blockBytes          Block bytes
+     * @param   blockTransactions   Block transactions
+     * @return                      Block
+     * @throws  NxtException.NotValidException  Block is not valid
+     */
+    static BlockImpl parseBlock(byte[] blockBytes, List<TransactionImpl> blockTransactions) throws NxtException.NotValidException {
+        ByteBuffer buffer = ByteBuffer.wrap(blockBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int version = buffer.getInt();
+        int timestamp = buffer.getInt();
+        long previousBlock = buffer.getLong();
+        int transactionCount = buffer.getInt();
+        long totalAmountNQT;
+        long totalFeeNQT;
+        if (version < 3) {
+            totalAmountNQT = buffer.getInt() * Constants.ONE_NXT;
+            totalFeeNQT = buffer.getInt() * Constants.ONE_NXT;
+        } else {
+            totalAmountNQT = buffer.getLong();
+            totalFeeNQT = buffer.getLong();
+        }
+        int payloadLength = buffer.getInt();
+        byte[] payloadHash = new byte[32];
+        buffer.get(payloadHash);
+        byte[] generatorPublicKey = new byte[32];
+        buffer.get(generatorPublicKey);
+        byte[] generationSignature = new byte[version < 2 ? 64 : 32];
+        buffer.get(generationSignature);
+        byte[] previousBlockHash = null;
+        if (version > 1) {
+            previousBlockHash = new byte[32];
+            buffer.get(previousBlockHash);
+        }
+        byte[] blockSignature = new byte[64];
+        buffer.get(blockSignature);
+        if (buffer.hasRemaining()) {
+            throw new NxtException.NotValidException("Invalid block length " + blockBytes.length);
+        }
+        if (transactionCount != blockTransactions.size()) {
+            throw new NxtException.NotValidException("Transaction count does not match block bytes");
+        }
+        BlockImpl block = new BlockImpl(version, timestamp, previousBlock, totalAmountNQT, totalFeeNQT, payloadLength, payloadHash, generatorPublicKey,
+                generationSignature, blockSignature, previousBlockHash, blockTransactions);
+        if (!block.checkSignature()) {
+            throw new NxtException.NotValidException("Invalid block signature");
+        }
+        return block;
+    }
+
     @Override
     public byte[] getBytes() {
         return Arrays.copyOf(bytes(), bytes.length);
@@ -330,7 +457,7 @@ final class BlockImpl implements Block {
 
     private volatile boolean hasValidSignature = false;
 
-    private boolean checkSignature() {
+    boolean checkSignature() {
         if (! hasValidSignature) {
             byte[] data = Arrays.copyOf(bytes(), bytes.length - 64);
             hasValidSignature = blockSignature != null && Crypto.verify(blockSignature, data, getGeneratorPublicKey(), version >= 3);
@@ -347,7 +474,7 @@ final class BlockImpl implements Block {
                 throw new BlockchainProcessor.BlockOutOfOrderException("Can't verify signature because previous block is missing", this);
             }
 
-            if (version == 1 && !Crypto.verify(generationSignature, previousBlock.generationSignature, getGeneratorPublicKey(), false)) {
+            if (!checkGenerationSignature(previousBlock.generationSignature)) {
                 return false;
             }
 
@@ -357,17 +484,7 @@ final class BlockImpl implements Block {
                 return false;
             }
 
-            MessageDigest digest = Crypto.sha256();
-            byte[] generationSignatureHash;
-            if (version == 1) {
-                generationSignatureHash = digest.digest(generationSignature);
-            } else {
-                digest.update(previousBlock.generationSignature);
-                generationSignatureHash = digest.digest(getGeneratorPublicKey());
-                if (!Arrays.equals(generationSignature, generationSignatureHash)) {
-                    return false;
-                }
-            }
+            byte[] generationSignatureHash = version == 1 ? Crypto.sha256().digest(generationSignature) : generationSignature;
 
             BigInteger hit = new BigInteger(1, new byte[]{generationSignatureHash[7], generationSignatureHash[6], generationSignatureHash[5], generationSignatureHash[4], generationSignatureHash[3], generationSignatureHash[2], generationSignatureHash[1], generationSignatureHash[0]});
 
@@ -383,6 +500,26 @@ final class BlockImpl implements Block {
 
     }
 
+    private volatile byte[] verifiedPreviousGenerationSignature;
+
+    boolean checkGenerationSignature(byte[] previousGenerationSignature) {
+        if (verifiedPreviousGenerationSignature != null && Arrays.equals(previousGenerationSignature, verifiedPreviousGenerationSignature)) {
+            return true;
+        }
+        boolean isValid;
+        if (version == 1) {
+            isValid = Crypto.verify(generationSignature, previousGenerationSignature, getGeneratorPublicKey(), false);
+        } else {
+            MessageDigest digest = Crypto.sha256();
+            digest.update(previousGenerationSignature);
+            isValid = Arrays.equals(generationSignature, digest.digest(getGeneratorPublicKey()));
+        }
+        if (isValid) {
+            verifiedPreviousGenerationSignature = previousGenerationSignature;
+        }
+        return isValid;
+    }
+
     private static final long[] badBlocks = new long[] {
             5113090348579089956L, 8032405266942971936L, 7702042872885598917L, -407022268390237559L, -3320029330888410250L,
             -6568770202903512165L, 4288642518741472722L, 5315076199486616536L, -6175599071600228543L};
@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Block template containing the transactions selected for the block following the previous block.
+ * <p>
+ * The block template for the last block is kept by the blockchain processor and is updated
+ * incrementally as transactions are added to the unconfirmed pool.  The template is rebuilt when
+ * a selected transaction is removed from the unconfirmed pool, when a transaction excluded as a
+ * duplicate is removed, since its duplicate check may have reserved a duplicate key, or when the new
+ * transactions do not fit in the remaining block payload or transaction count.
+ */
+final class BlockTemplate {
+
+    private static final Comparator<UnconfirmedTransaction> transactionArrivalComparator = Comparator
+            .comparingLong(UnconfirmedTransaction::getArrivalTimestamp)
+            .thenComparingInt(UnconfirmedTransaction::getHeight)
+            .thenComparingLong(UnconfirmedTransaction::getId);
+
+    private final BlockImpl previousBlock;
+    private final int blockTimestamp;
+    private final Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
+    private final List<TransactionImpl> phasedTransactions = new ArrayList<>();
+    private final SortedSet<UnconfirmedTransaction> transactions = new TreeSet<>(transactionArrivalComparator);
+    private final Set<Long> candidateIds = new HashSet<>();
+    private final Set<Long> duplicateIds = new HashSet<>();
+    private int payloadLength;
+    private long modificationCount;
+
+    /**
+     * Create a block template
+     *
+     * @param   previousBlock       Previous block
+     * @param   blockTimestamp      Block timestamp or -1 to select transactions regardless of their timestamp
+     */
+    BlockTemplate(BlockImpl previousBlock, int blockTimestamp) {
+        this.previousBlock = previousBlock;
+        this.blockTimestamp = blockTimestamp;
+        if (previousBlock.getHeight() >= Constants.PHASING_BLOCK) {
+            for (TransactionImpl phasedTransaction : PhasingPoll.getFinishingTransactions(previousBlock.getHeight() + 1)) {
+                try {
+                    phasedTransaction.validate();
+                    if (!phasedTransaction.attachmentIsDuplicate(duplicates, false)) {
+                        phasedTransactions.add(phasedTransaction);
+                    }
+                } catch (NxtException.ValidationException ignore) {
+                }
+            }
+        }
+        TransactionProcessorImpl transactionProcessor = TransactionProcessorImpl.getInstance();
+        modificationCount = transactionProcessor.getUnconfirmedTransactionsModificationCount();
+        addTransactions(transactionProcessor.getUnconfirmedTransactions(0, -1));
+    }
+
+    long getPreviousBlockId() {
+        return previousBlock.getId();
+    }
+
+    /**
+     * Return the phased transactions finishing at the next block
+     *
+     * @return                      Phased transactions which are valid and not duplicates
+     */
+    synchronized List<TransactionImpl> getPhasedTransactions() {
+        return new ArrayList<>(phasedTransactions);
+    }
+
+    /**
+     * Return the selected unconfirmed transactions
+     *
+     * @return                      Transactions sorted by arrival timestamp
+     */
+    synchronized SortedSet<UnconfirmedTransaction> getTransactions() {
+        return new TreeSet<>(transactions);
+    }
+
+    /**
+     * Check if all of the selected transactions can be included in a block with the given timestamp
+     *
+     * @param   blockTimestamp      Block timestamp
+     * @return                      TRUE if the selected transactions are valid for the block timestamp
+     */
+    synchronized boolean isValid(int blockTimestamp) {
+        for (UnconfirmedTransaction unconfirmedTransaction : transactions) {
+            if (unconfirmedTransaction.getTimestamp() > blockTimestamp + Constants.MAX_TIMEDRIFT
+                    || unconfirmedTransaction.getExpiration() < blockTimestamp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Update the template with the transactions added to the unconfirmed pool since the
+     * template was created or last updated
+     *
+     * @return                      TRUE if the template is up-to-date, FALSE if it must be rebuilt
+     */
+    synchronized boolean update() {
+        TransactionProcessorImpl transactionProcessor = TransactionProcessorImpl.getInstance();
+        long currentModificationCount = transactionProcessor.getUnconfirmedTransactionsModificationCount();
+        if (currentModificationCount == modificationCount) {
+            return true;
+        }
+        List<UnconfirmedTransaction> unconfirmedTransactions = transactionProcessor.getUnconfirmedTransactions(0, -1);
+        Map<Long, UnconfirmedTransaction> poolTransactions = new HashMap<>();
+        unconfirmedTransactions.forEach(unconfirmedTransaction -> poolTransactions.put(unconfirmedTransaction.getId(), unconfirmedTransaction));
+        for (UnconfirmedTransaction unconfirmedTransaction : transactions) {
+            if (poolTransactions.get(unconfirmedTransaction.getId()) != unconfirmedTransaction) {
+                return false;
+            }
+        }
+        if (!poolTransactions.keySet().containsAll(duplicateIds)) {
+            return false;
+        }
+        List<UnconfirmedTransaction> newTransactions = new ArrayList<>();
+        int newPayloadLength = payloadLength;
+        for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
+            if (!candidateIds.contains(unconfirmedTransaction.getId())) {
+                newTransactions.add(unconfirmedTransaction);
+                newPayloadLength += unconfirmedTransaction.getTransaction().getFullSize();
+            }
+        }
+        //
+        // A full rebuild is needed if the new transactions compete with the selected transactions for block space
+        //
+        if (newPayloadLength > Constants.MAX_PAYLOAD_LENGTH
+                || transactions.size() + newTransactions.size() > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+            return false;
+        }
+        candidateIds.retainAll(poolTransactions.keySet());
+        modificationCount = currentModificationCount;
+        addTransactions(newTransactions);
+        return true;
+    }
+
+    /**
+     * Select transactions from the candidate transactions, which must be in unconfirmed pool order
+     */
+    private void addTransactions(List<UnconfirmedTransaction> unconfirmedTransactions) {
+        BlockchainProcessorImpl blockchainProcessor = BlockchainProcessorImpl.getInstance();
+        int transactionVersion = blockchainProcessor.getTransactionVersion(previousBlock.getHeight());
+        List<UnconfirmedTransaction> orderedUnconfirmedTransactions = new ArrayList<>();
+        for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
+            candidateIds.add(unconfirmedTransaction.getId());
+            if (blockchainProcessor.hasAllReferencedTransactions(unconfirmedTransaction.getTransaction(), unconfirmedTransaction.getTimestamp(), 0)) {
+                orderedUnconfirmedTransactions.add(unconfirmedTransaction);
+            }
+        }
+        while (payloadLength <= Constants.MAX_PAYLOAD_LENGTH && transactions.size() < Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+            int prevNumberOfNewTransactions = transactions.size();
+            for (UnconfirmedTransaction unconfirmedTransaction : orderedUnconfirmedTransactions) {
+                if (transactions.size() >= Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+                    break;
+                }
+                int transactionLength = unconfirmedTransaction.getTransaction().getFullSize();
+                if (transactions.contains(unconfirmedTransaction) || payloadLength + transactionLength > Constants.MAX_PAYLOAD_LENGTH) {
+                    continue;
+                }
+                if (unconfirmedTransaction.getVersion() != transactionVersion) {
+                    continue;
+                }
+                if (blockTimestamp > 0 && (unconfirmedTransaction.getTimestamp() > blockTimestamp + Constants.MAX_TIMEDRIFT
+                        || unconfirmedTransaction.getExpiration() < blockTimestamp)) {
+                    continue;
+                }
+                try {
+                    unconfirmedTransaction.getTransaction().validate();
+                } catch (NxtException.ValidationException e) {
+                    continue;
+                }
+                if (unconfirmedTransaction.getTransaction().attachmentIsDuplicate(duplicates, true)) {
+                    duplicateIds.add(unconfirmedTransaction.getId());
+                    continue;
+                }
+                transactions.add(unconfirmedTransaction);
+                payloadLength += transactionLength;
+            }
+            if (transactions.size() == prevNumberOfNewTransactions) {
+                break;
+            }
+        }
+    }
+}
@@ -33,6 +33,21 @@ public interface Blockchain {
 
     void updateUnlock();
 
+    /**
+     * Start an optimistic read of the blockchain state without obtaining the read lock
+     *
+     * @return                      Read stamp, or 0 if the blockchain is being updated
+     */
+    long tryOptimisticRead();
+
+    /**
+     * Check if the blockchain has not been updated since an optimistic read was started
+     *
+     * @param   stamp               Read stamp returned by tryOptimisticRead()
+     * @return                      TRUE if the blockchain has not been updated
+     */
+    boolean validate(long stamp);
+
     Block getLastBlock();
 
     Block getLastBlock(int timestamp);
@@ -27,6 +27,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 final class BlockchainImpl implements Blockchain {
@@ -41,6 +42,8 @@ final class BlockchainImpl implements Blockchain {
 
     private final ReadWriteUpdateLock lock = new ReadWriteUpdateLock();
     private final AtomicReference<BlockImpl> lastBlock = new AtomicReference<>();
+    /** Incremented when the write lock is obtained and when it is released, odd while an update is in progress */
+    private final AtomicLong updateStamp = new AtomicLong(2);
 
     @Override
     public void readLock() {
@@ -62,12 +65,30 @@ final class BlockchainImpl implements Blockchain {
         lock.updateLock().unlock();
     }
 
+    @Override
+    public long tryOptimisticRead() {
+        long stamp = updateStamp.get();
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
+
+    @Override
+    public boolean validate(long stamp) {
+        return stamp != 0 && updateStamp.get() == stamp;
+    }
+
     void writeLock() {
+        boolean hasLock = lock.writeLock().hasLock();
         lock.writeLock().lock();
+        if (!hasLock) {
+            updateStamp.incrementAndGet();
+        }
     }
 
     void writeUnlock() {
         lock.writeLock().unlock();
+        if (!lock.writeLock().hasLock()) {
+            updateStamp.incrementAndGet();
+        }
     }
 
     @Override
@@ -243,6 +264,14 @@ final class BlockchainImpl implements Blockchain {
                 return result;
             }
         }
+        // Check the peer block cache
+        long stamp = tryOptimisticRead();
+        if (PeerBlockCache.isEnabled()) {
+            List<BlockImpl> cachedBlocks = PeerBlockCache.getBlocksAfter(blockId, limit, getHeight());
+            if (cachedBlocks != null) {
+                return cachedBlocks;
+            }
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block "
@@ -258,6 +287,10 @@ final class BlockchainImpl implements Blockchain {
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
+        // Blocks loaded while the blockchain was being updated are not cached
+        if (PeerBlockCache.isEnabled() && validate(stamp)) {
+            PeerBlockCache.put(blockId, result);
+        }
         return result;
     }
 
@@ -282,7 +315,23 @@ final class BlockchainImpl implements Blockchain {
                 return result;
             }
         }
+        // Check the peer block cache
+        long stamp = tryOptimisticRead();
+        if (PeerBlockCache.isEnabled()) {
+            List<BlockImpl> cachedBlocks = PeerBlockCache.getBlocksAfter(blockId, blockList.size(), getHeight());
+            if (cachedBlocks != null) {
+                int index = 0;
+                for (BlockImpl cachedBlock : cachedBlocks) {
+                    if (cachedBlock.getId() != blockList.get(index++)) {
+                        break;
+                    }
+                    result.add(cachedBlock);
+                }
+                return result;
+            }
+        }
         // Search the database
+        List<BlockImpl> loadedBlocks = new ArrayList<>(blockList.size());
         try (Connection con = Db.db.getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block "
                         + "WHERE db_id > IFNULL ((SELECT db_id FROM block WHERE id = ?), " + Long.MAX_VALUE + ") "
@@ -290,18 +339,24 @@ final class BlockchainImpl implements Blockchain {
             pstmt.setLong(1, blockId);
             pstmt.setInt(2, blockList.size());
             try (ResultSet rs = pstmt.executeQuery()) {
-                int index = 0;
                 while (rs.next()) {
-                    BlockImpl block = BlockDb.loadBlock(con, rs, true);
-                    if (block.getId() != blockList.get(index++)) {
-                        break;
-                    }
-                    result.add(block);
+                    loadedBlocks.add(BlockDb.loadBlock(con, rs, true));
                 }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
+        int index = 0;
+        for (BlockImpl block : loadedBlocks) {
+            if (block.getId() != blockList.get(index++)) {
+                break;
+            }
+            result.add(block);
+        }
+        // Blocks loaded while the blockchain was being updated are not cached
+        if (PeerBlockCache.isEnabled() && validate(stamp)) {
+            PeerBlockCache.put(blockId, loadedBlocks);
+        }
         return result;
     }
 
@@ -539,32 +594,21 @@ final class BlockchainImpl implements Blockchain {
 
     @Override
     public List<TransactionImpl> getExpectedTransactions(Filter<Transaction> filter) {
-        Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
-        BlockchainProcessorImpl blockchainProcessor = BlockchainProcessorImpl.getInstance();
         List<TransactionImpl> result = new ArrayList<>();
         readLock();
         try {
-            if (getHeight() >= Constants.PHASING_BLOCK) {
-                try (DbIterator<TransactionImpl> phasedTransactions = PhasingPoll.getFinishingTransactions(getHeight() + 1)) {
-                    for (TransactionImpl phasedTransaction : phasedTransactions) {
-                        try {
-                            phasedTransaction.validate();
-                            if (!phasedTransaction.attachmentIsDuplicate(duplicates, false) && filter.ok(phasedTransaction)) {
-                                result.add(phasedTransaction);
-                            }
-                        } catch (NxtException.ValidationException ignore) {
-                        }
-                    }
+            BlockTemplate template = BlockchainProcessorImpl.getInstance().getBlockTemplate(getLastBlock());
+            template.getPhasedTransactions().forEach(phasedTransaction -> {
+                if (filter.ok(phasedTransaction)) {
+                    result.add(phasedTransaction);
                 }
-            }
-            blockchainProcessor.selectUnconfirmedTransactions(duplicates, getLastBlock(), -1).forEach(
-                    unconfirmedTransaction -> {
-                        TransactionImpl transaction = unconfirmedTransaction.getTransaction();
-                        if (transaction.getPhasing() == null && filter.ok(transaction)) {
-                            result.add(transaction);
-                        }
-                    }
-            );
+            });
+            template.getTransactions().forEach(unconfirmedTransaction -> {
+                TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+                if (transaction.getPhasing() == null && filter.ok(transaction)) {
+                    result.add(transaction);
+                }
+            });
         } finally {
             readUnlock();
         }
@@ -19,7 +19,6 @@ package nxt;
 import nxt.crypto.Crypto;
 import nxt.db.DbIterator;
 import nxt.db.DerivedDbTable;
-import nxt.db.FilteringIterator;
 import nxt.db.FullTextTrigger;
 import nxt.peer.Peer;
 import nxt.peer.Peers;
@@ -58,6 +57,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -179,8 +179,10 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
     private final BlockchainImpl blockchain = BlockchainImpl.getInstance();
 
     private final ExecutorService networkService = Executors.newCachedThreadPool();
+    private final ForkJoinPool verificationService = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     private final List<DerivedDbTable> derivedTables = new CopyOnWriteArrayList<>();
     private final boolean trimDerivedTables = Nxt.getBooleanProperty("nxt.trimDerivedTables");
+    private final ExecutorService trimService = Executors.newFixedThreadPool(Math.max(Nxt.getIntProperty("nxt.trimThreads"), 1));
     private final int defaultNumberOfForkConfirmations = Nxt.getIntProperty(Constants.isTestnet
             ? "nxt.testnetNumberOfForkConfirmations" : "nxt.numberOfForkConfirmations");
     private final boolean simulateEndlessDownload = Nxt.getBooleanProperty("nxt.simulateEndlessDownload");
@@ -496,12 +498,20 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         /**
          * Download the block chain
          *
+         * The download is pipelined when the peer chain extends our last block:  segments are
+         * fetched and parsed on the network threads, their signatures are verified on the
+         * verification threads, and each contiguous run of blocks is pushed as soon as it is
+         * available instead of after the whole download has completed.  A fork is processed
+         * once all of its blocks have been downloaded.
+         *
          * @param   feederPeer              Peer supplying the blocks list
          * @param   commonBlock             Common block
          * @throws  InterruptedException    Download interrupted
          */
         private void downloadBlockchain(final Peer feederPeer, final Block commonBlock, final int startHeight) throws InterruptedException {
             Map<Long, PeerBlock> blockMap = new HashMap<>();
+            boolean pushImmediately = blockchain.getLastBlock().getId() == commonBlock.getId();
+            int nextIndex = 1;
             //
             // Break the download into multiple segments.  The first block in each segment
             // is the common block for that segment.
@@ -568,13 +578,23 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                     }
                     Peer peer = nextBlocks.getPeer();
                     int index = nextBlocks.getStart() + 1;
+                    List<BlockImpl> segmentBlocks = new ArrayList<>(blockList.size());
                     for (BlockImpl block : blockList) {
                         if (block.getId() != chainBlockIds.get(index)) {
                             break;
                         }
-                        blockMap.put(block.getId(), new PeerBlock(peer, block));
+                        segmentBlocks.add(block);
                         index++;
                     }
+                    if (!segmentBlocks.isEmpty()) {
+                        PeerBlock previousPeerBlock = blockMap.get(chainBlockIds.get(nextBlocks.getStart()));
+                        Block previousBlock = nextBlocks.getStart() == 0 ? commonBlock
+                                : previousPeerBlock != null ? previousPeerBlock.getBlock() : null;
+                        Future<?> verification = verificationService.submit(() -> preVerifySignatures(previousBlock, segmentBlocks));
+                        for (BlockImpl block : segmentBlocks) {
+                            blockMap.put(block.getId(), new PeerBlock(peer, block, verification));
+                        }
+                    }
                     if (index > nextBlocks.getStop()) {
                         it.remove();
                     } else {
@@ -584,6 +604,15 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         maxResponseTime = nextBlocks.getResponseTime();
                         slowestPeer = nextBlocks.getPeer();
                     }
+                    //
+                    // Push the blocks which are now contiguous with our last block while
+                    // the remaining segments are still being downloaded
+                    //
+                    if (pushImmediately) {
+                        int pushIndex = pushDownloadedBlocks(blockMap, nextIndex, startHeight);
+                        pushImmediately = pushIndex > 0;
+                        nextIndex = Math.abs(pushIndex);
+                    }
                 }
 
             }
@@ -592,6 +621,19 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 slowestPeer.deactivate();
             }
             //
+            // Verify the signatures of the remaining downloaded blocks before locking the blockchain
+            //
+            List<BlockImpl> downloadedBlocks = new ArrayList<>();
+            for (int index = nextIndex; index < chainBlockIds.size(); index++) {
+                PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
+                if (peerBlock == null) {
+                    break;
+                }
+                downloadedBlocks.add(peerBlock.getBlock());
+            }
+            PeerBlock lastPushedBlock = nextIndex > 1 ? blockMap.get(chainBlockIds.get(nextIndex - 1)) : null;
+            preVerifySignatures(lastPushedBlock != null ? lastPushedBlock.getBlock() : commonBlock, downloadedBlocks);
+            //
             // Add the new blocks to the blockchain.  We will stop if we encounter
             // a missing block (this will happen if an invalid block is encountered
             // when downloading the blocks)
@@ -599,7 +641,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             blockchain.writeLock();
             try {
                 List<BlockImpl> forkBlocks = new ArrayList<>();
-                for (int index = 1; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
+                for (int index = nextIndex; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
                     PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
                     if (peerBlock == null) {
                         break;
@@ -629,6 +671,41 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
         }
 
+        /**
+         * Push the downloaded blocks which extend our last block, starting at the given index
+         * in the block identifier list and stopping at the first block not downloaded yet
+         *
+         * @param   blockMap                Downloaded blocks
+         * @param   index                   Index of the next block to push
+         * @param   startHeight             Blockchain height when the download started
+         * @return                          Index of the next block to push, negated if the blocks
+         *                                  can no longer be pushed as they arrive
+         * @throws  InterruptedException    Download interrupted
+         */
+        private int pushDownloadedBlocks(Map<Long, PeerBlock> blockMap, int index, int startHeight) throws InterruptedException {
+            for (; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
+                PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
+                if (peerBlock == null) {
+                    return index;
+                }
+                peerBlock.awaitVerification();
+                BlockImpl block = peerBlock.getBlock();
+                blockchain.writeLock();
+                try {
+                    if (blockchain.getLastBlock().getId() != block.getPreviousBlockId()) {
+                        return -index;
+                    }
+                    pushBlock(block);
+                } catch (BlockNotAcceptedException e) {
+                    peerBlock.getPeer().blacklist(e);
+                    return -(index + 1);
+                } finally {
+                    blockchain.writeUnlock();
+                }
+            }
+            return -index;
+        }
+
         private void processFork(final Peer peer, final List<BlockImpl> forkBlocks, final Block commonBlock) {
 
             BigInteger curCumulativeDifficulty = blockchain.getLastBlock().getCumulativeDifficulty();
@@ -752,7 +829,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             // an invalid block.  We will return the valid blocks and reset the stop
             // index so no more blocks will be processed.
             //
-            List<JSONObject> nextBlocks = (List<JSONObject>)response.get("nextBlocks");
+            List<Object> nextBlocks = (List<Object>)response.get("nextBlocks");
             if (nextBlocks == null)
                 return null;
             if (nextBlocks.size() > 36) {
@@ -763,8 +840,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             List<BlockImpl> blockList = new ArrayList<>(nextBlocks.size());
             try {
                 int count = stop - start;
-                for (JSONObject blockData : nextBlocks) {
-                    blockList.add(BlockImpl.parseBlock(blockData));
+                for (Object blockData : nextBlocks) {
+                    blockList.add(blockData instanceof byte[] ? BlockImpl.parseBlock((byte[])blockData)
+                            : BlockImpl.parseBlock((JSONObject)blockData));
                     if (--count <= 0)
                         break;
                 }
@@ -869,15 +947,20 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         /** Block */
         private final BlockImpl block;
 
+        /** Signature verification of the block segment */
+        private final Future<?> verification;
+
         /**
          * Create the peer block
          *
          * @param   peer                Peer
          * @param   block               Block
+         * @param   verification        Signature verification of the block segment
          */
-        public PeerBlock(Peer peer, BlockImpl block) {
+        public PeerBlock(Peer peer, BlockImpl block, Future<?> verification) {
             this.peer = peer;
             this.block = block;
+            this.verification = verification;
         }
 
         /**
@@ -897,6 +980,19 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         public BlockImpl getBlock() {
             return block;
         }
+
+        /**
+         * Wait for the signature verification of the block segment to complete
+         *
+         * @throws  InterruptedException    Wait interrupted
+         */
+        public void awaitVerification() throws InterruptedException {
+            try {
+                verification.get();
+            } catch (ExecutionException e) {
+                Logger.logDebugMessage("Block signature verification failed: " + e.getCause().toString());
+            }
+        }
     }
 
     /**
@@ -1123,9 +1219,29 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     @Override
     public void trimDerivedTables() {
+        lastTrimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
+        if (lastTrimHeight > 0) {
+            final int trimHeight = lastTrimHeight;
+            List<Future<?>> futures = new ArrayList<>(derivedTables.size());
+            for (DerivedDbTable table : derivedTables) {
+                futures.add(trimService.submit(() -> trimDerivedTable(table, trimHeight)));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause().toString(), e.getCause());
+            }
+        }
+    }
+
+    private void trimDerivedTable(DerivedDbTable table, int height) {
         try {
             Db.db.beginTransaction();
-            doTrimDerivedTables();
+            doTrimDerivedTable(table, height);
             Db.db.commitTransaction();
         } catch (Exception e) {
             Logger.logMessage(e.toString(), e);
@@ -1140,17 +1256,26 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         lastTrimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
         if (lastTrimHeight > 0) {
             for (DerivedDbTable table : derivedTables) {
-                blockchain.readLock();
-                try {
-                    table.trim(lastTrimHeight);
-                    Db.db.commitTransaction();
-                } finally {
-                    blockchain.readUnlock();
-                }
+                doTrimDerivedTable(table, lastTrimHeight);
             }
         }
     }
 
+    /**
+     * Trim a table in chunks, releasing the blockchain lock after each chunk so that block processing is not delayed
+     */
+    private void doTrimDerivedTable(DerivedDbTable table, int height) {
+        do {
+            blockchain.readLock();
+            try {
+                table.trim(height);
+                Db.db.commitTransaction();
+            } finally {
+                blockchain.readUnlock();
+            }
+        } while (table.isTrimPending());
+    }
+
     List<DerivedDbTable> getDerivedTables() {
         return derivedTables;
     }
@@ -1192,7 +1317,16 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     @Override
     public void processPeerBlock(JSONObject request) throws NxtException {
-        BlockImpl block = BlockImpl.parseBlock(request);
+        BlockImpl block;
+        Object blockData = request.get("block");
+        if (request.get("transactionIds") != null) {
+            block = parseCompactBlock(request);
+            if (block == null) {
+                return; // the block will be obtained when downloading blocks
+            }
+        } else {
+            block = blockData instanceof byte[] ? BlockImpl.parseBlock((byte[])blockData) : BlockImpl.parseBlock(request);
+        }
         BlockImpl lastBlock = blockchain.getLastBlock();
         if (block.getPreviousBlockId() == lastBlock.getId()) {
             pushBlock(block);
@@ -1219,6 +1353,55 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         } // else ignore the block
     }
 
+    /**
+     * Rebuild a compact block using the transactions in the unconfirmed pool and the missing
+     * transactions received from the peer
+     *
+     * @param   request             Compact block request
+     * @return                      Block or null if the block cannot be rebuilt
+     * @throws  NxtException.NotValidException  Block or transaction is not valid
+     */
+    private BlockImpl parseCompactBlock(JSONObject request) throws NxtException.NotValidException {
+        Object blockHeader = request.get("blockHeader");
+        byte[] blockBytes = blockHeader instanceof byte[] ? (byte[])blockHeader : Convert.parseHexString((String)blockHeader);
+        Map<Long, TransactionImpl> receivedTransactions = new HashMap<>();
+        JSONArray transactionsData = (JSONArray)request.get("transactions");
+        JSONArray transactionIds = (JSONArray)request.get("transactionIds");
+        if (transactionIds.size() > Constants.MAX_NUMBER_OF_TRANSACTIONS
+                || (transactionsData != null && transactionsData.size() > transactionIds.size())) {
+            throw new NxtException.NotValidException("Invalid compact block transaction count");
+        }
+        if (transactionsData != null) {
+            for (Object transactionData : transactionsData) {
+                TransactionImpl transaction = transactionData instanceof byte[] ? TransactionImpl.parseTransaction((byte[])transactionData)
+                        : TransactionImpl.parseTransaction((JSONObject)transactionData);
+                receivedTransactions.put(transaction.getId(), transaction);
+            }
+        }
+        List<TransactionImpl> blockTransactions = new ArrayList<>();
+        MessageDigest digest = Crypto.sha256();
+        for (Object transactionId : transactionIds) {
+            long id = Convert.parseUnsignedLong((String)transactionId);
+            TransactionImpl transaction = receivedTransactions.get(id);
+            if (transaction == null) {
+                UnconfirmedTransaction unconfirmedTransaction = TransactionProcessorImpl.getInstance().getUnconfirmedTransaction(id);
+                if (unconfirmedTransaction == null) {
+                    Logger.logDebugMessage("Unable to rebuild compact block, transaction " + Long.toUnsignedString(id) + " is not available");
+                    return null;
+                }
+                transaction = unconfirmedTransaction.getTransaction();
+            }
+            blockTransactions.add(transaction);
+            digest.update(transaction.bytes());
+        }
+        BlockImpl block = BlockImpl.parseBlock(blockBytes, blockTransactions);
+        if (!Arrays.equals(digest.digest(), block.getPayloadHash())) {
+            Logger.logDebugMessage("Unable to rebuild compact block " + block.getStringId() + ", payload hash does not match");
+            return null;
+        }
+        return block;
+    }
+
     @Override
     public List<BlockImpl> popOffTo(int height) {
         if (height <= 0) {
@@ -1349,6 +1532,8 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     void shutdown() {
         ThreadPool.shutdownExecutor("networkService", networkService, 5);
+        ThreadPool.shutdownExecutor("trimService", trimService, 5);
+        ThreadPool.shutdownExecutor("verificationService", verificationService, 5);
     }
 
     private void addBlock(BlockImpl block) {
@@ -1405,6 +1590,8 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
         int curTime = Nxt.getEpochTime();
 
+        preVerifySignatures(blockchain.getLastBlock(), Collections.singletonList(block));
+
         blockchain.writeLock();
         try {
             BlockImpl previousLastBlock = null;
@@ -1457,27 +1644,50 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     }
 
+    /**
+     * Verify the block, generation and transaction signatures of a chain of blocks in parallel,
+     * without holding the blockchain lock. The results are memoized, so that validation under the lock
+     * only needs to check the public keys and the effective balance. Invalid signatures are not reported
+     * here, the blocks will be rejected when validated.
+     *
+     * @param   previousBlock           Block preceding the first block, or null if not known
+     * @param   blocks                  Blocks in chain order
+     */
+    private void preVerifySignatures(Block previousBlock, List<BlockImpl> blocks) {
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (BlockImpl block : blocks) {
+            tasks.add(block::checkSignature);
+            if (previousBlock != null && previousBlock.getId() == block.getPreviousBlockId()) {
+                byte[] previousGenerationSignature = previousBlock.getGenerationSignature();
+                tasks.add(() -> block.checkGenerationSignature(previousGenerationSignature));
+            }
+            for (TransactionImpl transaction : block.getTransactions()) {
+                tasks.add(transaction::checkSignature);
+            }
+            previousBlock = block;
+        }
+        verificationService.invokeAll(tasks);
+    }
+
     private void validatePhasedTransactions(int height, List<TransactionImpl> validPhasedTransactions, List<TransactionImpl> invalidPhasedTransactions,
                                             Map<TransactionType, Map<String, Integer>> duplicates) {
         if (height >= Constants.PHASING_BLOCK) {
-            try (DbIterator<TransactionImpl> phasedTransactions = PhasingPoll.getFinishingTransactions(height + 1)) {
-                for (TransactionImpl phasedTransaction : phasedTransactions) {
-                    if (height > Constants.SHUFFLING_BLOCK && PhasingPoll.getResult(phasedTransaction.getId()) != null) {
-                        continue;
-                    }
-                    try {
-                        phasedTransaction.validate();
-                        if (!phasedTransaction.attachmentIsDuplicate(duplicates, false)) {
-                            validPhasedTransactions.add(phasedTransaction);
-                        } else {
-                            Logger.logDebugMessage("At height " + height + " phased transaction " + phasedTransaction.getStringId() + " is duplicate, will not apply");
-                            invalidPhasedTransactions.add(phasedTransaction);
-                        }
-                    } catch (NxtException.ValidationException e) {
-                        Logger.logDebugMessage("At height " + height + " phased transaction " + phasedTransaction.getStringId() + " no longer passes validation: "
-                                + e.getMessage() + ", will not apply");
+            for (TransactionImpl phasedTransaction : PhasingPoll.getFinishingTransactions(height + 1)) {
+                if (height > Constants.SHUFFLING_BLOCK && PhasingPoll.getResult(phasedTransaction.getId()) != null) {
+                    continue;
+                }
+                try {
+                    phasedTransaction.validate();
+                    if (!phasedTransaction.attachmentIsDuplicate(duplicates, false)) {
+                        validPhasedTransactions.add(phasedTransaction);
+                    } else {
+                        Logger.logDebugMessage("At height " + height + " phased transaction " + phasedTransaction.getStringId() + " is duplicate, will not apply");
                         invalidPhasedTransactions.add(phasedTransaction);
                     }
+                } catch (NxtException.ValidationException e) {
+                    Logger.logDebugMessage("At height " + height + " phased transaction " + phasedTransaction.getStringId() + " no longer passes validation: "
+                            + e.getMessage() + ", will not apply");
+                    invalidPhasedTransactions.add(phasedTransaction);
                 }
             }
         }
@@ -1634,11 +1844,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             if (block.getHeight() > Constants.SHUFFLING_BLOCK) {
                 SortedSet<TransactionImpl> possiblyApprovedTransactions = new TreeSet<>(finishingTransactionsComparator);
                 block.getTransactions().forEach(transaction -> {
-                    PhasingPoll.getLinkedPhasedTransactions(transaction.fullHash()).forEach(phasedTransaction -> {
-                        if (phasedTransaction.getPhasing().getFinishHeight() > block.getHeight()) {
-                            possiblyApprovedTransactions.add((TransactionImpl)phasedTransaction);
-                        }
-                    });
+                    possiblyApprovedTransactions.addAll(PhasingPoll.getLinkedPendingTransactions(transaction.fullHash(), block.getHeight()));
                     if (transaction.getType() == TransactionType.Messaging.PHASING_VOTE_CASTING && !transaction.attachmentIsPhased()) {
                         Attachment.MessagingPhasingVoteCasting voteCasting = (Attachment.MessagingPhasingVoteCasting)transaction.getAttachment();
                         voteCasting.getTransactionFullHashes().forEach(hash -> {
@@ -1774,7 +1980,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                 : 3;
     }
 
-    private int getTransactionVersion(int previousBlockHeight) {
+    int getTransactionVersion(int previousBlockHeight) {
         return previousBlockHeight < Constants.DIGITAL_GOODS_STORE_BLOCK ? 0 : 1;
     }
 
@@ -1806,73 +2012,45 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
-    SortedSet<UnconfirmedTransaction> selectUnconfirmedTransactions(Map<TransactionType, Map<String, Integer>> duplicates, Block previousBlock, int blockTimestamp) {
-        List<UnconfirmedTransaction> orderedUnconfirmedTransactions = new ArrayList<>();
-        try (FilteringIterator<UnconfirmedTransaction> unconfirmedTransactions = new FilteringIterator<>(
-                TransactionProcessorImpl.getInstance().getAllUnconfirmedTransactions(),
-                transaction -> hasAllReferencedTransactions(transaction.getTransaction(), transaction.getTimestamp(), 0))) {
-            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                orderedUnconfirmedTransactions.add(unconfirmedTransaction);
+    private final Object blockTemplateLock = new Object();
+    private BlockTemplate blockTemplate;
+
+    /**
+     * Return the block template for the block following the previous block.  The template for the
+     * last block is cached and updated with the transactions added to the unconfirmed pool.
+     *
+     * @param   previousBlock       Previous block
+     * @return                      Block template
+     */
+    BlockTemplate getBlockTemplate(BlockImpl previousBlock) {
+        blockchain.readLock();
+        try {
+            if (Db.db.isInTransaction() || previousBlock.getId() != blockchain.getLastBlock().getId()) {
+                return new BlockTemplate(previousBlock, -1);
             }
-        }
-        SortedSet<UnconfirmedTransaction> sortedTransactions = new TreeSet<>(transactionArrivalComparator);
-        int payloadLength = 0;
-        while (payloadLength <= Constants.MAX_PAYLOAD_LENGTH && sortedTransactions.size() <= Constants.MAX_NUMBER_OF_TRANSACTIONS) {
-            int prevNumberOfNewTransactions = sortedTransactions.size();
-            for (UnconfirmedTransaction unconfirmedTransaction : orderedUnconfirmedTransactions) {
-                int transactionLength = unconfirmedTransaction.getTransaction().getFullSize();
-                if (sortedTransactions.contains(unconfirmedTransaction) || payloadLength + transactionLength > Constants.MAX_PAYLOAD_LENGTH) {
-                    continue;
-                }
-                if (unconfirmedTransaction.getVersion() != getTransactionVersion(previousBlock.getHeight())) {
-                    continue;
-                }
-                if (blockTimestamp > 0 && (unconfirmedTransaction.getTimestamp() > blockTimestamp + Constants.MAX_TIMEDRIFT
-                        || unconfirmedTransaction.getExpiration() < blockTimestamp)) {
-                    continue;
-                }
-                try {
-                    unconfirmedTransaction.getTransaction().validate();
-                } catch (NxtException.ValidationException e) {
-                    continue;
-                }
-                if (unconfirmedTransaction.getTransaction().attachmentIsDuplicate(duplicates, true)) {
-                    continue;
+            synchronized (blockTemplateLock) {
+                if (blockTemplate == null || blockTemplate.getPreviousBlockId() != previousBlock.getId() || !blockTemplate.update()) {
+                    blockTemplate = new BlockTemplate(previousBlock, -1);
                 }
-                sortedTransactions.add(unconfirmedTransaction);
-                payloadLength += transactionLength;
-            }
-            if (sortedTransactions.size() == prevNumberOfNewTransactions) {
-                break;
+                return blockTemplate;
             }
+        } finally {
+            blockchain.readUnlock();
         }
-        return sortedTransactions;
     }
 
-
-    private static final Comparator<UnconfirmedTransaction> transactionArrivalComparator = Comparator
-            .comparingLong(UnconfirmedTransaction::getArrivalTimestamp)
-            .thenComparingInt(UnconfirmedTransaction::getHeight)
-            .thenComparingLong(UnconfirmedTransaction::getId);
-
     void generateBlock(String secretPhrase, int blockTimestamp) throws BlockNotAcceptedException {
 
-        Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
-        if (blockchain.getHeight() >= Constants.PHASING_BLOCK) {
-            try (DbIterator<TransactionImpl> phasedTransactions = PhasingPoll.getFinishingTransactions(blockchain.getHeight() + 1)) {
-                for (TransactionImpl phasedTransaction : phasedTransactions) {
-                    try {
-                        phasedTransaction.validate();
-                        phasedTransaction.attachmentIsDuplicate(duplicates, false); // pre-populate duplicates map
-                    } catch (NxtException.ValidationException ignore) {
-                    }
-                }
-            }
-        }
-
         BlockImpl previousBlock = blockchain.getLastBlock();
         TransactionProcessorImpl.getInstance().processWaitingTransactions();
-        SortedSet<UnconfirmedTransaction> sortedTransactions = selectUnconfirmedTransactions(duplicates, previousBlock, blockTimestamp);
+        //
+        // Use the block template unless some of its transactions are not valid for the block timestamp
+        //
+        BlockTemplate template = getBlockTemplate(previousBlock);
+        if (!template.isValid(blockTimestamp)) {
+            template = new BlockTemplate(previousBlock, blockTimestamp);
+        }
+        SortedSet<UnconfirmedTransaction> sortedTransactions = template.getTransactions();
         List<TransactionImpl> blockTransactions = new ArrayList<>();
         MessageDigest digest = Crypto.sha256();
         long totalAmountNQT = 0;
@@ -2046,6 +2224,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                                 List<TransactionImpl> invalidPhasedTransactions = new ArrayList<>();
                                 validatePhasedTransactions(blockchain.getHeight(), validPhasedTransactions, invalidPhasedTransactions, duplicates);
                                 if (validate && currentBlockId != Genesis.GENESIS_BLOCK_ID) {
+                                    preVerifySignatures(blockchain.getLastBlock(), Collections.singletonList(currentBlock));
                                     int curTime = Nxt.getEpochTime();
                                     validate(currentBlock, blockchain.getLastBlock(), curTime);
                                     byte[] blockBytes = currentBlock.bytes();
@@ -34,6 +34,7 @@ public final class Db {
             .loginTimeout(Nxt.getIntProperty("nxt.dbLoginTimeout"))
             .defaultLockTimeout(Nxt.getIntProperty("nxt.dbDefaultLockTimeout") * 1000)
             .maxMemoryRows(Nxt.getIntProperty("nxt.dbMaxMemoryRows"))
+            .statementCacheSize(Nxt.getIntProperty("nxt.dbStatementCacheSize"))
     );
 
     static void init() {
@@ -18,6 +18,7 @@ package nxt;
 
 import nxt.crypto.Crypto;
 import nxt.db.DbIterator;
+import nxt.util.AsyncSubscriber;
 import nxt.util.Convert;
 import nxt.util.Filter;
 import nxt.util.Listener;
@@ -74,6 +75,9 @@ public final class FundingMonitor {
     /** Pending updates */
     private static final ConcurrentLinkedQueue<MonitoredAccount> pendingEvents = new ConcurrentLinkedQueue<>();
 
+    /** Event subscriber - events are processed asynchronously so that block processing is not delayed */
+    private static final AsyncSubscriber eventSubscriber = new AsyncSubscriber("Account monitor", 10000);
+
     /** Account monitor holding type */
     private final HoldingType holdingType;
 
@@ -468,14 +472,26 @@ public final class FundingMonitor {
             Thread processingThread = new ProcessEvents();
             processingThread.start();
             //
-            // Register our event listeners
+            // Register our event listeners.  Only the events for monitored accounts and properties are queued,
+            // and the block event which triggers the processing of the pending events is never discarded.
             //
-            Account.addListener(new AccountEventHandler(), Account.Event.BALANCE);
-            Account.addAssetListener(new AssetEventHandler(), Account.Event.ASSET_BALANCE);
-            Account.addCurrencyListener(new CurrencyEventHandler(), Account.Event.CURRENCY_BALANCE);
-            Account.addPropertyListener(new SetPropertyEventHandler(), Account.Event.SET_PROPERTY);
-            Account.addPropertyListener(new DeletePropertyEventHandler(), Account.Event.DELETE_PROPERTY);
-            Nxt.getBlockchainProcessor().addListener(new BlockEventHandler(), BlockchainProcessor.Event.BLOCK_PUSHED);
+            Account.addListener(eventSubscriber.listener(
+                    account -> isMonitored(account.getId(), HoldingType.NXT, 0),
+                    new AccountEventHandler()), Account.Event.BALANCE);
+            Account.addAssetListener(eventSubscriber.listener(
+                    asset -> isMonitored(asset.getAccountId(), HoldingType.ASSET, asset.getAssetId()),
+                    new AssetEventHandler()), Account.Event.ASSET_BALANCE);
+            Account.addCurrencyListener(eventSubscriber.listener(
+                    currency -> isMonitored(currency.getAccountId(), HoldingType.CURRENCY, currency.getCurrencyId()),
+                    new CurrencyEventHandler()), Account.Event.CURRENCY_BALANCE);
+            Account.addPropertyListener(eventSubscriber.listener(
+                    property -> isMonitored(property.getProperty()),
+                    new SetPropertyEventHandler()), Account.Event.SET_PROPERTY);
+            Account.addPropertyListener(eventSubscriber.listener(
+                    property -> isMonitored(property.getProperty()),
+                    new DeletePropertyEventHandler()), Account.Event.DELETE_PROPERTY);
+            Nxt.getBlockchainProcessor().addListener(eventSubscriber.blockingListener(new BlockEventHandler()),
+                    BlockchainProcessor.Event.BLOCK_PUSHED);
             //
             // All done
             //
@@ -488,6 +504,46 @@ public final class FundingMonitor {
         }
     }
 
+    /**
+     * Check if an account is monitored for a holding
+     *
+     * @param   accountId           Account identifier
+     * @param   holdingType         Holding type
+     * @param   holdingId           Asset or currency identifier, ignored for NXT
+     * @return                      TRUE if the account is monitored
+     */
+    private static boolean isMonitored(long accountId, HoldingType holdingType, long holdingId) {
+        synchronized(monitors) {
+            List<MonitoredAccount> accountList = accounts.get(accountId);
+            if (accountList != null) {
+                for (MonitoredAccount account : accountList) {
+                    if (account.monitor.holdingType == holdingType &&
+                            (holdingType == HoldingType.NXT || account.monitor.holdingId == holdingId)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if an account property is used by an active monitor
+     *
+     * @param   property            Account property
+     * @return                      TRUE if there is a monitor for the property
+     */
+    private static boolean isMonitored(String property) {
+        synchronized(monitors) {
+            for (FundingMonitor monitor : monitors) {
+                if (monitor.property.equals(property)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Stop monitor processing
      */
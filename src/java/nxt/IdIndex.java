@@ -0,0 +1,315 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.db.TransactionalDb;
+import nxt.util.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory index of the block or transaction identifiers stored in the database, used to answer
+ * existence checks without a database query.
+ * <p>
+ * A Bloom filter contains every identifier which has been saved.  Identifiers are not removed when blocks are
+ * deleted, so a negative answer is exact and a positive answer must be confirmed by the database.  The filter is
+ * loaded from the database when it is first used and is rebuilt with twice the capacity when it becomes full.
+ * <p>
+ * The heights of the identifiers saved during the last MAX_ROLLBACK blocks are kept in a map, so recent
+ * identifiers can be found without a database query.  Identifiers are added to the map when the database
+ * transaction is committed, and the map is cleared when blocks are deleted.
+ */
+final class IdIndex implements TransactionalDb.TransactionCallback {
+
+    /** Minimum Bloom filter capacity */
+    private static final int MIN_CAPACITY = 1024 * 1024;
+
+    /** Bloom filter bits per identifier */
+    private static final int BITS_PER_ID = 10;
+
+    /** Bloom filter hash functions */
+    private static final int HASH_COUNT = 7;
+
+    private final String table;
+    private final ThreadLocal<HeightMap> pendingIds = new ThreadLocal<>();
+    private volatile BloomFilter filter;
+    private HeightMap currentIds = new HeightMap();
+    private HeightMap previousIds = new HeightMap();
+    private int currentStartHeight = -1;
+
+    /**
+     * Create the index for a table
+     *
+     * @param   table               Table with an 'id' column
+     */
+    IdIndex(String table) {
+        this.table = table;
+    }
+
+    /**
+     * Check if an identifier might be in the database
+     *
+     * @param   id                  Identifier
+     * @return                      FALSE if the identifier is not in the database
+     */
+    boolean mightContain(long id) {
+        return getFilter().mightContain(id);
+    }
+
+    /**
+     * Return the height of a recent identifier
+     *
+     * @param   id                  Identifier
+     * @return                      Height, or -1 if the identifier is not in the database or is not recent
+     */
+    int getHeight(long id) {
+        BloomFilter bloomFilter = getFilter();
+        if (!bloomFilter.mightContain(id)) {
+            return -1;
+        }
+        synchronized (this) {
+            int height = currentIds.get(id);
+            return height >= 0 ? height : previousIds.get(id);
+        }
+    }
+
+    /**
+     * Add an identifier saved within the current database transaction
+     *
+     * @param   id                  Identifier
+     * @param   height              Height
+     */
+    void add(long id, int height) {
+        getFilter().add(id);
+        if (!Db.db.isInTransaction()) {
+            return;
+        }
+        HeightMap pending = pendingIds.get();
+        if (pending == null) {
+            pending = new HeightMap();
+            pendingIds.set(pending);
+            Db.db.registerCallback(this);
+        }
+        pending.put(id, height);
+    }
+
+    /**
+     * Remove the recent identifiers after blocks have been deleted.  The identifiers remain in the Bloom filter.
+     */
+    synchronized void clearRecent() {
+        currentIds = new HeightMap();
+        previousIds = new HeightMap();
+        currentStartHeight = -1;
+    }
+
+    @Override
+    public void commit() {
+        HeightMap pending = pendingIds.get();
+        if (pending == null) {
+            return;
+        }
+        pendingIds.remove();
+        synchronized (this) {
+            pending.forEach((id, height) -> {
+                if (currentStartHeight < 0) {
+                    currentStartHeight = height;
+                } else if (height >= currentStartHeight + Constants.MAX_ROLLBACK) {
+                    previousIds = currentIds;
+                    currentIds = new HeightMap();
+                    currentStartHeight = height;
+                }
+                currentIds.put(id, height);
+            });
+        }
+        BloomFilter bloomFilter = filter;
+        if (bloomFilter != null && bloomFilter.count > bloomFilter.capacity) {
+            synchronized (this) {
+                if (filter == bloomFilter) {
+                    filter = loadFilter(bloomFilter.count * 2);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rollback() {
+        pendingIds.remove();
+    }
+
+    private BloomFilter getFilter() {
+        BloomFilter bloomFilter = filter;
+        if (bloomFilter == null) {
+            synchronized (this) {
+                if ((bloomFilter = filter) == null) {
+                    bloomFilter = loadFilter(0);
+                    filter = bloomFilter;
+                }
+            }
+        }
+        return bloomFilter;
+    }
+
+    private BloomFilter loadFilter(long minCapacity) {
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement()) {
+            long count;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                rs.next();
+                count = rs.getLong(1);
+            }
+            BloomFilter bloomFilter = new BloomFilter((int)Math.min(Math.max(Math.max(count * 2, minCapacity), MIN_CAPACITY),
+                    Integer.MAX_VALUE / BITS_PER_ID));
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM " + table)) {
+                while (rs.next()) {
+                    bloomFilter.add(rs.getLong(1));
+                }
+            }
+            Logger.logDebugMessage("Loaded %s index with %d identifiers, capacity %d", table, bloomFilter.count, bloomFilter.capacity);
+            return bloomFilter;
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Bloom filter for identifiers.  Identifiers are derived from SHA-256 hashes, so they are used as hash values.
+     */
+    static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int capacity;
+        private volatile int count;
+
+        BloomFilter(int capacity) {
+            this.capacity = capacity;
+            this.bitCount = (long)capacity * BITS_PER_ID;
+            this.bits = new AtomicLongArray((int)((bitCount + 63) / 64));
+        }
+
+        void add(long id) {
+            long hash2 = mix(id);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                long bit = Math.floorMod(id + i * hash2, bitCount);
+                long mask = 1L << (bit & 63);
+                bits.accumulateAndGet((int)(bit >>> 6), mask, (value, m) -> value | m);
+            }
+            count++;
+        }
+
+        boolean mightContain(long id) {
+            long hash2 = mix(id);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                long bit = Math.floorMod(id + i * hash2, bitCount);
+                if ((bits.get((int)(bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long mix(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (h ^ (h >>> 32)) | 1;
+        }
+    }
+
+    /**
+     * Open addressing map from identifier to height
+     */
+    static final class HeightMap {
+
+        private long[] ids = new long[64];
+        private int[] heights = new int[64];
+        private boolean hasZero;
+        private int zeroHeight;
+        private int size;
+
+        int get(long id) {
+            if (id == 0) {
+                return hasZero ? zeroHeight : -1;
+            }
+            int mask = ids.length - 1;
+            for (int i = index(id, mask); ; i = (i + 1) & mask) {
+                if (ids[i] == id) {
+                    return heights[i];
+                }
+                if (ids[i] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long id, int height) {
+            if (id == 0) {
+                hasZero = true;
+                zeroHeight = height;
+                return;
+            }
+            if ((size + 1) * 4 > ids.length * 3) {
+                resize();
+            }
+            int mask = ids.length - 1;
+            int i = index(id, mask);
+            while (ids[i] != 0 && ids[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (ids[i] == 0) {
+                ids[i] = id;
+                size++;
+            }
+            heights[i] = height;
+        }
+
+        void forEach(IdConsumer consumer) {
+            if (hasZero) {
+                consumer.accept(0, zeroHeight);
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    consumer.accept(ids[i], heights[i]);
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldIds = ids;
+            int[] oldHeights = heights;
+            ids = new long[oldIds.length * 2];
+            heights = new int[oldIds.length * 2];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    put(oldIds[i], oldHeights[i]);
+                }
+            }
+        }
+
+        private static int index(long id, int mask) {
+            return (int)(id ^ (id >>> 32)) & mask;
+        }
+    }
+
+    @FunctionalInterface
+    interface IdConsumer {
+        void accept(long id, int height);
+    }
+}
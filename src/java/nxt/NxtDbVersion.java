@@ -1188,6 +1188,14 @@ class NxtDbVersion extends DbVersion {
             case 489:
                 apply("CREATE INDEX IF NOT EXISTS asset_dividend_height_idx ON asset_dividend (height)");
             case 490:
+                apply("DROP INDEX IF EXISTS account_active_lessee_id_idx");
+            case 491:
+                apply("CREATE INDEX IF NOT EXISTS account_active_lessee_id_idx ON account (active_lessee_id, id)");
+            case 492:
+                apply("DROP INDEX IF EXISTS account_guaranteed_balance_height_idx");
+            case 493:
+                apply("CREATE INDEX IF NOT EXISTS account_guaranteed_balance_height_idx ON account_guaranteed_balance (height, account_id)");
+            case 494:
                 return;
             default:
                 throw new RuntimeException("Blockchain database inconsistent with code, at update " + nextUpdate
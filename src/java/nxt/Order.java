@@ -20,12 +20,20 @@ import nxt.AccountLedger.LedgerEvent;
 import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
+import nxt.db.TransactionalDb;
 import nxt.db.VersionedEntityDbTable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 public abstract class Order {
 
@@ -88,6 +96,17 @@ public abstract class Order {
         this.transactionHeight = transaction.getHeight();
     }
 
+    private Order(Order order) {
+        this.id = order.id;
+        this.accountId = order.accountId;
+        this.assetId = order.assetId;
+        this.priceNQT = order.priceNQT;
+        this.quantityQNT = order.quantityQNT;
+        this.creationHeight = order.creationHeight;
+        this.transactionIndex = order.transactionIndex;
+        this.transactionHeight = order.transactionHeight;
+    }
+
     private Order(ResultSet rs) throws SQLException {
         this.id = rs.getLong("id");
         this.accountId = rs.getLong("account_id");
@@ -178,6 +197,165 @@ public abstract class Order {
     }
     */
 
+    /**
+     * In-memory price-time priority order book of the current orders of each asset, used to find the next
+     * order to match. The book of an asset is loaded from the order table the first time the asset is
+     * accessed outside a database transaction.
+     * <p>
+     * The book of an asset is copied when it is first changed within a database transaction, and the copy
+     * replaces the shared book when the transaction is committed. Rolling back the order table to a
+     * previous height drops all books, and they are reloaded as needed.
+     */
+    private static final class OrderBook<T extends Order> implements TransactionalDb.TransactionCallback {
+
+        private final VersionedEntityDbTable<T> table;
+        private final DbKey.LongKeyFactory<T> dbKeyFactory;
+        private final Comparator<Order> comparator;
+        private final String sort;
+        private final UnaryOperator<T> copier;
+        private final Map<Long, NavigableSet<T>> books = new ConcurrentHashMap<>();
+        private final ThreadLocal<Changes<T>> pendingChanges = new ThreadLocal<>();
+        private long generation;
+
+        private OrderBook(VersionedEntityDbTable<T> table, DbKey.LongKeyFactory<T> dbKeyFactory,
+                          Comparator<Order> priceComparator, String sort, UnaryOperator<T> copier) {
+            this.table = table;
+            this.dbKeyFactory = dbKeyFactory;
+            this.comparator = priceComparator
+                    .thenComparingInt(Order::getHeight)
+                    .thenComparingInt(Order::getTransactionHeight)
+                    .thenComparingInt(Order::getTransactionIndex)
+                    .thenComparingLong(Order::getId);
+            this.sort = sort;
+            this.copier = copier;
+        }
+
+        /**
+         * Return the order with the highest priority, as the table entity so that it can be updated
+         */
+        private T getNextOrder(long assetId) {
+            NavigableSet<T> book = getBook(assetId);
+            if (book == null) {
+                try (DbIterator<T> orders = table.getManyBy(new DbClause.LongClause("asset_id", assetId), 0, 0, sort)) {
+                    return orders.hasNext() ? orders.next() : null;
+                }
+            }
+            return book.isEmpty() ? null : table.get(dbKeyFactory.newKey(book.first().getId()));
+        }
+
+        /**
+         * A new order has been saved, or the quantity of an existing order has changed
+         */
+        private void update(T order) {
+            NavigableSet<T> book = getChangedBook(order.getAssetId());
+            if (book != null) {
+                book.remove(order);
+                book.add(copier.apply(order));
+            }
+        }
+
+        private void remove(T order) {
+            NavigableSet<T> book = getChangedBook(order.getAssetId());
+            if (book != null) {
+                book.remove(order);
+            }
+        }
+
+        private void invalidate() {
+            Changes<T> changes = getChanges();
+            changes.books.clear();
+            changes.invalidated = true;
+        }
+
+        @Override
+        public void commit() {
+            Changes<T> changes = pendingChanges.get();
+            if (changes == null) {
+                return;
+            }
+            pendingChanges.remove();
+            synchronized (this) {
+                generation += 1;
+                if (changes.invalidated) {
+                    books.clear();
+                } else {
+                    books.putAll(changes.books);
+                }
+            }
+        }
+
+        @Override
+        public void rollback() {
+            pendingChanges.remove();
+        }
+
+        private NavigableSet<T> getBook(long assetId) {
+            Changes<T> changes = pendingChanges.get();
+            if (changes != null) {
+                if (changes.invalidated) {
+                    return null;
+                }
+                NavigableSet<T> book = changes.books.get(assetId);
+                if (book != null) {
+                    return book;
+                }
+            }
+            NavigableSet<T> book = books.get(assetId);
+            return book != null ? book : load(assetId);
+        }
+
+        private NavigableSet<T> getChangedBook(long assetId) {
+            Changes<T> changes = getChanges();
+            if (changes.invalidated) {
+                return null;
+            }
+            NavigableSet<T> book = changes.books.get(assetId);
+            if (book == null) {
+                NavigableSet<T> sharedBook = books.get(assetId);
+                book = new TreeSet<>(sharedBook != null ? sharedBook : load(assetId));
+                changes.books.put(assetId, book);
+            }
+            return book;
+        }
+
+        private NavigableSet<T> load(long assetId) {
+            long generation;
+            synchronized (this) {
+                generation = this.generation;
+            }
+            NavigableSet<T> book = new TreeSet<>(comparator);
+            try (DbIterator<T> orders = table.getManyBy(new DbClause.LongClause("asset_id", assetId), 0, -1)) {
+                orders.forEach(order -> book.add(copier.apply(order)));
+            }
+            if (!Db.db.isInTransaction()) {
+                synchronized (this) {
+                    if (this.generation == generation) {
+                        books.putIfAbsent(assetId, book);
+                    }
+                }
+            }
+            return book;
+        }
+
+        private Changes<T> getChanges() {
+            if (!Db.db.isInTransaction()) {
+                throw new IllegalStateException("Not in transaction");
+            }
+            Changes<T> changes = pendingChanges.get();
+            if (changes == null) {
+                changes = new Changes<>();
+                pendingChanges.set(changes);
+                Db.db.registerCallback(this);
+            }
+            return changes;
+        }
+
+        private static final class Changes<T> {
+            private final Map<Long, NavigableSet<T>> books = new HashMap<>();
+            private boolean invalidated;
+        }
+    }
+
     public static final class Ask extends Order {
 
         private static final DbKey.LongKeyFactory<Ask> askOrderDbKeyFactory = new DbKey.LongKeyFactory<Ask>("id") {
@@ -205,8 +383,23 @@ public abstract class Order {
                 return " ORDER BY creation_height DESC ";
             }
 
+            @Override
+            public void rollback(int height) {
+                super.rollback(height);
+                askOrderBook.invalidate();
+            }
+
+            @Override
+            public void truncate() {
+                super.truncate();
+                askOrderBook.invalidate();
+            }
+
         };
 
+        private static final OrderBook<Ask> askOrderBook = new OrderBook<>(askOrderTable, askOrderDbKeyFactory,
+                Comparator.comparingLong(Order::getPriceNQT), " ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ", Ask::new);
+
         public static int getCount() {
             return askOrderTable.getCount();
         }
@@ -238,26 +431,20 @@ public abstract class Order {
         }
 
         private static Ask getNextOrder(long assetId) {
-            try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM ask_order WHERE asset_id = ? "
-                         + "AND latest = TRUE ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC LIMIT 1")) {
-                pstmt.setLong(1, assetId);
-                try (DbIterator<Ask> askOrders = askOrderTable.getManyBy(con, pstmt, true)) {
-                    return askOrders.hasNext() ? askOrders.next() : null;
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
-            }
+            return askOrderBook.getNextOrder(assetId);
         }
 
         static void addOrder(Transaction transaction, Attachment.ColoredCoinsAskOrderPlacement attachment) {
             Ask order = new Ask(transaction, attachment);
             askOrderTable.insert(order);
+            askOrderBook.update(order);
             matchOrders(attachment.getAssetId());
         }
 
         static void removeOrder(long orderId) {
-            askOrderTable.delete(getAskOrder(orderId));
+            Ask order = getAskOrder(orderId);
+            askOrderTable.delete(order);
+            askOrderBook.remove(order);
         }
 
         static void init() {}
@@ -275,6 +462,11 @@ public abstract class Order {
             this.dbKey = dbKey;
         }
 
+        private Ask(Ask ask) {
+            super(ask);
+            this.dbKey = ask.dbKey;
+        }
+
         private void save(Connection con, String table) throws SQLException {
             super.save(con, table);
         }
@@ -283,8 +475,10 @@ public abstract class Order {
             super.setQuantityQNT(quantityQNT);
             if (quantityQNT > 0) {
                 askOrderTable.insert(this);
+                askOrderBook.update(this);
             } else if (quantityQNT == 0) {
                 askOrderTable.delete(this);
+                askOrderBook.remove(this);
             } else {
                 throw new IllegalArgumentException("Negative quantity: " + quantityQNT
                         + " for order: " + Long.toUnsignedString(getId()));
@@ -334,8 +528,23 @@ public abstract class Order {
                 return " ORDER BY creation_height DESC ";
             }
 
+            @Override
+            public void rollback(int height) {
+                super.rollback(height);
+                bidOrderBook.invalidate();
+            }
+
+            @Override
+            public void truncate() {
+                super.truncate();
+                bidOrderBook.invalidate();
+            }
+
         };
 
+        private static final OrderBook<Bid> bidOrderBook = new OrderBook<>(bidOrderTable, bidOrderDbKeyFactory,
+                Comparator.comparingLong(Order::getPriceNQT).reversed(), " ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ", Bid::new);
+
         public static int getCount() {
             return bidOrderTable.getCount();
         }
@@ -367,26 +576,20 @@ public abstract class Order {
         }
 
         private static Bid getNextOrder(long assetId) {
-            try (Connection con = Db.db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM bid_order WHERE asset_id = ? "
-                         + "AND latest = TRUE ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC LIMIT 1")) {
-                pstmt.setLong(1, assetId);
-                try (DbIterator<Bid> bidOrders = bidOrderTable.getManyBy(con, pstmt, true)) {
-                    return bidOrders.hasNext() ? bidOrders.next() : null;
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
-            }
+            return bidOrderBook.getNextOrder(assetId);
         }
 
         static void addOrder(Transaction transaction, Attachment.ColoredCoinsBidOrderPlacement attachment) {
             Bid order = new Bid(transaction, attachment);
             bidOrderTable.insert(order);
+            bidOrderBook.update(order);
             matchOrders(attachment.getAssetId());
         }
 
         static void removeOrder(long orderId) {
-            bidOrderTable.delete(getBidOrder(orderId));
+            Bid order = getBidOrder(orderId);
+            bidOrderTable.delete(order);
+            bidOrderBook.remove(order);
         }
 
         static void init() {}
@@ -404,6 +607,11 @@ public abstract class Order {
             this.dbKey = dbKey;
         }
 
+        private Bid(Bid bid) {
+            super(bid);
+            this.dbKey = bid.dbKey;
+        }
+
         private void save(Connection con, String table) throws SQLException {
             super.save(con, table);
         }
@@ -412,8 +620,10 @@ public abstract class Order {
             super.setQuantityQNT(quantityQNT);
             if (quantityQNT > 0) {
                 bidOrderTable.insert(this);
+                bidOrderBook.update(this);
             } else if (quantityQNT == 0) {
                 bidOrderTable.delete(this);
+                bidOrderBook.remove(this);
             } else {
                 throw new IllegalArgumentException("Negative quantity: " + quantityQNT
                         + " for order: " + Long.toUnsignedString(getId()));
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache for the blocks loaded from the database to answer peer block requests
+ * <p>
+ * Peers downloading the blockchain request the same block segments, so the blocks are kept by height
+ * together with their transactions and their peer representation, which is computed once for each block.
+ * A segment is served from the cache if every block following the requested block is cached and the
+ * blocks are linked by their previous block identifiers.
+ * <p>
+ * The number of cached blocks is limited by nxt.peerBlockCacheSize and the least recently used blocks are
+ * evicted first.  The cache is disabled if the size is 0.  The cache is cleared when blocks are deleted.
+ */
+final class PeerBlockCache {
+
+    /** Maximum number of cached blocks */
+    private static final int maxSize = Math.max(Nxt.getIntProperty("nxt.peerBlockCacheSize"), 0);
+
+    /** Cached blocks by height */
+    private static final Map<Integer, BlockImpl> blocks = new LinkedHashMap<Integer, BlockImpl>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BlockImpl> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /** Heights of the cached blocks and of the blocks preceding a cached segment */
+    private static final Map<Long, Integer> heights = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > maxSize * 2;
+        }
+    };
+
+    private PeerBlockCache() {} //never
+
+    /**
+     * Check if the cache is enabled
+     *
+     * @return                      TRUE if the cache is enabled
+     */
+    static boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Return the cached blocks following a block
+     *
+     * @param   blockId             Block identifier
+     * @param   limit               Maximum number of blocks
+     * @param   lastHeight          Current blockchain height
+     * @return                      Block list or null if the blocks are not cached
+     */
+    static List<BlockImpl> getBlocksAfter(long blockId, int limit, int lastHeight) {
+        synchronized (blocks) {
+            Integer height = heights.get(blockId);
+            if (height == null) {
+                return null;
+            }
+            List<BlockImpl> result = new ArrayList<>();
+            long previousBlockId = blockId;
+            for (int i = height + 1; i <= lastHeight && result.size() < limit; i++) {
+                BlockImpl block = blocks.get(i);
+                if (block == null || block.getPreviousBlockId() != previousBlockId) {
+                    return null;
+                }
+                result.add(block);
+                previousBlockId = block.getId();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Cache the blocks loaded from the database
+     *
+     * @param   blockId             Identifier of the block preceding the loaded blocks
+     * @param   loadedBlocks        Loaded blocks in height order
+     */
+    static void put(long blockId, List<BlockImpl> loadedBlocks) {
+        if (loadedBlocks.isEmpty()) {
+            return;
+        }
+        synchronized (blocks) {
+            heights.put(blockId, loadedBlocks.get(0).getHeight() - 1);
+            loadedBlocks.forEach(block -> {
+                blocks.put(block.getHeight(), block);
+                heights.put(block.getId(), block.getHeight());
+            });
+        }
+    }
+
+    /**
+     * Clear the cache
+     */
+    static void clear() {
+        synchronized (blocks) {
+            blocks.clear();
+            heights.clear();
+        }
+    }
+}
@@ -123,6 +123,18 @@ public final class PhasingPoll extends AbstractPoll {
             poll.save(con);
         }
 
+        @Override
+        public void rollback(int height) {
+            pollIndex.invalidate();
+            super.rollback(height);
+        }
+
+        @Override
+        public void truncate() {
+            pollIndex.invalidate();
+            super.truncate();
+        }
+
         @Override
         public void trim(int height) {
             super.trim(height);
@@ -223,9 +235,26 @@ public final class PhasingPoll extends AbstractPoll {
         protected void save(Connection con, PhasingPollResult phasingPollResult) throws SQLException {
             phasingPollResult.save(con);
         }
+
+        @Override
+        public void rollback(int height) {
+            pollIndex.invalidate();
+            super.rollback(height);
+        }
+
+        @Override
+        public void truncate() {
+            pollIndex.invalidate();
+            super.truncate();
+        }
     };
 
+    static final PhasingPollIndex pollIndex = new PhasingPollIndex();
+
     public static PhasingPollResult getResult(long id) {
+        if (pollIndex.hasNoResult(id)) {
+            return null;
+        }
         return resultTable.get(resultDbKeyFactory.newKey(id));
     }
 
@@ -238,7 +267,13 @@ public final class PhasingPoll extends AbstractPoll {
         return phasingPollTable.get(phasingPollDbKeyFactory.newKey(id));
     }
 
-    static DbIterator<TransactionImpl> getFinishingTransactions(int height) {
+    static List<TransactionImpl> getFinishingTransactions(int height) {
+        List<Long> ids = pollIndex.getFinishingIds(height);
+        if (ids != null) {
+            List<TransactionImpl> transactions = new ArrayList<>(ids.size());
+            ids.forEach(id -> transactions.add(TransactionDb.findTransaction(id)));
+            return transactions;
+        }
         Connection con = null;
         try {
             con = Db.db.getConnection();
@@ -246,7 +281,11 @@ public final class PhasingPoll extends AbstractPoll {
                     "WHERE phasing_poll.id = transaction.id AND phasing_poll.finish_height = ? " +
                     "ORDER BY transaction.height, transaction.transaction_index"); // ASC, not DESC
             pstmt.setInt(1, height);
-            return BlockchainImpl.getInstance().getTransactions(con, pstmt);
+            List<TransactionImpl> transactions = new ArrayList<>();
+            try (DbIterator<TransactionImpl> iterator = BlockchainImpl.getInstance().getTransactions(con, pstmt)) {
+                iterator.forEach(transactions::add);
+            }
+            return transactions;
         } catch (SQLException e) {
             DbUtils.close(con);
             throw new RuntimeException(e.toString(), e);
@@ -373,6 +412,21 @@ public final class PhasingPoll extends AbstractPoll {
         }
     }
 
+    static List<TransactionImpl> getLinkedPendingTransactions(byte[] linkedTransactionFullHash, int height) {
+        List<Long> ids = pollIndex.getLinkedIds(linkedTransactionFullHash, height);
+        List<TransactionImpl> transactions = new ArrayList<>();
+        if (ids != null) {
+            ids.forEach(id -> transactions.add(TransactionDb.findTransaction(id)));
+        } else {
+            getLinkedPhasedTransactions(linkedTransactionFullHash).forEach(transaction -> {
+                if (transaction.getPhasing().getFinishHeight() > height) {
+                    transactions.add((TransactionImpl)transaction);
+                }
+            });
+        }
+        return transactions;
+    }
+
     static long getSenderPhasedTransactionFees(long accountId) {
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT SUM(transaction.fee) AS fees FROM transaction, phasing_poll " +
@@ -405,6 +459,7 @@ public final class PhasingPoll extends AbstractPoll {
             Collections.addAll(linkedFullHashes, appendix.getLinkedFullHashes());
             linkedTransactionTable.insert(poll, linkedFullHashes);
         }
+        pollIndex.addPoll(transaction, poll.getFinishHeight(), appendix.getLinkedFullHashes());
     }
 
     static void init() {
@@ -437,6 +492,7 @@ public final class PhasingPoll extends AbstractPoll {
     void finish(long result) {
         PhasingPollResult phasingPollResult = new PhasingPollResult(this, result);
         resultTable.insert(phasingPollResult);
+        pollIndex.addResult(id);
     }
 
     public long[] getWhitelist() {
@@ -486,10 +542,20 @@ public final class PhasingPoll extends AbstractPoll {
             return PhasingVote.getVoteCount(this.id);
         }
         VoteWeighting.VotingModel votingModel = voteWeighting.getVotingModel();
-        long cumulativeWeight = 0;
+        long[] voterIds = new long[16];
+        int voteCount = 0;
         try (DbIterator<PhasingVote> votes = PhasingVote.getVotes(this.id, 0, Integer.MAX_VALUE)) {
             for (PhasingVote vote : votes) {
-                cumulativeWeight += votingModel.calcWeight(voteWeighting, vote.getVoterId(), height);
+                if (voteCount == voterIds.length) {
+                    voterIds = Arrays.copyOf(voterIds, voteCount * 2);
+                }
+                voterIds[voteCount++] = vote.getVoterId();
+            }
+        }
+        long cumulativeWeight = 0;
+        if (voteCount > 0) {
+            for (long weight : votingModel.calcWeights(voteWeighting, Arrays.copyOf(voterIds, voteCount), height)) {
+                cumulativeWeight += weight;
             }
         }
         return cumulativeWeight;
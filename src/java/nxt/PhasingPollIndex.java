@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.db.TransactionalDb;
+import nxt.util.Convert;
+import nxt.util.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of the pending phased transactions, used to find the phased transactions finishing at a height
+ * and the phased transactions linked to a transaction without a database query.
+ * <p>
+ * The index contains the phasing polls with a finish height not below the blockchain height.  It is loaded from
+ * the database when it is first used and polls are removed once the blockchain height passes their finish height.
+ * Polls and poll results added within a database transaction are added to the index when the transaction is
+ * committed, and are visible to the thread processing the transaction until then.  The index is discarded and
+ * reloaded when the phasing tables are rolled back or truncated.
+ * <p>
+ * A lookup returns null if the index does not cover the requested height or cannot be used by the current
+ * thread, and the caller must then query the database.
+ */
+final class PhasingPollIndex implements TransactionalDb.TransactionCallback {
+
+    /** Poll order within a finish height, which is the order of the phased transactions in the blockchain */
+    private static final Comparator<Poll> pollComparator = Comparator.comparingInt((Poll poll) -> poll.height)
+            .thenComparingInt(poll -> poll.index);
+
+    private final ThreadLocal<Changes> pendingChanges = new ThreadLocal<>();
+
+    /** Polls by identifier, or null if the index is not loaded */
+    private Map<Long, Poll> polls;
+
+    /** Polls by finish height */
+    private final NavigableMap<Integer, List<Poll>> pollsByFinishHeight = new TreeMap<>();
+
+    /** Polls by linked transaction identifier */
+    private final Map<Long, List<Poll>> pollsByLinkedId = new HashMap<>();
+
+    /** Lowest finish height covered by the index */
+    private int minFinishHeight;
+
+    /**
+     * Return the identifiers of the phased transactions finishing at a height
+     *
+     * @param   finishHeight        Finish height
+     * @return                      Transaction identifiers in blockchain order, or null if the index cannot be used
+     */
+    List<Long> getFinishingIds(int finishHeight) {
+        Changes changes = pendingChanges.get();
+        if (changes != null && changes.invalid) {
+            return null;
+        }
+        List<Poll> finishing = new ArrayList<>();
+        synchronized (this) {
+            if (!isLoaded(changes, finishHeight)) {
+                return null;
+            }
+            List<Poll> committed = pollsByFinishHeight.get(finishHeight);
+            if (committed != null) {
+                finishing.addAll(committed);
+            }
+        }
+        if (changes != null) {
+            changes.polls.forEach(poll -> {
+                if (poll.finishHeight == finishHeight) {
+                    finishing.add(poll);
+                }
+            });
+        }
+        if (finishing.isEmpty()) {
+            return Collections.emptyList();
+        }
+        finishing.sort(pollComparator);
+        List<Long> ids = new ArrayList<>(finishing.size());
+        finishing.forEach(poll -> ids.add(poll.id));
+        return ids;
+    }
+
+    /**
+     * Return the identifiers of the phased transactions linked to a transaction and finishing after a height
+     *
+     * @param   linkedFullHash      Linked transaction full hash
+     * @param   height              Height
+     * @return                      Transaction identifiers, or null if the index cannot be used
+     */
+    List<Long> getLinkedIds(byte[] linkedFullHash, int height) {
+        Changes changes = pendingChanges.get();
+        if (changes != null && changes.invalid) {
+            return null;
+        }
+        long linkedId = Convert.fullHashToId(linkedFullHash);
+        List<Poll> linked = new ArrayList<>();
+        synchronized (this) {
+            if (!isLoaded(changes, height + 1)) {
+                return null;
+            }
+            List<Poll> committed = pollsByLinkedId.get(linkedId);
+            if (committed != null) {
+                linked.addAll(committed);
+            }
+        }
+        if (changes != null) {
+            changes.polls.forEach(poll -> {
+                if (poll.isLinkedTo(linkedId)) {
+                    linked.add(poll);
+                }
+            });
+        }
+        List<Long> ids = new ArrayList<>(linked.size());
+        linked.forEach(poll -> {
+            if (poll.finishHeight > height && poll.isLinkedTo(linkedFullHash)) {
+                ids.add(poll.id);
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Check if a pending phased transaction is known to have no poll result
+     *
+     * @param   id                  Transaction identifier
+     * @return                      TRUE if the poll has no result, FALSE if the result must be read from the database
+     */
+    boolean hasNoResult(long id) {
+        Changes changes = pendingChanges.get();
+        if (changes != null && (changes.invalid || changes.results.contains(id))) {
+            return false;
+        }
+        synchronized (this) {
+            if (polls != null) {
+                Poll poll = polls.get(id);
+                if (poll != null) {
+                    return !poll.hasResult;
+                }
+            }
+        }
+        if (changes != null) {
+            for (Poll poll : changes.polls) {
+                if (poll.id == id) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a poll created within the current database transaction
+     *
+     * @param   transaction         Phased transaction
+     * @param   finishHeight        Finish height
+     * @param   linkedFullHashes    Linked transaction full hashes
+     */
+    void addPoll(Transaction transaction, int finishHeight, byte[][] linkedFullHashes) {
+        Changes changes = getChanges();
+        if (changes != null) {
+            changes.polls.add(new Poll(transaction.getId(), finishHeight, transaction.getHeight(), transaction.getIndex(),
+                    linkedFullHashes));
+        }
+    }
+
+    /**
+     * Add a poll result created within the current database transaction
+     *
+     * @param   id                  Phased transaction identifier
+     */
+    void addResult(long id) {
+        Changes changes = getChanges();
+        if (changes != null) {
+            changes.results.add(id);
+        }
+    }
+
+    /**
+     * Discard the index when the phasing tables are rolled back or truncated within the current database transaction
+     */
+    void invalidate() {
+        Changes changes = getChanges();
+        if (changes != null) {
+            changes.invalid = true;
+        }
+    }
+
+    @Override
+    public void commit() {
+        Changes changes = pendingChanges.get();
+        if (changes == null) {
+            return;
+        }
+        pendingChanges.remove();
+        synchronized (this) {
+            if (polls == null) {
+                return;
+            }
+            if (changes.invalid) {
+                clear();
+                return;
+            }
+            changes.polls.forEach(this::add);
+            changes.results.forEach(id -> {
+                Poll poll = polls.get(id);
+                if (poll != null) {
+                    poll.hasResult = true;
+                }
+            });
+            prune(Nxt.getBlockchain().getHeight());
+        }
+    }
+
+    @Override
+    public void rollback() {
+        pendingChanges.remove();
+    }
+
+    private Changes getChanges() {
+        if (!Db.db.isInTransaction()) {
+            synchronized (this) {
+                clear();
+            }
+            return null;
+        }
+        Changes changes = pendingChanges.get();
+        if (changes == null) {
+            changes = new Changes();
+            pendingChanges.set(changes);
+            Db.db.registerCallback(this);
+        }
+        return changes;
+    }
+
+    /**
+     * Load the index if needed and check if it covers a finish height.  The index is not loaded by a thread with
+     * pending changes, since the database transaction of the thread can contain uncommitted phasing polls.
+     */
+    private boolean isLoaded(Changes changes, int finishHeight) {
+        if (polls == null) {
+            if (changes != null) {
+                return false;
+            }
+            load(Nxt.getBlockchain().getHeight());
+        }
+        return finishHeight >= minFinishHeight;
+    }
+
+    private void load(int height) {
+        Map<Long, Poll> loadedPolls = new HashMap<>();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt1 = con.prepareStatement("SELECT phasing_poll.id, phasing_poll.finish_height, "
+                     + "transaction.height, transaction.transaction_index, phasing_poll_result.id AS result_id "
+                     + "FROM phasing_poll JOIN transaction ON phasing_poll.id = transaction.id "
+                     + "LEFT JOIN phasing_poll_result ON phasing_poll.id = phasing_poll_result.id "
+                     + "WHERE phasing_poll.finish_height >= ?");
+             PreparedStatement pstmt2 = con.prepareStatement("SELECT phasing_poll_linked_transaction.transaction_id, "
+                     + "phasing_poll_linked_transaction.linked_full_hash FROM phasing_poll_linked_transaction, phasing_poll "
+                     + "WHERE phasing_poll.id = phasing_poll_linked_transaction.transaction_id "
+                     + "AND phasing_poll.finish_height >= ?")) {
+            Map<Long, List<byte[]>> linkedFullHashes = new HashMap<>();
+            pstmt2.setInt(1, height);
+            try (ResultSet rs = pstmt2.executeQuery()) {
+                while (rs.next()) {
+                    linkedFullHashes.computeIfAbsent(rs.getLong("transaction_id"), id -> new ArrayList<>())
+                            .add(rs.getBytes("linked_full_hash"));
+                }
+            }
+            pstmt1.setInt(1, height);
+            try (ResultSet rs = pstmt1.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong("id");
+                    List<byte[]> hashes = linkedFullHashes.get(id);
+                    Poll poll = new Poll(id, rs.getInt("finish_height"), rs.getInt("height"), rs.getShort("transaction_index"),
+                            hashes != null ? hashes.toArray(new byte[hashes.size()][]) : Convert.EMPTY_BYTES);
+                    rs.getLong("result_id");
+                    poll.hasResult = !rs.wasNull();
+                    loadedPolls.put(id, poll);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        polls = new HashMap<>();
+        minFinishHeight = height;
+        loadedPolls.values().forEach(this::add);
+        Logger.logDebugMessage("Loaded phasing poll index with %d pending polls at height %d", polls.size(), height);
+    }
+
+    private void add(Poll poll) {
+        if (poll.finishHeight < minFinishHeight || polls.putIfAbsent(poll.id, poll) != null) {
+            return;
+        }
+        pollsByFinishHeight.computeIfAbsent(poll.finishHeight, finishHeight -> new ArrayList<>()).add(poll);
+        for (long linkedId : poll.linkedIds) {
+            pollsByLinkedId.computeIfAbsent(linkedId, id -> new ArrayList<>()).add(poll);
+        }
+    }
+
+    private void prune(int height) {
+        if (height <= minFinishHeight) {
+            return;
+        }
+        NavigableMap<Integer, List<Poll>> finished = pollsByFinishHeight.headMap(height, false);
+        finished.values().forEach(finishedPolls -> finishedPolls.forEach(poll -> {
+            polls.remove(poll.id);
+            for (long linkedId : poll.linkedIds) {
+                List<Poll> linked = pollsByLinkedId.get(linkedId);
+                linked.remove(poll);
+                if (linked.isEmpty()) {
+                    pollsByLinkedId.remove(linkedId);
+                }
+            }
+        }));
+        finished.clear();
+        minFinishHeight = height;
+    }
+
+    private void clear() {
+        polls = null;
+        pollsByFinishHeight.clear();
+        pollsByLinkedId.clear();
+    }
+
+    /**
+     * Changes made within a database transaction
+     */
+    private static final class Changes {
+        private final List<Poll> polls = new ArrayList<>();
+        private final Set<Long> results = new HashSet<>();
+        private boolean invalid;
+    }
+
+    /**
+     * Pending phasing poll
+     */
+    private static final class Poll {
+
+        private final long id;
+        private final int finishHeight;
+        private final int height;
+        private final short index;
+        private final byte[][] linkedFullHashes;
+        private final long[] linkedIds;
+        private boolean hasResult;
+
+        private Poll(long id, int finishHeight, int height, short index, byte[][] linkedFullHashes) {
+            this.id = id;
+            this.finishHeight = finishHeight;
+            this.height = height;
+            this.index = index;
+            this.linkedFullHashes = linkedFullHashes;
+            this.linkedIds = Arrays.stream(linkedFullHashes).mapToLong(Convert::fullHashToId).distinct().toArray();
+        }
+
+        private boolean isLinkedTo(long linkedId) {
+            for (long id : linkedIds) {
+                if (id == linkedId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isLinkedTo(byte[] linkedFullHash) {
+            for (byte[] fullHash : linkedFullHashes) {
+                if (Arrays.equals(fullHash, linkedFullHash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
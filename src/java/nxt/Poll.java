@@ -29,6 +29,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -317,9 +318,21 @@ public final class Poll extends AbstractPoll {
     private List<OptionResult> countResults(VoteWeighting voteWeighting, int height) {
         final OptionResult[] result = new OptionResult[options.length];
         VoteWeighting.VotingModel votingModel = voteWeighting.getVotingModel();
-        try (DbIterator<Vote> votes = Vote.getVotes(this.getId(), 0, -1)) {
-            for (Vote vote : votes) {
-                long weight = votingModel.calcWeight(voteWeighting, vote.getVoterId(), height);
+        List<Vote> votes = new ArrayList<>();
+        try (DbIterator<Vote> iterator = Vote.getVotes(this.getId(), 0, -1)) {
+            for (Vote vote : iterator) {
+                votes.add(vote);
+            }
+        }
+        if (!votes.isEmpty()) {
+            long[] voterIds = new long[votes.size()];
+            for (int i = 0; i < voterIds.length; i++) {
+                voterIds[i] = votes.get(i).getVoterId();
+            }
+            long[] weights = votingModel.calcWeights(voteWeighting, voterIds, height);
+            for (int j = 0; j < weights.length; j++) {
+                Vote vote = votes.get(j);
+                long weight = weights[j];
                 if (weight <= 0) {
                     continue;
                 }
@@ -17,7 +17,6 @@
 package nxt;
 
 import nxt.crypto.Crypto;
-import nxt.db.DbIterator;
 import nxt.util.Convert;
 import nxt.util.Logger;
 
@@ -437,11 +436,9 @@ public final class Shuffler {
                 return;
             }
         } else {
-            try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = TransactionProcessorImpl.getInstance().getAllUnconfirmedTransactions()) {
-                if (hasUnconfirmedTransaction(attachment, unconfirmedTransactions)) {
-                    Logger.logDebugMessage("Transaction already submitted");
-                    return;
-                }
+            if (hasUnconfirmedTransaction(attachment, TransactionProcessorImpl.getInstance().getSenderUnconfirmedTransactions(accountId))) {
+                Logger.logDebugMessage("Transaction already submitted");
+                return;
             }
         }
         try {
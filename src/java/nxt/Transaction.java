@@ -103,6 +103,8 @@ public interface Transaction {
 
     byte[] getUnsignedBytes();
 
+    byte[] getPeerBytes();
+
     JSONObject getJSONObject();
 
     JSONObject getPrunableAttachmentJSON();
@@ -32,6 +32,8 @@ import java.util.List;
 
 final class TransactionDb {
 
+    static final IdIndex transactionIndex = new IdIndex("transaction");
+
     static TransactionImpl findTransaction(long transactionId) {
         return findTransaction(transactionId, Integer.MAX_VALUE);
     }
@@ -44,6 +46,10 @@ final class TransactionDb {
                 return transaction.getHeight() <= height ? transaction : null;
             }
         }
+        // Check the index
+        if (!transactionIndex.mightContain(transactionId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE id = ?")) {
@@ -75,6 +81,10 @@ final class TransactionDb {
                         Arrays.equals(transaction.fullHash(), fullHash) ? transaction : null);
             }
         }
+        // Check the index
+        if (!transactionIndex.mightContain(transactionId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE id = ?")) {
@@ -105,6 +115,14 @@ final class TransactionDb {
                 return (transaction.getHeight() <= height);
             }
         }
+        // Check the index
+        if (!transactionIndex.mightContain(transactionId)) {
+            return false;
+        }
+        int transactionHeight = transactionIndex.getHeight(transactionId);
+        if (transactionHeight >= 0) {
+            return transactionHeight <= height;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT height FROM transaction WHERE id = ?")) {
@@ -131,6 +149,10 @@ final class TransactionDb {
                         Arrays.equals(transaction.fullHash(), fullHash));
             }
         }
+        // Check the index
+        if (!transactionIndex.mightContain(transactionId)) {
+            return false;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT full_hash, height FROM transaction WHERE id = ?")) {
@@ -151,6 +173,10 @@ final class TransactionDb {
                 return transaction.fullHash();
             }
         }
+        // Check the index
+        if (!transactionIndex.mightContain(transactionId)) {
+            return null;
+        }
         // Search the database
         try (Connection con = Db.db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT full_hash FROM transaction WHERE id = ?")) {
@@ -306,69 +332,74 @@ final class TransactionDb {
     }
 
     static void saveTransactions(Connection con, List<TransactionImpl> transactions) {
-        try {
+        try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO transaction (id, deadline, "
+                + "recipient_id, amount, fee, referenced_transaction_full_hash, height, "
+                + "block_id, signature, timestamp, type, subtype, sender_id, attachment_bytes, "
+                + "block_timestamp, full_hash, version, has_message, has_encrypted_message, has_public_key_announcement, "
+                + "has_encrypttoself_message, phased, has_prunable_message, has_prunable_encrypted_message, "
+                + "has_prunable_attachment, ec_block_height, ec_block_id, transaction_index) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement pstmtReferenced = con.prepareStatement("INSERT INTO referenced_transaction "
+                + "(transaction_id, referenced_transaction_id) VALUES (?, ?)")) {
             short index = 0;
+            boolean hasReferenced = false;
             for (TransactionImpl transaction : transactions) {
-                try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO transaction (id, deadline, "
-                        + "recipient_id, amount, fee, referenced_transaction_full_hash, height, "
-                        + "block_id, signature, timestamp, type, subtype, sender_id, attachment_bytes, "
-                        + "block_timestamp, full_hash, version, has_message, has_encrypted_message, has_public_key_announcement, "
-                        + "has_encrypttoself_message, phased, has_prunable_message, has_prunable_encrypted_message, "
-                        + "has_prunable_attachment, ec_block_height, ec_block_id, transaction_index) "
-                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-                    int i = 0;
-                    pstmt.setLong(++i, transaction.getId());
-                    pstmt.setShort(++i, transaction.getDeadline());
-                    DbUtils.setLongZeroToNull(pstmt, ++i, transaction.getRecipientId());
-                    pstmt.setLong(++i, transaction.getAmountNQT());
-                    pstmt.setLong(++i, transaction.getFeeNQT());
-                    DbUtils.setBytes(pstmt, ++i, transaction.referencedTransactionFullHash());
-                    pstmt.setInt(++i, transaction.getHeight());
-                    pstmt.setLong(++i, transaction.getBlockId());
-                    pstmt.setBytes(++i, transaction.getSignature());
-                    pstmt.setInt(++i, transaction.getTimestamp());
-                    pstmt.setByte(++i, transaction.getType().getType());
-                    pstmt.setByte(++i, transaction.getType().getSubtype());
-                    pstmt.setLong(++i, transaction.getSenderId());
-                    int bytesLength = 0;
+                int i = 0;
+                pstmt.setLong(++i, transaction.getId());
+                pstmt.setShort(++i, transaction.getDeadline());
+                DbUtils.setLongZeroToNull(pstmt, ++i, transaction.getRecipientId());
+                pstmt.setLong(++i, transaction.getAmountNQT());
+                pstmt.setLong(++i, transaction.getFeeNQT());
+                DbUtils.setBytes(pstmt, ++i, transaction.referencedTransactionFullHash());
+                pstmt.setInt(++i, transaction.getHeight());
+                pstmt.setLong(++i, transaction.getBlockId());
+                pstmt.setBytes(++i, transaction.getSignature());
+                pstmt.setInt(++i, transaction.getTimestamp());
+                pstmt.setByte(++i, transaction.getType().getType());
+                pstmt.setByte(++i, transaction.getType().getSubtype());
+                pstmt.setLong(++i, transaction.getSenderId());
+                int bytesLength = 0;
+                for (Appendix appendage : transaction.getAppendages()) {
+                    bytesLength += appendage.getSize();
+                }
+                if (bytesLength == 0) {
+                    pstmt.setNull(++i, Types.VARBINARY);
+                } else {
+                    ByteBuffer buffer = ByteBuffer.allocate(bytesLength);
+                    buffer.order(ByteOrder.LITTLE_ENDIAN);
                     for (Appendix appendage : transaction.getAppendages()) {
-                        bytesLength += appendage.getSize();
-                    }
-                    if (bytesLength == 0) {
-                        pstmt.setNull(++i, Types.VARBINARY);
-                    } else {
-                        ByteBuffer buffer = ByteBuffer.allocate(bytesLength);
-                        buffer.order(ByteOrder.LITTLE_ENDIAN);
-                        for (Appendix appendage : transaction.getAppendages()) {
-                            appendage.putBytes(buffer);
-                        }
-                        pstmt.setBytes(++i, buffer.array());
+                        appendage.putBytes(buffer);
                     }
-                    pstmt.setInt(++i, transaction.getBlockTimestamp());
-                    pstmt.setBytes(++i, transaction.fullHash());
-                    pstmt.setByte(++i, transaction.getVersion());
-                    pstmt.setBoolean(++i, transaction.getMessage() != null);
-                    pstmt.setBoolean(++i, transaction.getEncryptedMessage() != null);
-                    pstmt.setBoolean(++i, transaction.getPublicKeyAnnouncement() != null);
-                    pstmt.setBoolean(++i, transaction.getEncryptToSelfMessage() != null);
-                    pstmt.setBoolean(++i, transaction.getPhasing() != null);
-                    pstmt.setBoolean(++i, transaction.hasPrunablePlainMessage());
-                    pstmt.setBoolean(++i, transaction.hasPrunableEncryptedMessage());
-                    pstmt.setBoolean(++i, transaction.getAttachment() instanceof Appendix.Prunable);
-                    pstmt.setInt(++i, transaction.getECBlockHeight());
-                    DbUtils.setLongZeroToNull(pstmt, ++i, transaction.getECBlockId());
-                    pstmt.setShort(++i, index++);
-                    pstmt.executeUpdate();
+                    pstmt.setBytes(++i, buffer.array());
                 }
+                pstmt.setInt(++i, transaction.getBlockTimestamp());
+                pstmt.setBytes(++i, transaction.fullHash());
+                pstmt.setByte(++i, transaction.getVersion());
+                pstmt.setBoolean(++i, transaction.getMessage() != null);
+                pstmt.setBoolean(++i, transaction.getEncryptedMessage() != null);
+                pstmt.setBoolean(++i, transaction.getPublicKeyAnnouncement() != null);
+                pstmt.setBoolean(++i, transaction.getEncryptToSelfMessage() != null);
+                pstmt.setBoolean(++i, transaction.getPhasing() != null);
+                pstmt.setBoolean(++i, transaction.hasPrunablePlainMessage());
+                pstmt.setBoolean(++i, transaction.hasPrunableEncryptedMessage());
+                pstmt.setBoolean(++i, transaction.getAttachment() instanceof Appendix.Prunable);
+                pstmt.setInt(++i, transaction.getECBlockHeight());
+                DbUtils.setLongZeroToNull(pstmt, ++i, transaction.getECBlockId());
+                pstmt.setShort(++i, index++);
+                pstmt.addBatch();
                 if (transaction.referencedTransactionFullHash() != null) {
-                    try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO referenced_transaction "
-                         + "(transaction_id, referenced_transaction_id) VALUES (?, ?)")) {
-                        pstmt.setLong(1, transaction.getId());
-                        pstmt.setLong(2, Convert.fullHashToId(transaction.referencedTransactionFullHash()));
-                        pstmt.executeUpdate();
-                    }
+                    pstmtReferenced.setLong(1, transaction.getId());
+                    pstmtReferenced.setLong(2, Convert.fullHashToId(transaction.referencedTransactionFullHash()));
+                    pstmtReferenced.addBatch();
+                    hasReferenced = true;
                 }
             }
+            if (index > 0) {
+                pstmt.executeBatch();
+            }
+            if (hasReferenced) {
+                pstmtReferenced.executeBatch();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
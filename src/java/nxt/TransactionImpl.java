@@ -22,6 +22,8 @@ import nxt.util.Convert;
 import nxt.util.Filter;
 import nxt.util.Logger;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
@@ -757,6 +759,67 @@ final class TransactionImpl implements Transaction {
         return zeroSignature(getBytes());
     }
 
+    /**
+     * Return the binary peer representation of the transaction.  This consists of the transaction bytes
+     * followed by the prunable attachments in JSON format, each prefixed with its length.
+     *
+     * @return                      Transaction peer bytes
+     */
+    @Override
+    public byte[] getPeerBytes() {
+        byte[] transactionBytes = bytes();
+        JSONObject prunableAttachments = getPrunableAttachmentJSON();
+        byte[] prunableBytes = prunableAttachments != null ? Convert.toBytes(prunableAttachments.toJSONString()) : Convert.EMPTY_BYTE;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + transactionBytes.length + 4 + prunableBytes.length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(transactionBytes.length);
+        buffer.put(transactionBytes);
+        buffer.putInt(prunableBytes.length);
+        buffer.put(prunableBytes);
+        return buffer.array();
+    }
+
+    static TransactionImpl parseTransaction(byte[] transactionData) throws NxtException.NotValidException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(transactionData);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] transactionBytes = readPeerBytes(buffer);
+            byte[] prunableBytes = readPeerBytes(buffer);
+            if (buffer.hasRemaining()) {
+                throw new NxtException.NotValidException("Transaction peer bytes too long, " + buffer.remaining() + " extra bytes");
+            }
+            JSONObject prunableAttachments = prunableBytes.length > 0 ? (JSONObject) JSONValue.parseWithException(Convert.toString(prunableBytes)) : null;
+            TransactionImpl transaction = newTransactionBuilder(transactionBytes, prunableAttachments).build();
+            if (transaction.getSignature() != null && !transaction.checkSignature()) {
+                throw new NxtException.NotValidException("Invalid transaction signature for transaction " + transaction.getJSONObject().toJSONString());
+            }
+            return transaction;
+        } catch (ParseException e) {
+            throw new NxtException.NotValidException("Invalid prunable attachments: " + e.toString(), e);
+        } catch (RuntimeException e) {
+            Logger.logDebugMessage("Failed to parse transaction peer bytes: " + Convert.toHexString(transactionData));
+            throw e;
+        }
+    }
+
+    /**
+     * Read a length-prefixed byte array from peer bytes.  The length is checked against the remaining
+     * bytes before the array is allocated.
+     *
+     * @param   buffer              Peer bytes
+     * @return                      Byte array
+     * @throws  NxtException.NotValidException  Length is not valid
+     */
+    static byte[] readPeerBytes(ByteBuffer buffer) throws NxtException.NotValidException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new NxtException.NotValidException("Invalid length " + length + ", " + buffer.remaining() + " bytes remaining");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
     @Override
     public JSONObject getJSONObject() {
         JSONObject json = new JSONObject();
@@ -892,7 +955,7 @@ final class TransactionImpl implements Transaction {
 
     private volatile boolean hasValidSignature = false;
 
-    private boolean checkSignature() {
+    boolean checkSignature() {
         if (!hasValidSignature) {
             hasValidSignature = signature != null && Crypto.verify(signature, zeroSignature(getBytes()), getSenderPublicKey(), useNQT());
         }
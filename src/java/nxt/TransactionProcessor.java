@@ -43,8 +43,14 @@ public interface TransactionProcessor extends Observable<List<? extends Transact
 
     DbIterator<? extends Transaction> getAllUnconfirmedTransactions(int from, int to, String sort);
 
+    List<? extends Transaction> getUnconfirmedTransactions(int from, int to);
+
+    List<? extends Transaction> getSenderUnconfirmedTransactions(long senderId);
+
     Transaction getUnconfirmedTransaction(long transactionId);
 
+    long getUnconfirmedTransactionsModificationCount();
+
     Transaction[] getAllWaitingTransactions();
 
     Transaction[] getAllBroadcastedTransactions();
@@ -16,7 +16,6 @@
 
 package nxt;
 
-import nxt.db.DbClause;
 import nxt.db.DbIterator;
 import nxt.db.DbKey;
 import nxt.db.EntityDbTable;
@@ -31,7 +30,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 final class TransactionProcessorImpl implements TransactionProcessor {
 
@@ -49,8 +50,9 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         return instance;
     }
 
-    private final Map<DbKey, UnconfirmedTransaction> transactionCache = new HashMap<>();
-    private volatile boolean cacheInitialized = false;
+    private final UnconfirmedTransactionPool unconfirmedTransactionPool = new UnconfirmedTransactionPool();
+
+    private final ForkJoinPool parseService = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     final DbKey.LongKeyFactory<UnconfirmedTransaction> unconfirmedTransactionDbKeyFactory = new DbKey.LongKeyFactory<UnconfirmedTransaction>("id") {
 
@@ -71,9 +73,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         @Override
         protected void save(Connection con, UnconfirmedTransaction unconfirmedTransaction) throws SQLException {
             unconfirmedTransaction.save(con);
-            if (transactionCache.size() < maxUnconfirmedTransactions) {
-                transactionCache.put(unconfirmedTransaction.getDbKey(), unconfirmedTransaction);
-            }
+            unconfirmedTransactionPool.add(unconfirmedTransaction);
         }
 
         @Override
@@ -85,7 +85,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                     while (rs.next()) {
                         UnconfirmedTransaction unconfirmedTransaction = load(con, rs, null);
                         waitingTransactions.add(unconfirmedTransaction);
-                        transactionCache.remove(unconfirmedTransaction.getDbKey());
+                        unconfirmedTransactionPool.remove(unconfirmedTransaction.getId());
                     }
                 }
             } catch (SQLException e) {
@@ -99,6 +99,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         public void truncate() {
             super.truncate();
             clearCache();
+            unconfirmedTransactionPool.clear();
         }
 
         @Override
@@ -156,10 +157,10 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                     return;
                 }
                 List<UnconfirmedTransaction> expiredTransactions = new ArrayList<>();
-                try (DbIterator<UnconfirmedTransaction> iterator = unconfirmedTransactionTable.getManyBy(
-                        new DbClause.IntClause("expiration", DbClause.Op.LT, Nxt.getEpochTime()), 0, -1, "")) {
-                    while (iterator.hasNext()) {
-                        expiredTransactions.add(iterator.next());
+                int curTime = Nxt.getEpochTime();
+                for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getAll()) {
+                    if (unconfirmedTransaction.getExpiration() < curTime) {
+                        expiredTransactions.add(unconfirmedTransaction);
                     }
                 }
                 if (expiredTransactions.size() > 0) {
@@ -296,6 +297,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             ThreadPool.scheduleThread("RemoveUnconfirmedTransactions", removeUnconfirmedTransactionsThread, 20);
             ThreadPool.scheduleThread("ProcessWaitingTransactions", processWaitingTransactionsThread, 1);
         }
+        try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = unconfirmedTransactionTable.getAll(0, -1)) {
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
+                unconfirmedTransactionPool.load(unconfirmedTransaction);
+            }
+        }
     }
 
     @Override
@@ -312,6 +318,10 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         transactionListeners.notify(transactions, eventType);
     }
 
+    void shutdown() {
+        ThreadPool.shutdownExecutor("parseService", parseService, 5);
+    }
+
     @Override
     public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions() {
         return unconfirmedTransactionTable.getAll(0, -1);
@@ -333,35 +343,35 @@ final class TransactionProcessorImpl implements TransactionProcessor {
     }
 
     @Override
-    public Transaction getUnconfirmedTransaction(long transactionId) {
-        DbKey dbKey = unconfirmedTransactionDbKeyFactory.newKey(transactionId);
-        return getUnconfirmedTransaction(dbKey);
+    public List<UnconfirmedTransaction> getUnconfirmedTransactions(int from, int to) {
+        List<UnconfirmedTransaction> unconfirmedTransactions = unconfirmedTransactionPool.getAll();
+        if (from >= unconfirmedTransactions.size()) {
+            return Collections.emptyList();
+        }
+        if (to < 0 || to >= unconfirmedTransactions.size()) {
+            to = unconfirmedTransactions.size() - 1;
+        }
+        return from <= to ? unconfirmedTransactions.subList(from, to + 1) : Collections.emptyList();
     }
 
-    Transaction getUnconfirmedTransaction(DbKey dbKey) {
-        Nxt.getBlockchain().readLock();
-        try {
-            Transaction transaction = transactionCache.get(dbKey);
-            if (transaction != null) {
-                return transaction;
-            }
-        } finally {
-            Nxt.getBlockchain().readUnlock();
-        }
-        return unconfirmedTransactionTable.get(dbKey);
+    @Override
+    public long getUnconfirmedTransactionsModificationCount() {
+        return unconfirmedTransactionPool.getModificationCount();
+    }
+
+    @Override
+    public List<UnconfirmedTransaction> getSenderUnconfirmedTransactions(long senderId) {
+        return unconfirmedTransactionPool.getBySender(senderId);
+    }
+
+    @Override
+    public UnconfirmedTransaction getUnconfirmedTransaction(long transactionId) {
+        return unconfirmedTransactionPool.get(transactionId);
     }
 
     private List<Long> getAllUnconfirmedTransactionIds() {
         List<Long> result = new ArrayList<>();
-        try (Connection con = Db.db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT id FROM unconfirmed_transaction");
-             ResultSet rs = pstmt.executeQuery()) {
-            while (rs.next()) {
-                result.add(rs.getLong("id"));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
-        }
+        unconfirmedTransactionPool.getAll().forEach(unconfirmedTransaction -> result.add(unconfirmedTransaction.getId()));
         return result;
     }
 
@@ -400,7 +410,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 Logger.logMessage("Transaction " + transaction.getStringId() + " already in blockchain, will not broadcast again");
                 return;
             }
-            if (getUnconfirmedTransaction(((TransactionImpl)transaction).getDbKey()) != null) {
+            if (getUnconfirmedTransaction(transaction.getId()) != null) {
                 if (enableTransactionRebroadcasting) {
                     broadcastedTransactions.add((TransactionImpl) transaction);
                     Logger.logMessage("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will re-broadcast");
@@ -444,11 +454,9 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             List<Transaction> removed = new ArrayList<>();
             try {
                 Db.db.beginTransaction();
-                try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-                    for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                        unconfirmedTransaction.getTransaction().undoUnconfirmed();
-                        removed.add(unconfirmedTransaction.getTransaction());
-                    }
+                for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getAll()) {
+                    unconfirmedTransaction.getTransaction().undoUnconfirmed();
+                    removed.add(unconfirmedTransaction.getTransaction());
                 }
                 unconfirmedTransactionTable.truncate();
                 Db.db.commitTransaction();
@@ -462,7 +470,6 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             unconfirmedDuplicates.clear();
             waitingTransactions.clear();
             broadcastedTransactions.clear();
-            transactionCache.clear();
             transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
@@ -488,18 +495,15 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 return;
             }
             List<Transaction> removed = new ArrayList<>();
-            try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-                for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                    unconfirmedTransaction.getTransaction().undoUnconfirmed();
-                    if (removed.size() < maxUnconfirmedTransactions) {
-                        removed.add(unconfirmedTransaction.getTransaction());
-                    }
-                    waitingTransactions.add(unconfirmedTransaction);
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getAll()) {
+                unconfirmedTransaction.getTransaction().undoUnconfirmed();
+                if (removed.size() < maxUnconfirmedTransactions) {
+                    removed.add(unconfirmedTransaction.getTransaction());
                 }
+                waitingTransactions.add(unconfirmedTransaction);
             }
             unconfirmedTransactionTable.truncate();
             unconfirmedDuplicates.clear();
-            transactionCache.clear();
             transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
@@ -510,13 +514,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
     public void rebroadcastAllUnconfirmedTransactions() {
         BlockchainImpl.getInstance().writeLock();
         try {
-            try (DbIterator<UnconfirmedTransaction> oldNonBroadcastedTransactions = getAllUnconfirmedTransactions()) {
-                for (UnconfirmedTransaction unconfirmedTransaction : oldNonBroadcastedTransactions) {
-                    if (unconfirmedTransaction.getTransaction().isUnconfirmedDuplicate(unconfirmedDuplicates)) {
-                        Logger.logDebugMessage("Skipping duplicate unconfirmed transaction " + unconfirmedTransaction.getTransaction().getJSONObject().toString());
-                    } else if (enableTransactionRebroadcasting) {
-                        broadcastedTransactions.add(unconfirmedTransaction.getTransaction());
-                    }
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getAll()) {
+                if (unconfirmedTransaction.getTransaction().isUnconfirmedDuplicate(unconfirmedDuplicates)) {
+                    Logger.logDebugMessage("Skipping duplicate unconfirmed transaction " + unconfirmedTransaction.getTransaction().getJSONObject().toString());
+                } else if (enableTransactionRebroadcasting) {
+                    broadcastedTransactions.add(unconfirmedTransaction.getTransaction());
                 }
             }
         } finally {
@@ -545,7 +547,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             int deleted = pstmt.executeUpdate();
             if (deleted > 0) {
                 transaction.undoUnconfirmed();
-                transactionCache.remove(transaction.getDbKey());
+                unconfirmedTransactionPool.remove(transaction.getId());
                 transactionListeners.notify(Collections.singletonList(transaction), Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
             }
         } catch (SQLException e) {
@@ -577,17 +579,13 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         try {
             if (waitingTransactions.size() > 0) {
                 int currentTime = Nxt.getEpochTime();
-                List<Transaction> addedUnconfirmedTransactions = new ArrayList<>();
+                List<UnconfirmedTransaction> validTransactions = new ArrayList<>();
                 Iterator<UnconfirmedTransaction> iterator = waitingTransactions.iterator();
                 while (iterator.hasNext()) {
                     UnconfirmedTransaction unconfirmedTransaction = iterator.next();
                     try {
                         unconfirmedTransaction.validate();
-                        processTransaction(unconfirmedTransaction);
-                        iterator.remove();
-                        addedUnconfirmedTransactions.add(unconfirmedTransaction.getTransaction());
-                    } catch (NxtException.ExistingTransactionException e) {
-                        iterator.remove();
+                        validTransactions.add(unconfirmedTransaction);
                     } catch (NxtException.NotCurrentlyValidException e) {
                         if (unconfirmedTransaction.getExpiration() < currentTime
                                 || currentTime - Convert.toEpochTime(unconfirmedTransaction.getArrivalTimestamp()) > 3600) {
@@ -597,6 +595,23 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                         iterator.remove();
                     }
                 }
+                List<Transaction> addedUnconfirmedTransactions = new ArrayList<>();
+                Set<UnconfirmedTransaction> removedTransactions = new HashSet<>();
+                Exception[] results = processTransactions(validTransactions);
+                for (int i = 0; i < results.length; i++) {
+                    UnconfirmedTransaction unconfirmedTransaction = validTransactions.get(i);
+                    Exception e = results[i];
+                    if (e == null) {
+                        removedTransactions.add(unconfirmedTransaction);
+                        addedUnconfirmedTransactions.add(unconfirmedTransaction.getTransaction());
+                    } else if (!(e instanceof NxtException.NotCurrentlyValidException)
+                            || e instanceof NxtException.ExistingTransactionException
+                            || unconfirmedTransaction.getExpiration() < currentTime
+                            || currentTime - Convert.toEpochTime(unconfirmedTransaction.getArrivalTimestamp()) > 3600) {
+                        removedTransactions.add(unconfirmedTransaction);
+                    }
+                }
+                waitingTransactions.removeAll(removedTransactions);
                 if (addedUnconfirmedTransactions.size() > 0) {
                     transactionListeners.notify(addedUnconfirmedTransactions, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
                 }
@@ -606,6 +621,10 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         }
     }
 
+    private static String toLogString(Object transactionData) {
+        return transactionData instanceof byte[] ? Convert.toHexString((byte[]) transactionData) : ((JSONObject) transactionData).toJSONString();
+    }
+
     private void processPeerTransactions(JSONArray transactionsData) throws NxtException.NotValidException {
         if (Nxt.getBlockchain().getHeight() <= Constants.LAST_KNOWN_BLOCK && !testUnconfirmedTransactions) {
             return;
@@ -614,20 +633,62 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             return;
         }
         long arrivalTimestamp = System.currentTimeMillis();
+        //
+        // Parse, validate and verify the signatures of the received transactions in parallel
+        // without holding the blockchain lock.  Transactions which are already known are skipped.
+        //
+        int count = transactionsData.size();
+        TransactionImpl[] parsedTransactions = new TransactionImpl[count];
+        boolean[] newTransactions = new boolean[count];
+        Exception[] parseExceptions = new Exception[count];
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            int i = n;
+            tasks.add(() -> {
+                try {
+                    Object transactionData = transactionsData.get(i);
+                    TransactionImpl transaction = transactionData instanceof byte[] ? TransactionImpl.parseTransaction((byte[]) transactionData)
+                            : TransactionImpl.parseTransaction((JSONObject) transactionData);
+                    parsedTransactions[i] = transaction;
+                    if (getUnconfirmedTransaction(transaction.getId()) != null || TransactionDb.hasTransaction(transaction.getId())) {
+                        return null;
+                    }
+                    transaction.validate();
+                    transaction.checkSignature();
+                    newTransactions[i] = true;
+                } catch (NxtException.ValidationException|RuntimeException e) {
+                    parseExceptions[i] = e;
+                }
+                return null;
+            });
+        }
+        parseService.invokeAll(tasks);
         List<TransactionImpl> receivedTransactions = new ArrayList<>();
+        List<UnconfirmedTransaction> unconfirmedTransactions = new ArrayList<>();
+        List<Object> unconfirmedTransactionsData = new ArrayList<>();
+        List<Exception> exceptions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (parsedTransactions[i] != null) {
+                receivedTransactions.add(parsedTransactions[i]);
+            }
+            if (newTransactions[i]) {
+                unconfirmedTransactions.add(new UnconfirmedTransaction(parsedTransactions[i], arrivalTimestamp));
+                unconfirmedTransactionsData.add(transactionsData.get(i));
+            } else if (parseExceptions[i] != null && !(parseExceptions[i] instanceof NxtException.NotCurrentlyValidException)) {
+                Logger.logDebugMessage(String.format("Invalid transaction from peer: %s", toLogString(transactionsData.get(i))), parseExceptions[i]);
+                exceptions.add(parseExceptions[i]);
+            }
+        }
+        //
+        // Add the new transactions to the unconfirmed pool as a single batch
+        //
         List<TransactionImpl> sendToPeersTransactions = new ArrayList<>();
         List<TransactionImpl> addedUnconfirmedTransactions = new ArrayList<>();
-        List<Exception> exceptions = new ArrayList<>();
-        for (Object transactionData : transactionsData) {
-            try {
-                TransactionImpl transaction = TransactionImpl.parseTransaction((JSONObject) transactionData);
-                receivedTransactions.add(transaction);
-                if (getUnconfirmedTransaction(transaction.getDbKey()) != null || TransactionDb.hasTransaction(transaction.getId())) {
-                    continue;
-                }
-                transaction.validate();
-                UnconfirmedTransaction unconfirmedTransaction = new UnconfirmedTransaction(transaction, arrivalTimestamp);
-                processTransaction(unconfirmedTransaction);
+        Exception[] results = processTransactions(unconfirmedTransactions);
+        for (int i = 0; i < results.length; i++) {
+            TransactionImpl transaction = unconfirmedTransactions.get(i).getTransaction();
+            Exception e = results[i];
+            if (e == null) {
                 if (broadcastedTransactions.contains(transaction)) {
                     Logger.logDebugMessage("Received back transaction " + transaction.getStringId()
                             + " that we broadcasted, will not forward again to peers");
@@ -635,10 +696,8 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                     sendToPeersTransactions.add(transaction);
                 }
                 addedUnconfirmedTransactions.add(transaction);
-
-            } catch (NxtException.NotCurrentlyValidException ignore) {
-            } catch (NxtException.ValidationException|RuntimeException e) {
-                Logger.logDebugMessage(String.format("Invalid transaction from peer: %s", ((JSONObject) transactionData).toJSONString()), e);
+            } else if (!(e instanceof NxtException.NotCurrentlyValidException)) {
+                Logger.logDebugMessage(String.format("Invalid transaction from peer: %s", toLogString(unconfirmedTransactionsData.get(i))), e);
                 exceptions.add(e);
             }
         }
@@ -655,77 +714,132 @@ final class TransactionProcessorImpl implements TransactionProcessor {
     }
 
     private void processTransaction(UnconfirmedTransaction unconfirmedTransaction) throws NxtException.ValidationException {
-        TransactionImpl transaction = unconfirmedTransaction.getTransaction();
-        int curTime = Nxt.getEpochTime();
-        if (transaction.getTimestamp() > curTime + Constants.MAX_TIMEDRIFT || transaction.getExpiration() < curTime) {
-            throw new NxtException.NotCurrentlyValidException("Invalid transaction timestamp");
+        checkTransaction(unconfirmedTransaction.getTransaction());
+        BlockchainImpl.getInstance().writeLock();
+        try {
+            try {
+                Db.db.beginTransaction();
+                addTransaction(unconfirmedTransaction);
+                Db.db.commitTransaction();
+            } catch (Exception e) {
+                Db.db.rollbackTransaction();
+                throw e;
+            } finally {
+                Db.db.endTransaction();
+            }
+        } finally {
+            BlockchainImpl.getInstance().writeUnlock();
         }
-        if (transaction.getVersion() < 1) {
-            throw new NxtException.NotValidException("Invalid transaction version");
+    }
+
+    /**
+     * Add a batch of transactions to the unconfirmed pool, in order, using a single lock acquisition
+     * and a single database commit.  If the batch fails with an unexpected exception it is rolled back
+     * and the transactions are processed one at a time instead.
+     *
+     * @param   unconfirmedTransactions     Transactions to add
+     * @return                              Exception for each rejected transaction, or null if it was added
+     */
+    private Exception[] processTransactions(List<UnconfirmedTransaction> unconfirmedTransactions) {
+        Exception[] results = new Exception[unconfirmedTransactions.size()];
+        if (results.length == 0) {
+            return results;
         }
-        if (transaction.getId() == 0L) {
-            throw new NxtException.NotValidException("Invalid transaction id 0");
+        for (int i = 0; i < results.length; i++) {
+            try {
+                checkTransaction(unconfirmedTransactions.get(i).getTransaction());
+            } catch (NxtException.ValidationException e) {
+                results[i] = e;
+            }
         }
-
         BlockchainImpl.getInstance().writeLock();
         try {
             try {
                 Db.db.beginTransaction();
-                if (Nxt.getBlockchain().getHeight() <= Constants.LAST_KNOWN_BLOCK && !testUnconfirmedTransactions) {
-                    throw new NxtException.NotCurrentlyValidException("Blockchain not ready to accept transactions");
-                }
-
-                if (getUnconfirmedTransaction(transaction.getDbKey()) != null || TransactionDb.hasTransaction(transaction.getId())) {
-                    throw new NxtException.ExistingTransactionException("Transaction already processed");
-                }
-
-                if (! transaction.verifySignature()) {
-                    if (Account.getAccount(transaction.getSenderId()) != null) {
-                        throw new NxtException.NotValidException("Transaction signature verification failed");
-                    } else {
-                        throw new NxtException.NotCurrentlyValidException("Unknown transaction sender");
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null) {
+                        try {
+                            addTransaction(unconfirmedTransactions.get(i));
+                        } catch (NxtException.ValidationException e) {
+                            results[i] = e;
+                        }
                     }
                 }
-
-                if (! transaction.applyUnconfirmed()) {
-                    throw new NxtException.InsufficientBalanceException("Insufficient balance");
-                }
-
-                if (transaction.isUnconfirmedDuplicate(unconfirmedDuplicates)) {
-                    throw new NxtException.NotCurrentlyValidException("Duplicate unconfirmed transaction");
-                }
-
-                unconfirmedTransactionTable.insert(unconfirmedTransaction);
-
                 Db.db.commitTransaction();
-            } catch (Exception e) {
+                return results;
+            } catch (RuntimeException e) {
+                Logger.logDebugMessage("Unable to add transaction batch, processing transactions individually", e);
                 Db.db.rollbackTransaction();
-                throw e;
             } finally {
                 Db.db.endTransaction();
             }
+            unconfirmedDuplicates.clear();
+            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactionPool.getAll()) {
+                unconfirmedTransaction.getTransaction().isUnconfirmedDuplicate(unconfirmedDuplicates);
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null || results[i] instanceof NxtException.ExistingTransactionException) {
+                    try {
+                        processTransaction(unconfirmedTransactions.get(i));
+                        results[i] = null;
+                    } catch (NxtException.ValidationException|RuntimeException e) {
+                        results[i] = e;
+                    }
+                }
+            }
+            return results;
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
         }
     }
 
-    private static final Comparator<UnconfirmedTransaction> cachedUnconfirmedTransactionComparator = (UnconfirmedTransaction t1, UnconfirmedTransaction t2) -> {
-        int compare;
-        // Sort by transaction_height ASC
-        compare = Integer.compare(t1.getHeight(), t2.getHeight());
-        if (compare != 0)
-            return compare;
-        // Sort by fee_per_byte DESC
-        compare = Long.compare(t1.getFeePerByte(), t2.getFeePerByte());
-        if (compare != 0)
-            return -compare;
-        // Sort by arrival_timestamp ASC
-        compare = Long.compare(t1.getArrivalTimestamp(), t2.getArrivalTimestamp());
-        if (compare != 0)
-            return compare;
-        // Sort by transaction ID ASC
-        return Long.compare(t1.getId(), t2.getId());
-    };
+    private static void checkTransaction(TransactionImpl transaction) throws NxtException.ValidationException {
+        int curTime = Nxt.getEpochTime();
+        if (transaction.getTimestamp() > curTime + Constants.MAX_TIMEDRIFT || transaction.getExpiration() < curTime) {
+            throw new NxtException.NotCurrentlyValidException("Invalid transaction timestamp");
+        }
+        if (transaction.getVersion() < 1) {
+            throw new NxtException.NotValidException("Invalid transaction version");
+        }
+        if (transaction.getId() == 0L) {
+            throw new NxtException.NotValidException("Invalid transaction id 0");
+        }
+    }
+
+    /**
+     * Apply an unconfirmed transaction and add it to the unconfirmed pool.  Must be called within a
+     * database transaction while holding the blockchain write lock.  Nothing is changed if the
+     * transaction is rejected, so that the other transactions of a batch can still be committed.
+     */
+    private void addTransaction(UnconfirmedTransaction unconfirmedTransaction) throws NxtException.ValidationException {
+        TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+        if (Nxt.getBlockchain().getHeight() <= Constants.LAST_KNOWN_BLOCK && !testUnconfirmedTransactions) {
+            throw new NxtException.NotCurrentlyValidException("Blockchain not ready to accept transactions");
+        }
+
+        if (getUnconfirmedTransaction(transaction.getId()) != null || TransactionDb.hasTransaction(transaction.getId())) {
+            throw new NxtException.ExistingTransactionException("Transaction already processed");
+        }
+
+        if (! transaction.verifySignature()) {
+            if (Account.getAccount(transaction.getSenderId()) != null) {
+                throw new NxtException.NotValidException("Transaction signature verification failed");
+            } else {
+                throw new NxtException.NotCurrentlyValidException("Unknown transaction sender");
+            }
+        }
+
+        if (! transaction.applyUnconfirmed()) {
+            throw new NxtException.InsufficientBalanceException("Insufficient balance");
+        }
+
+        if (transaction.isUnconfirmedDuplicate(unconfirmedDuplicates)) {
+            transaction.undoUnconfirmed();
+            throw new NxtException.NotCurrentlyValidException("Duplicate unconfirmed transaction");
+        }
+
+        unconfirmedTransactionTable.insert(unconfirmedTransaction);
+    }
 
     /**
      * Get the cached unconfirmed transactions
@@ -734,33 +848,12 @@ final class TransactionProcessorImpl implements TransactionProcessor {
      */
     @Override
     public SortedSet<? extends Transaction> getCachedUnconfirmedTransactions(List<String> exclude) {
-        SortedSet<UnconfirmedTransaction> transactionSet = new TreeSet<>(cachedUnconfirmedTransactionComparator);
-        Nxt.getBlockchain().readLock();
-        try {
-            //
-            // Initialize the unconfirmed transaction cache if it hasn't been done yet
-            //
-            synchronized(transactionCache) {
-                if (!cacheInitialized) {
-                    DbIterator<UnconfirmedTransaction> it = getAllUnconfirmedTransactions();
-                    while (it.hasNext()) {
-                        UnconfirmedTransaction unconfirmedTransaction = it.next();
-                        transactionCache.put(unconfirmedTransaction.getDbKey(), unconfirmedTransaction);
-                    }
-                    cacheInitialized = true;
-                }
+        SortedSet<UnconfirmedTransaction> transactionSet = new TreeSet<>(UnconfirmedTransactionPool.comparator);
+        unconfirmedTransactionPool.getAll().forEach(transaction -> {
+            if (Collections.binarySearch(exclude, transaction.getStringId()) < 0) {
+                transactionSet.add(transaction);
             }
-            //
-            // Build the result set
-            //
-            transactionCache.values().forEach(transaction -> {
-                if (Collections.binarySearch(exclude, transaction.getStringId()) < 0) {
-                    transactionSet.add(transaction);
-                }
-            });
-        } finally {
-            Nxt.getBlockchain().readUnlock();
-        }
+        });
         return transactionSet;
     }
 
@@ -33,11 +33,13 @@ class UnconfirmedTransaction implements Transaction {
     private final TransactionImpl transaction;
     private final long arrivalTimestamp;
     private final long feePerByte;
+    private final int transactionHeight;
 
     UnconfirmedTransaction(TransactionImpl transaction, long arrivalTimestamp) {
         this.transaction = transaction;
         this.arrivalTimestamp = arrivalTimestamp;
         this.feePerByte = transaction.getFeeNQT() / transaction.getFullSize();
+        this.transactionHeight = transaction.getHeight();
     }
 
     UnconfirmedTransaction(ResultSet rs) throws SQLException {
@@ -50,7 +52,8 @@ class UnconfirmedTransaction implements Transaction {
             }
             TransactionImpl.BuilderImpl builder = TransactionImpl.newTransactionBuilder(transactionBytes, prunableAttachments);
             this.transaction = builder.build();
-            this.transaction.setHeight(rs.getInt("transaction_height"));
+            this.transactionHeight = rs.getInt("transaction_height");
+            this.transaction.setHeight(transactionHeight);
             this.arrivalTimestamp = rs.getLong("arrival_timestamp");
             this.feePerByte = rs.getLong("fee_per_byte");
         } catch (NxtException.ValidationException e) {
@@ -64,7 +67,7 @@ class UnconfirmedTransaction implements Transaction {
                 + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
             int i = 0;
             pstmt.setLong(++i, transaction.getId());
-            pstmt.setInt(++i, transaction.getHeight());
+            pstmt.setInt(++i, transactionHeight);
             pstmt.setLong(++i, feePerByte);
             pstmt.setInt(++i, transaction.getExpiration());
             pstmt.setBytes(++i, transaction.bytes());
@@ -92,6 +95,13 @@ class UnconfirmedTransaction implements Transaction {
         return feePerByte;
     }
 
+    /**
+     * Transaction height when the transaction was added, which does not change if the transaction is later included in a block
+     */
+    int getTransactionHeight() {
+        return transactionHeight;
+    }
+
     @Override
     public boolean equals(Object o) {
         return o instanceof UnconfirmedTransaction && transaction.equals(((UnconfirmedTransaction)o).getTransaction());
@@ -221,6 +231,11 @@ class UnconfirmedTransaction implements Transaction {
         return transaction.getUnsignedBytes();
     }
 
+    @Override
+    public byte[] getPeerBytes() {
+        return transaction.getPeerBytes();
+    }
+
     @Override
     public JSONObject getJSONObject() {
         return transaction.getJSONObject();
@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.db.TransactionalDb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * In-memory pool of the unconfirmed transactions, indexed by transaction id and by sender and kept
+ * in the same order as the unconfirmed_transaction table.
+ * <p>
+ * Changes made within a database transaction are only visible to the thread making them until the
+ * transaction is committed, and are discarded if the transaction is rolled back.
+ */
+final class UnconfirmedTransactionPool implements TransactionalDb.TransactionCallback {
+
+    /**
+     * Sort by transaction height ASC, fee per byte DESC, arrival timestamp ASC and transaction id ASC
+     */
+    static final Comparator<UnconfirmedTransaction> comparator = Comparator
+            .comparingInt(UnconfirmedTransaction::getTransactionHeight)
+            .thenComparing(Comparator.comparingLong(UnconfirmedTransaction::getFeePerByte).reversed())
+            .thenComparingLong(UnconfirmedTransaction::getArrivalTimestamp)
+            .thenComparingLong(UnconfirmedTransaction::getId);
+
+    private final Map<Long, UnconfirmedTransaction> transactions = new ConcurrentHashMap<>();
+    private final Set<UnconfirmedTransaction> sortedTransactions = new ConcurrentSkipListSet<>(comparator);
+    private final Map<Long, Set<UnconfirmedTransaction>> senderTransactions = new ConcurrentHashMap<>();
+    private final ThreadLocal<Changes> pendingChanges = new ThreadLocal<>();
+    private volatile long modificationCount;
+
+    /**
+     * Return the unconfirmed transaction with this id, or null if it is not in the pool
+     */
+    UnconfirmedTransaction get(long transactionId) {
+        Changes changes = pendingChanges.get();
+        if (changes != null) {
+            UnconfirmedTransaction unconfirmedTransaction = changes.added.get(transactionId);
+            if (unconfirmedTransaction != null) {
+                return unconfirmedTransaction;
+            }
+            if (changes.cleared || changes.removed.contains(transactionId)) {
+                return null;
+            }
+        }
+        return transactions.get(transactionId);
+    }
+
+    /**
+     * Return all unconfirmed transactions, in pool order
+     */
+    List<UnconfirmedTransaction> getAll() {
+        return merge(sortedTransactions, changes -> changes.added.values());
+    }
+
+    /**
+     * Return the unconfirmed transactions of this sender, in pool order
+     */
+    List<UnconfirmedTransaction> getBySender(long senderId) {
+        return merge(senderTransactions.getOrDefault(senderId, Collections.emptySet()), changes -> {
+            List<UnconfirmedTransaction> added = new ArrayList<>();
+            changes.added.values().forEach(unconfirmedTransaction -> {
+                if (unconfirmedTransaction.getSenderId() == senderId) {
+                    added.add(unconfirmedTransaction);
+                }
+            });
+            return added;
+        });
+    }
+
+    int size() {
+        Changes changes = pendingChanges.get();
+        return changes == null ? transactions.size() : getAll().size();
+    }
+
+    /**
+     * Return the modification count, which is incremented whenever committed changes are made to the pool
+     */
+    long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Load a committed transaction, must not be called within a database transaction
+     */
+    void load(UnconfirmedTransaction unconfirmedTransaction) {
+        addCommitted(unconfirmedTransaction);
+        modificationCount++;
+    }
+
+    void add(UnconfirmedTransaction unconfirmedTransaction) {
+        Changes changes = getChanges();
+        changes.removed.remove(unconfirmedTransaction.getId());
+        changes.added.put(unconfirmedTransaction.getId(), unconfirmedTransaction);
+        if (!changes.cleared && transactions.containsKey(unconfirmedTransaction.getId())) {
+            changes.removed.add(unconfirmedTransaction.getId());
+        }
+    }
+
+    void remove(long transactionId) {
+        Changes changes = getChanges();
+        changes.added.remove(transactionId);
+        changes.removed.add(transactionId);
+    }
+
+    void clear() {
+        Changes changes = getChanges();
+        changes.added.clear();
+        changes.removed.clear();
+        changes.cleared = true;
+    }
+
+    @Override
+    public void commit() {
+        Changes changes = pendingChanges.get();
+        if (changes == null) {
+            return;
+        }
+        pendingChanges.remove();
+        if (changes.cleared) {
+            transactions.clear();
+            sortedTransactions.clear();
+            senderTransactions.clear();
+        }
+        changes.removed.forEach(this::removeCommitted);
+        changes.added.values().forEach(this::addCommitted);
+        modificationCount++;
+    }
+
+    @Override
+    public void rollback() {
+        pendingChanges.remove();
+    }
+
+    private void addCommitted(UnconfirmedTransaction unconfirmedTransaction) {
+        transactions.put(unconfirmedTransaction.getId(), unconfirmedTransaction);
+        sortedTransactions.add(unconfirmedTransaction);
+        senderTransactions.computeIfAbsent(unconfirmedTransaction.getSenderId(), senderId -> new ConcurrentSkipListSet<>(comparator))
+                .add(unconfirmedTransaction);
+    }
+
+    private void removeCommitted(long transactionId) {
+        UnconfirmedTransaction unconfirmedTransaction = transactions.remove(transactionId);
+        if (unconfirmedTransaction != null) {
+            sortedTransactions.remove(unconfirmedTransaction);
+            senderTransactions.computeIfPresent(unconfirmedTransaction.getSenderId(), (senderId, senderSet) -> {
+                senderSet.remove(unconfirmedTransaction);
+                return senderSet.isEmpty() ? null : senderSet;
+            });
+        }
+    }
+
+    private List<UnconfirmedTransaction> merge(Set<UnconfirmedTransaction> committed,
+                                               Function<Changes, Iterable<UnconfirmedTransaction>> added) {
+        Changes changes = pendingChanges.get();
+        if (changes == null) {
+            return new ArrayList<>(committed);
+        }
+        TreeSet<UnconfirmedTransaction> result = new TreeSet<>(comparator);
+        if (!changes.cleared) {
+            committed.forEach(unconfirmedTransaction -> {
+                if (!changes.removed.contains(unconfirmedTransaction.getId())) {
+                    result.add(unconfirmedTransaction);
+                }
+            });
+        }
+        added.apply(changes).forEach(result::add);
+        return new ArrayList<>(result);
+    }
+
+    private Changes getChanges() {
+        if (!Db.db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        Changes changes = pendingChanges.get();
+        if (changes == null) {
+            changes = new Changes();
+            pendingChanges.set(changes);
+            Db.db.registerCallback(this);
+        }
+        return changes;
+    }
+
+    private static final class Changes {
+        private final Map<Long, UnconfirmedTransaction> added = new HashMap<>();
+        private final Set<Long> removed = new HashSet<>();
+        private boolean cleared;
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package nxt;
 
+import java.util.Map;
+
 public final class VoteWeighting {
 
     public enum VotingModel {
@@ -39,6 +41,16 @@ public final class VoteWeighting {
                 return (voteWeighting.minBalance == 0 || voteWeighting.minBalanceModel.getBalance(voteWeighting, voterId, height) >= voteWeighting.minBalance) ? 1 : 0;
             }
             @Override
+            public final long[] calcWeights(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                long[] weights = new long[voterIds.length];
+                Map<Long, Long> balances = voteWeighting.minBalance == 0 ? null :
+                        voteWeighting.minBalanceModel.getBalances(voteWeighting, voterIds, height);
+                for (int i = 0; i < voterIds.length; i++) {
+                    weights[i] = (balances == null || balances.getOrDefault(voterIds[i], 0L) >= voteWeighting.minBalance) ? 1 : 0;
+                }
+                return weights;
+            }
+            @Override
             public final MinBalanceModel getMinBalanceModel() {
                 return MinBalanceModel.NONE;
             }
@@ -50,6 +62,10 @@ public final class VoteWeighting {
                 return nqtBalance >= voteWeighting.minBalance ? nqtBalance : 0;
             }
             @Override
+            public final long[] calcWeights(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                return calcBalanceWeights(voteWeighting, voterIds, height);
+            }
+            @Override
             public final MinBalanceModel getMinBalanceModel() {
                 return MinBalanceModel.NQT;
             }
@@ -61,6 +77,10 @@ public final class VoteWeighting {
                 return qntBalance >= voteWeighting.minBalance ? qntBalance : 0;
             }
             @Override
+            public final long[] calcWeights(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                return calcBalanceWeights(voteWeighting, voterIds, height);
+            }
+            @Override
             public final MinBalanceModel getMinBalanceModel() {
                 return MinBalanceModel.ASSET;
             }
@@ -72,6 +92,10 @@ public final class VoteWeighting {
                 return units >= voteWeighting.minBalance ? units : 0;
             }
             @Override
+            public final long[] calcWeights(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                return calcBalanceWeights(voteWeighting, voterIds, height);
+            }
+            @Override
             public final MinBalanceModel getMinBalanceModel() {
                 return MinBalanceModel.CURRENCY;
             }
@@ -113,6 +137,33 @@ public final class VoteWeighting {
 
         public abstract long calcWeight(VoteWeighting voteWeighting, long voterId, int height);
 
+        /**
+         * Calculate the weights of a set of voters.  The voting models which depend on a balance
+         * get the balances of all voters with a single query.
+         *
+         * @param   voteWeighting       Vote weighting
+         * @param   voterIds            Voter account identifiers
+         * @param   height              Height
+         * @return                      Weight of each voter, in the same order as the voter identifiers
+         */
+        public long[] calcWeights(VoteWeighting voteWeighting, long[] voterIds, int height) {
+            long[] weights = new long[voterIds.length];
+            for (int i = 0; i < voterIds.length; i++) {
+                weights[i] = calcWeight(voteWeighting, voterIds[i], height);
+            }
+            return weights;
+        }
+
+        private static long[] calcBalanceWeights(VoteWeighting voteWeighting, long[] voterIds, int height) {
+            long[] weights = new long[voterIds.length];
+            Map<Long, Long> balances = voteWeighting.votingModel.getMinBalanceModel().getBalances(voteWeighting, voterIds, height);
+            for (int i = 0; i < voterIds.length; i++) {
+                long balance = balances.getOrDefault(voterIds[i], 0L);
+                weights[i] = balance >= voteWeighting.minBalance ? balance : 0;
+            }
+            return weights;
+        }
+
         public abstract MinBalanceModel getMinBalanceModel();
 
         public boolean acceptsVotes() {
@@ -135,24 +186,40 @@ public final class VoteWeighting {
             public final long getBalance(VoteWeighting voteWeighting, long voterId, int height) {
                 throw new UnsupportedOperationException();
             }
+            @Override
+            public final Map<Long, Long> getBalances(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                throw new UnsupportedOperationException();
+            }
         },
         NQT(1) {
             @Override
             public final long getBalance(VoteWeighting voteWeighting, long voterId, int height) {
                 return Account.getAccount(voterId, height).getBalanceNQT();
             }
+            @Override
+            public final Map<Long, Long> getBalances(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                return Account.getBalancesNQT(voterIds, height);
+            }
         },
         ASSET(2) {
             @Override
             public final long getBalance(VoteWeighting voteWeighting, long voterId, int height) {
                 return Account.getAssetBalanceQNT(voterId, voteWeighting.holdingId, height);
             }
+            @Override
+            public final Map<Long, Long> getBalances(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                return Account.getAssetBalancesQNT(voterIds, voteWeighting.holdingId, height);
+            }
         },
         CURRENCY(3) {
             @Override
             public final long getBalance(VoteWeighting voteWeighting, long voterId, int height) {
                 return Account.getCurrencyUnits(voterId, voteWeighting.holdingId, height);
             }
+            @Override
+            public final Map<Long, Long> getBalances(VoteWeighting voteWeighting, long[] voterIds, int height) {
+                return Account.getCurrencyUnits(voterIds, voteWeighting.holdingId, height);
+            }
         };
 
         private final byte code;
@@ -167,6 +234,16 @@ public final class VoteWeighting {
 
         public abstract long getBalance(VoteWeighting voteWeighting, long voterId, int height);
 
+        /**
+         * Return the balances of a set of voters using a single query
+         *
+         * @param   voteWeighting       Vote weighting
+         * @param   voterIds            Voter account identifiers
+         * @param   height              Height
+         * @return                      Balances by voter identifier.  Voters without a balance are not included.
+         */
+        public abstract Map<Long, Long> getBalances(VoteWeighting voteWeighting, long[] voterIds, int height);
+
         public static MinBalanceModel get(byte code) {
             for (MinBalanceModel minBalanceModel : values()) {
                 if (minBalanceModel.getCode() == code) {
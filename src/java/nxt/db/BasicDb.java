@@ -39,6 +39,7 @@ public class BasicDb {
         private int loginTimeout;
         private int defaultLockTimeout;
         private int maxMemoryRows;
+        private int statementCacheSize;
 
         public DbProperties maxCacheSize(int maxCacheSize) {
             this.maxCacheSize = maxCacheSize;
@@ -95,6 +96,11 @@ public class BasicDb {
             return this;
         }
 
+        public DbProperties statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
     }
 
     private JdbcConnectionPool cp;
@@ -106,6 +112,7 @@ public class BasicDb {
     private final int loginTimeout;
     private final int defaultLockTimeout;
     private final int maxMemoryRows;
+    protected final int statementCacheSize;
     private volatile boolean initialized = false;
 
     public BasicDb(DbProperties dbProperties) {
@@ -121,9 +128,12 @@ public class BasicDb {
         if (!dbUrl.contains("MV_STORE=")) {
             dbUrl += ";MV_STORE=FALSE";
         }
-        if (!dbUrl.contains("CACHE_SIZE=")) {
+        if (!dbUrl.contains(";CACHE_SIZE=")) {
             dbUrl += ";CACHE_SIZE=" + maxCacheSize;
         }
+        if (!dbUrl.contains(";QUERY_CACHE_SIZE=") && dbProperties.statementCacheSize > 0) {
+            dbUrl += ";QUERY_CACHE_SIZE=" + dbProperties.statementCacheSize;
+        }
         this.dbUrl = dbUrl;
         this.dbUsername = dbProperties.dbUsername;
         this.dbPassword = dbProperties.dbPassword;
@@ -131,6 +141,7 @@ public class BasicDb {
         this.loginTimeout = dbProperties.loginTimeout;
         this.defaultLockTimeout = dbProperties.defaultLockTimeout;
         this.maxMemoryRows = dbProperties.maxMemoryRows;
+        this.statementCacheSize = dbProperties.statementCacheSize;
     }
 
     public void init(DbVersion dbVersion) {
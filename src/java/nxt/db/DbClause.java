@@ -215,4 +215,35 @@ public abstract class DbClause {
 
     }
 
+    public static final class LongArrayClause extends DbClause {
+
+        private final long[] values;
+
+        public LongArrayClause(String columnName, long[] values) {
+            super(" " + columnName + " IN (" + inList(values.length) + ") ");
+            this.values = values;
+        }
+
+        @Override
+        protected int set(PreparedStatement pstmt, int index) throws SQLException {
+            for (long value : values) {
+                pstmt.setLong(index++, value);
+            }
+            return index;
+        }
+
+        private static String inList(int count) {
+            if (count == 0) {
+                return "NULL";
+            }
+            StringBuilder sb = new StringBuilder(count * 2);
+            sb.append('?');
+            for (int i = 1; i < count; i++) {
+                sb.append(",?");
+            }
+            return sb.toString();
+        }
+
+    }
+
 }
@@ -64,6 +64,13 @@ public abstract class DerivedDbTable {
         //nothing to trim
     }
 
+    /**
+     * Check if the last trim has been done for a part of the table only, and trim needs to be called again
+     */
+    public boolean isTrimPending() {
+        return false;
+    }
+
     public void createSearchIndex(Connection con) throws SQLException {
         //implemented in EntityDbTable only
     }
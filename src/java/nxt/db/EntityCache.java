@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.db;
+
+import org.h2.tools.SimpleResultSet;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared read-through cache of the latest rows of a versioned entity table.
+ * <p>
+ * Rows rather than entity instances are cached, so that every lookup still produces a new entity
+ * and entities modified inside a database transaction are never visible to other threads.
+ * Keys changed inside a transaction are bypassed by that transaction and only evicted from the
+ * shared cache once the transaction commits. A rollback to a given height evicts only the rows
+ * created above that height.
+ */
+final class EntityCache implements TransactionalDb.TransactionCallback {
+
+    private final TransactionalDb db;
+    private final String table;
+    private final int maxSize;
+    private final Map<DbKey, Object[]> rows;
+    private final ThreadLocal<TransactionState> transactionState = new ThreadLocal<>();
+    private volatile Columns columns;
+    private long generation;
+
+    EntityCache(TransactionalDb db, String table, int maxSize) {
+        this.db = db;
+        this.table = table;
+        this.maxSize = maxSize;
+        this.rows = new LinkedHashMap<DbKey, Object[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DbKey, Object[]> eldest) {
+                return size() > EntityCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Return the current cache generation, to be passed to {@link #put} for rows read from the database
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Return a result set positioned on the cached latest row for this key, or null if not cached
+     */
+    ResultSet get(DbKey dbKey) throws SQLException {
+        if (isBypassed(dbKey)) {
+            return null;
+        }
+        Object[] row;
+        synchronized (this) {
+            row = rows.get(dbKey);
+        }
+        if (row == null) {
+            return null;
+        }
+        ResultSet rs = columns.newResultSet(row);
+        rs.next();
+        return rs;
+    }
+
+    /**
+     * Cache the current row of this result set, unless a transaction has been committed since the generation was read
+     */
+    void put(DbKey dbKey, ResultSet rs, long generation) throws SQLException {
+        if (isBypassed(dbKey)) {
+            return;
+        }
+        Columns columns = this.columns;
+        if (columns == null) {
+            columns = new Columns(rs.getMetaData());
+            this.columns = columns;
+        }
+        Object[] row = new Object[columns.names.length];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = rs.getObject(i + 1);
+        }
+        synchronized (this) {
+            if (this.generation == generation) {
+                rows.put(dbKey, row);
+            }
+        }
+    }
+
+    /**
+     * A new version of this key has been saved in the current transaction
+     */
+    void invalidate(DbKey dbKey) {
+        getTransactionState().dbKeys.add(dbKey);
+    }
+
+    /**
+     * All versions above this height have been deleted in the current transaction
+     */
+    void invalidate(int height) {
+        TransactionState state = getTransactionState();
+        state.rollbackHeight = Math.min(state.rollbackHeight, height);
+    }
+
+    @Override
+    public void commit() {
+        TransactionState state = transactionState.get();
+        if (state == null) {
+            return;
+        }
+        transactionState.remove();
+        synchronized (this) {
+            generation += 1;
+            state.dbKeys.forEach(rows::remove);
+            if (state.rollbackHeight != Integer.MAX_VALUE) {
+                int heightColumn = columns != null ? columns.heightColumn : -1;
+                if (heightColumn < 0) {
+                    rows.clear();
+                } else {
+                    rows.values().removeIf(row -> ((Number) row[heightColumn]).intValue() > state.rollbackHeight);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rollback() {
+        transactionState.remove();
+    }
+
+    @Override
+    public String toString() {
+        return table;
+    }
+
+    private boolean isBypassed(DbKey dbKey) {
+        TransactionState state = transactionState.get();
+        return state != null && (state.rollbackHeight != Integer.MAX_VALUE || state.dbKeys.contains(dbKey));
+    }
+
+    private TransactionState getTransactionState() {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        TransactionState state = transactionState.get();
+        if (state == null) {
+            state = new TransactionState();
+            transactionState.set(state);
+        }
+        db.registerCallback(this);
+        return state;
+    }
+
+    private static final class TransactionState {
+        private final Set<DbKey> dbKeys = new HashSet<>();
+        private int rollbackHeight = Integer.MAX_VALUE;
+    }
+
+    private static final class Columns {
+
+        private final String[] names;
+        private final int[] types;
+        private final int[] precisions;
+        private final int[] scales;
+        private final int heightColumn;
+
+        private Columns(ResultSetMetaData metaData) throws SQLException {
+            int count = metaData.getColumnCount();
+            names = new String[count];
+            types = new int[count];
+            precisions = new int[count];
+            scales = new int[count];
+            int heightColumn = -1;
+            for (int i = 0; i < count; i++) {
+                names[i] = metaData.getColumnLabel(i + 1);
+                types[i] = metaData.getColumnType(i + 1);
+                precisions[i] = metaData.getPrecision(i + 1);
+                scales[i] = metaData.getScale(i + 1);
+                if ("HEIGHT".equalsIgnoreCase(names[i])) {
+                    heightColumn = i;
+                }
+            }
+            this.heightColumn = heightColumn;
+        }
+
+        private ResultSet newResultSet(Object[] row) {
+            CachedResultSet rs = new CachedResultSet();
+            for (int i = 0; i < names.length; i++) {
+                rs.addColumn(names[i], types[i], precisions[i], scales[i]);
+            }
+            rs.addRow(row);
+            return rs;
+        }
+    }
+
+    private static final class CachedResultSet extends SimpleResultSet {
+
+        @Override
+        public byte[] getBytes(int columnIndex) throws SQLException {
+            byte[] bytes = super.getBytes(columnIndex);
+            return bytes == null ? null : bytes.clone();
+        }
+
+        @Override
+        public byte[] getBytes(String columnLabel) throws SQLException {
+            return getBytes(findColumn(columnLabel));
+        }
+    }
+
+}
@@ -24,13 +24,23 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 public abstract class EntityDbTable<T> extends DerivedDbTable {
 
+    private static final int ENTITY_CACHE_SIZE = Nxt.getIntProperty("nxt.entityCacheSize");
+
     private final boolean multiversion;
     protected final DbKey.Factory<T> dbKeyFactory;
     private final String defaultSort;
     private final String fullTextSearchColumns;
+    private final EntityCache entityCache;
+    final UndoLog undoLog = new UndoLog(db);
+    private final String getSQL;
+    private final String getAtHeightSQL;
+    final String updateLatestSQL;
 
     protected EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory) {
         this(table, dbKeyFactory, false, null);
@@ -41,11 +51,21 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     }
 
     EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, boolean multiversion, String fullTextSearchColumns) {
+        this(table, dbKeyFactory, multiversion, fullTextSearchColumns, false);
+    }
+
+    EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, boolean multiversion, String fullTextSearchColumns, boolean cached) {
         super(table);
         this.dbKeyFactory = dbKeyFactory;
         this.multiversion = multiversion;
         this.defaultSort = " ORDER BY " + (multiversion ? dbKeyFactory.getPKColumns() : " height DESC, db_id DESC ");
         this.fullTextSearchColumns = fullTextSearchColumns;
+        this.entityCache = cached && ENTITY_CACHE_SIZE > 0 ? new EntityCache(db, table, ENTITY_CACHE_SIZE) : null;
+        this.getSQL = "SELECT * FROM " + table + dbKeyFactory.getPKClause() + (multiversion ? " AND latest = TRUE LIMIT 1" : "");
+        this.getAtHeightSQL = "SELECT * FROM " + table + dbKeyFactory.getPKClause()
+                + " AND height <= ?" + (multiversion ? " AND (latest = TRUE OR EXISTS ("
+                + "SELECT 1 FROM " + table + dbKeyFactory.getPKClause() + " AND height > ?)) ORDER BY height DESC LIMIT 1" : "");
+        this.updateLatestSQL = "UPDATE " + table + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1";
     }
 
     protected abstract T load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException;
@@ -100,9 +120,11 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
                 return t;
             }
         }
+        if (entityCache != null) {
+            return getCached(dbKey, cache);
+        }
         try (Connection con = db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
-             + (multiversion ? " AND latest = TRUE LIMIT 1" : ""))) {
+             PreparedStatement pstmt = con.prepareStatement(getSQL)) {
             dbKey.setPK(pstmt);
             return get(con, pstmt, cache);
         } catch (SQLException e) {
@@ -110,15 +132,50 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
+    private T getCached(DbKey dbKey, boolean cache) {
+        final boolean doCache = cache && db.isInTransaction();
+        long generation = entityCache.getGeneration();
+        try (Connection con = db.getConnection()) {
+            ResultSet cachedRow = entityCache.get(dbKey);
+            if (cachedRow != null) {
+                T t = load(con, cachedRow, dbKey);
+                if (doCache) {
+                    db.getCache(table).put(dbKey, t);
+                }
+                return t;
+            }
+            try (PreparedStatement pstmt = con.prepareStatement(getSQL)) {
+                dbKey.setPK(pstmt);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    T t = load(con, rs, dbKey);
+                    entityCache.put(dbKey, rs, generation);
+                    if (doCache) {
+                        db.getCache(table).put(dbKey, t);
+                    }
+                    return t;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    final void invalidateCache(DbKey dbKey) {
+        if (entityCache != null) {
+            entityCache.invalidate(dbKey);
+        }
+    }
+
     public final T get(DbKey dbKey, int height) {
         if (height < 0 || doesNotExceed(height)) {
             return get(dbKey);
         }
         checkAvailable(height);
         try (Connection con = db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
-                     + " AND height <= ?" + (multiversion ? " AND (latest = TRUE OR EXISTS ("
-                     + "SELECT 1 FROM " + table + dbKeyFactory.getPKClause() + " AND height > ?)) ORDER BY height DESC LIMIT 1" : ""))) {
+             PreparedStatement pstmt = con.prepareStatement(getAtHeightSQL)) {
             int i = dbKey.setPK(pstmt);
             pstmt.setInt(i, height);
             if (multiversion) {
@@ -244,6 +301,62 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
+    /**
+     * Return the entities selected by a clause at a height
+     *
+     * The version of each entity at the height is resolved while reading all versions of the selected
+     * entities, instead of with a correlated subquery for each row.  The clause should select a limited
+     * set of entities by key.
+     *
+     * @param   dbClause            Clause selecting the entities
+     * @param   height              Height
+     * @return                      Entities which exist at the height
+     */
+    public final List<T> getManyAt(DbClause dbClause, int height) {
+        List<T> result = new ArrayList<>();
+        if (!multiversion || height < 0 || doesNotExceed(height)) {
+            try (DbIterator<T> iterator = getManyBy(dbClause, height, 0, -1, "")) {
+                for (T t : iterator) {
+                    result.add(t);
+                }
+            }
+            return result;
+        }
+        checkAvailable(height);
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " WHERE " + dbClause.getClause()
+                     + " ORDER BY " + dbKeyFactory.getPKColumns() + ", height DESC")) {
+            dbClause.set(pstmt, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                DbKey currentKey = null;
+                boolean hasLaterVersion = false;
+                boolean resolved = false;
+                while (rs.next()) {
+                    DbKey dbKey = dbKeyFactory.newKey(rs);
+                    if (!dbKey.equals(currentKey)) {
+                        currentKey = dbKey;
+                        hasLaterVersion = false;
+                        resolved = false;
+                    }
+                    if (resolved) {
+                        continue;
+                    }
+                    if (rs.getInt("height") > height) {
+                        hasLaterVersion = true;
+                        continue;
+                    }
+                    if (hasLaterVersion || rs.getBoolean("latest")) {
+                        result.add(load(con, rs, dbKey));
+                    }
+                    resolved = true;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return result;
+    }
+
     public final DbIterator<T> getManyBy(Connection con, PreparedStatement pstmt, boolean cache) {
         final boolean doCache = cache && db.isInTransaction();
         return new DbIterator<>(con, pstmt, (connection, rs) -> {
@@ -420,15 +533,16 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
             throw new IllegalStateException("Different instance found in Db cache, perhaps trying to save an object "
                     + "that was read outside the current transaction");
         }
-        try (Connection con = db.getConnection()) {
+        invalidateCache(dbKey);
+        try (Connection con = db.getBatchConnection()) {
             if (multiversion) {
-                try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
-                        + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+                try (PreparedStatement pstmt = con.prepareStatement(updateLatestSQL)) {
                     dbKey.setPK(pstmt);
                     pstmt.executeUpdate();
                 }
             }
             save(con, t);
+            undoLog.record(dbKey);
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
@@ -436,22 +550,45 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
 
     @Override
     public void rollback(int height) {
+        if (entityCache != null) {
+            entityCache.invalidate(height);
+        }
+        Set<DbKey> dbKeys = undoLog.getKeys(height);
         if (multiversion) {
-            VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory);
-        } else {
+            if (dbKeys == null) {
+                VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory);
+            } else if (!dbKeys.isEmpty()) {
+                VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory, dbKeys);
+            }
+        } else if (dbKeys == null || !dbKeys.isEmpty()) {
             super.rollback(height);
         }
+        undoLog.rollback(height);
+    }
+
+    @Override
+    public void truncate() {
+        if (entityCache != null) {
+            entityCache.invalidate(-1);
+        }
+        super.truncate();
+        undoLog.rollback(-1);
     }
 
     @Override
     public void trim(int height) {
         if (multiversion) {
-            VersionedEntityDbTable.trim(db, table, height, dbKeyFactory);
+            VersionedEntityDbTable.trim(db, table, height, dbKeyFactory, undoLog);
         } else {
             super.trim(height);
         }
     }
 
+    @Override
+    public boolean isTrimPending() {
+        return multiversion && undoLog.isTrimPending();
+    }
+
     @Override
     public final void createSearchIndex(Connection con) throws SQLException {
         if (fullTextSearchColumns != null) {
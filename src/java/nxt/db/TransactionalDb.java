@@ -26,12 +26,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 public class TransactionalDb extends BasicDb {
 
-    private static final DbFactory factory = new DbFactory();
     private static final long stmtThreshold;
     private static final long txThreshold;
     private static final long txInterval;
@@ -42,6 +42,7 @@ public class TransactionalDb extends BasicDb {
         txInterval = (temp=Nxt.getIntProperty("nxt.transactionLogInterval")) != 0 ? temp*60*1000 : 15*60*1000;
     }
 
+    private final DbFactory factory = new DbFactory();
     private final ThreadLocal<DbConnection> localConnection = new ThreadLocal<>();
     private final ThreadLocal<Map<String,Map<DbKey,Object>>> transactionCaches = new ThreadLocal<>();
     private final ThreadLocal<Set<TransactionCallback>> transactionCallback = new ThreadLocal<>();
@@ -62,6 +63,22 @@ public class TransactionalDb extends BasicDb {
         return new DbConnection(super.getConnection());
     }
 
+    /**
+     * Return a connection for the current transaction which defers INSERT, MERGE and UPDATE prepared
+     * statements to JDBC batches.  The pending batches are executed in the order the statements were first
+     * used, before any other statement is executed on the transaction connection and before the transaction
+     * is committed.  The update count returned by a deferred statement is always 1.
+     *
+     * @return                      Batch connection
+     */
+    public Connection getBatchConnection() {
+        DbConnection con = localConnection.get();
+        if (con == null) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        return con.batchConnection;
+    }
+
     public boolean isInTransaction() {
         return localConnection.get() != null;
     }
@@ -89,6 +106,7 @@ public class TransactionalDb extends BasicDb {
             throw new IllegalStateException("Not in transaction");
         }
         try {
+            con.executeBatches();
             con.doCommit();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
@@ -106,6 +124,7 @@ public class TransactionalDb extends BasicDb {
             throw new IllegalStateException("Not in transaction");
         }
         try {
+            con.clearBatches();
             con.doRollback();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -120,14 +139,14 @@ public class TransactionalDb extends BasicDb {
     }
 
     public void endTransaction() {
-        Connection con = localConnection.get();
+        DbConnection con = localConnection.get();
         if (con == null) {
             throw new IllegalStateException("Not in transaction");
         }
         localConnection.set(null);
         transactionCaches.set(null);
         long now = System.currentTimeMillis();
-        long elapsed = now - ((DbConnection)con).txStart;
+        long elapsed = now - con.txStart;
         if (elapsed >= txThreshold) {
             logThreshold(String.format("Database transaction required %.3f seconds at height %d",
                                        (double)elapsed/1000.0, Nxt.getBlockchain().getHeight()));
@@ -148,6 +167,7 @@ public class TransactionalDb extends BasicDb {
                 Logger.logDebugMessage(String.format("Average database transaction time is %.3f seconds",
                                                      (double)times/1000.0/(double)count));
         }
+        con.closeBatches();
         DbUtils.close(con);
     }
 
@@ -201,12 +221,89 @@ public class TransactionalDb extends BasicDb {
         Logger.logDebugMessage(sb.toString());
     }
 
+    private void executeBatches() throws SQLException {
+        DbConnection con = localConnection.get();
+        if (con != null) {
+            con.executeBatches();
+        }
+    }
+
     private final class DbConnection extends FilteredConnection {
 
         long txStart = 0;
+        private final Connection con;
+        private final BatchConnection batchConnection;
+        private final Map<String, BatchStatement> batchStatements = new HashMap<>();
+        private final Set<BatchStatement> pendingBatches = new LinkedHashSet<>();
+        private final Map<String, CachedStatement> cachedStatements = new HashMap<>();
 
         private DbConnection(Connection con) {
             super(con, factory);
+            this.con = con;
+            batchConnection = new BatchConnection(con, this);
+        }
+
+        /**
+         * Prepared statements created by the transaction connection are cached and reused for the remainder
+         * of the transaction.  A new statement is created if the cached statement has not been closed yet.
+         */
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            if (this != localConnection.get()) {
+                return super.prepareStatement(sql);
+            }
+            CachedStatement stmt = cachedStatements.get(sql);
+            if (stmt == null) {
+                if (cachedStatements.size() >= statementCacheSize) {
+                    return super.prepareStatement(sql);
+                }
+                stmt = new CachedStatement(con.prepareStatement(sql), sql);
+                cachedStatements.put(sql, stmt);
+            } else if (stmt.inUse) {
+                return super.prepareStatement(sql);
+            }
+            stmt.inUse = true;
+            return stmt;
+        }
+
+        private BatchStatement getBatchStatement(Connection con, String sql) throws SQLException {
+            BatchStatement stmt = batchStatements.get(sql);
+            if (stmt == null) {
+                stmt = new BatchStatement(con.prepareStatement(sql), sql, this);
+                batchStatements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        private void executeBatches() throws SQLException {
+            if (pendingBatches.isEmpty()) {
+                return;
+            }
+            BatchStatement[] stmts = pendingBatches.toArray(new BatchStatement[pendingBatches.size()]);
+            pendingBatches.clear();
+            for (BatchStatement stmt : stmts) {
+                long start = System.currentTimeMillis();
+                stmt.executeDeferred();
+                long elapsed = System.currentTimeMillis() - start;
+                if (elapsed > stmtThreshold)
+                    logThreshold(String.format("SQL batch required %.3f seconds at height %d:\n%s",
+                                               (double)elapsed/1000.0, Nxt.getBlockchain().getHeight(), stmt.getSQL()));
+            }
+        }
+
+        private void clearBatches() throws SQLException {
+            for (BatchStatement stmt : pendingBatches) {
+                stmt.clearBatch();
+            }
+            pendingBatches.clear();
+        }
+
+        private void closeBatches() {
+            batchStatements.values().forEach(BatchStatement::closeDeferred);
+            batchStatements.clear();
+            pendingBatches.clear();
+            cachedStatements.values().forEach(CachedStatement::closeCached);
+            cachedStatements.clear();
         }
 
         @Override
@@ -254,7 +351,103 @@ public class TransactionalDb extends BasicDb {
         }
     }
 
-    private static final class DbStatement extends FilteredStatement {
+    /**
+     * Connection used by the current transaction to defer data changes to JDBC batches
+     */
+    private final class BatchConnection extends FilteredConnection {
+
+        private final Connection con;
+        private final DbConnection dbConnection;
+
+        private BatchConnection(Connection con, DbConnection dbConnection) {
+            super(con, factory);
+            this.con = con;
+            this.dbConnection = dbConnection;
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            String statement = sql.trim().toUpperCase();
+            if (statement.startsWith("INSERT ") || statement.startsWith("MERGE ") || statement.startsWith("UPDATE ")) {
+                return dbConnection.getBatchStatement(con, sql);
+            }
+            return dbConnection.prepareStatement(sql);
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            dbConnection.setAutoCommit(autoCommit);
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            dbConnection.commit();
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            dbConnection.rollback();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            dbConnection.close();
+        }
+    }
+
+    /**
+     * Prepared statement which adds each update to a batch that is executed later by the transaction
+     * connection.  The statement is reused for the remainder of the transaction and closed when the
+     * transaction ends.
+     */
+    private static final class BatchStatement extends FilteredPreparedStatement {
+
+        private final DbConnection dbConnection;
+
+        private BatchStatement(PreparedStatement stmt, String sql, DbConnection dbConnection) {
+            super(stmt, sql);
+            this.dbConnection = dbConnection;
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            executeUpdate();
+            return false;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            throw new UnsupportedOperationException("Batch statement cannot be used for a query");
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            addBatch();
+            dbConnection.pendingBatches.add(this);
+            return 1;
+        }
+
+        @Override
+        public long executeLargeUpdate() throws SQLException {
+            return executeUpdate();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void executeDeferred() throws SQLException {
+            super.executeBatch();
+        }
+
+        private void closeDeferred() {
+            try {
+                super.close();
+            } catch (SQLException ignore) {}
+        }
+    }
+
+    private final class DbStatement extends FilteredStatement {
 
         private DbStatement(Statement stmt) {
             super(stmt);
@@ -262,6 +455,7 @@ public class TransactionalDb extends BasicDb {
 
         @Override
         public boolean execute(String sql) throws SQLException {
+            executeBatches();
             long start = System.currentTimeMillis();
             boolean b = super.execute(sql);
             long elapsed = System.currentTimeMillis() - start;
@@ -273,6 +467,7 @@ public class TransactionalDb extends BasicDb {
 
         @Override
         public ResultSet executeQuery(String sql) throws SQLException {
+            executeBatches();
             long start = System.currentTimeMillis();
             ResultSet r = super.executeQuery(sql);
             long elapsed = System.currentTimeMillis() - start;
@@ -284,6 +479,7 @@ public class TransactionalDb extends BasicDb {
 
         @Override
         public int executeUpdate(String sql) throws SQLException {
+            executeBatches();
             long start = System.currentTimeMillis();
             int c = super.executeUpdate(sql);
             long elapsed = System.currentTimeMillis() - start;
@@ -292,15 +488,22 @@ public class TransactionalDb extends BasicDb {
                                            (double)elapsed/1000.0, Nxt.getBlockchain().getHeight(), sql));
             return c;
         }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            executeBatches();
+            return super.executeBatch();
+        }
     }
 
-    private static final class DbPreparedStatement extends FilteredPreparedStatement {
+    private class DbPreparedStatement extends FilteredPreparedStatement {
         private DbPreparedStatement(PreparedStatement stmt, String sql) {
             super(stmt, sql);
         }
 
         @Override
         public boolean execute() throws SQLException {
+            executeBatches();
             long start = System.currentTimeMillis();
             boolean b = super.execute();
             long elapsed = System.currentTimeMillis() - start;
@@ -312,6 +515,7 @@ public class TransactionalDb extends BasicDb {
 
         @Override
         public ResultSet executeQuery() throws SQLException {
+            executeBatches();
             long start = System.currentTimeMillis();
             ResultSet r = super.executeQuery();
             long elapsed = System.currentTimeMillis() - start;
@@ -323,6 +527,7 @@ public class TransactionalDb extends BasicDb {
 
         @Override
         public int executeUpdate() throws SQLException {
+            executeBatches();
             long start = System.currentTimeMillis();
             int c = super.executeUpdate();
             long elapsed = System.currentTimeMillis() - start;
@@ -331,9 +536,47 @@ public class TransactionalDb extends BasicDb {
                                            (double)elapsed/1000.0, Nxt.getBlockchain().getHeight(), getSQL()));
             return c;
         }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            executeBatches();
+            return super.executeBatch();
+        }
+    }
+
+    /**
+     * Prepared statement which is returned to the statement cache of the transaction connection when it
+     * is closed, and closed when the transaction ends
+     */
+    private final class CachedStatement extends DbPreparedStatement {
+
+        private boolean inUse;
+
+        private CachedStatement(PreparedStatement stmt, String sql) {
+            super(stmt, sql);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (inUse) {
+                clearParameters();
+                inUse = false;
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return !inUse || super.isClosed();
+        }
+
+        private void closeCached() {
+            try {
+                super.close();
+            } catch (SQLException ignore) {}
+        }
     }
 
-    private static final class DbFactory implements FilteredFactory {
+    private final class DbFactory implements FilteredFactory {
 
         @Override
         public Statement createStatement(Statement stmt) {
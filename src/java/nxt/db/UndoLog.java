@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.db;
+
+import nxt.Constants;
+import nxt.Nxt;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Per-height log of the keys of the rows written to a derived table, so that a rollback only needs
+ * to process the keys changed above the rollback height instead of scanning the table.
+ * <p>
+ * The log covers the heights above the blockchain height at the time a row is first written or the table is first
+ * trimmed, and the keys written during the last MAX_ROLLBACK blocks.  A rollback to a height which is not covered,
+ * or done before the log has been started, must use the full table scan.
+ * <p>
+ * The log is also used to trim versioned tables incrementally.  Once a full trim has been done at a height
+ * covered by the log, the entries below the trim height are only removed when their keys have been trimmed,
+ * so that the following trims only need to process the keys which gained new versions since the previous trim.
+ * <p>
+ * Changes made within a database transaction become part of the log when the transaction is committed,
+ * and are discarded if the transaction is rolled back.
+ */
+final class UndoLog implements TransactionalDb.TransactionCallback {
+
+    private final TransactionalDb db;
+    private final NavigableMap<Integer, Set<DbKey>> changes = new TreeMap<>();
+    private final ThreadLocal<Changes> pendingChanges = new ThreadLocal<>();
+    private int startHeight = Integer.MIN_VALUE;
+    private int trimHeight;
+    private boolean trimCovered;
+
+    UndoLog(TransactionalDb db) {
+        this.db = db;
+    }
+
+    /**
+     * Record a row written at the current blockchain height
+     *
+     * @param   dbKey               Row key
+     */
+    void record(DbKey dbKey) {
+        int height = Nxt.getBlockchain().getHeight();
+        start(height);
+        getChanges().added.computeIfAbsent(height, k -> new HashSet<>()).add(dbKey);
+    }
+
+    /**
+     * Return the keys of the rows written above a height
+     *
+     * The log is not started by a rollback, as the blockchain height has already been lowered to the rollback
+     * height and the rows written above it before the log was started would not be covered
+     *
+     * @param   height              Rollback height
+     * @return                      Row keys, or null if the height is not covered by the log
+     */
+    Set<DbKey> getKeys(int height) {
+        Set<DbKey> dbKeys = new HashSet<>();
+        synchronized (this) {
+            if (startHeight == Integer.MIN_VALUE || height < startHeight) {
+                return null;
+            }
+            changes.tailMap(height, false).values().forEach(dbKeys::addAll);
+        }
+        Changes pending = pendingChanges.get();
+        if (pending != null) {
+            pending.added.tailMap(height, false).values().forEach(dbKeys::addAll);
+        }
+        return dbKeys;
+    }
+
+    /**
+     * Remove the keys written above a height
+     *
+     * @param   height              Rollback height, or -1 if the table has been truncated
+     */
+    void rollback(int height) {
+        Changes pending = getChanges();
+        pending.added.tailMap(height, false).clear();
+        pending.rollbackHeight = Math.min(pending.rollbackHeight, height);
+    }
+
+    /**
+     * Return the keys with changes below a trim height
+     *
+     * @param   height              Trim height
+     * @param   limit               Maximum number of keys to return
+     * @return                      Row keys, or null if a full trim is needed
+     */
+    Set<DbKey> getTrimKeys(int height, int limit) {
+        Set<DbKey> dbKeys = new HashSet<>();
+        synchronized (this) {
+            if (!trimCovered) {
+                return null;
+            }
+            addKeys(dbKeys, changes.headMap(height, false), limit);
+        }
+        Changes pending = pendingChanges.get();
+        if (pending != null) {
+            addKeys(dbKeys, pending.added.headMap(height, false), limit);
+        }
+        return dbKeys;
+    }
+
+    /**
+     * Remove the trimmed keys below a trim height
+     *
+     * @param   height              Trim height
+     * @param   dbKeys              Trimmed keys, or null if all keys have been trimmed
+     */
+    void trim(int height, Set<DbKey> dbKeys) {
+        start(Nxt.getBlockchain().getHeight());
+        getChanges().trims.add(new Trim(height, dbKeys));
+    }
+
+    /**
+     * Check if there are keys left to trim below the last trim height
+     *
+     * @return                      TRUE if there are keys left to trim
+     */
+    synchronized boolean isTrimPending() {
+        return trimCovered && !changes.headMap(trimHeight, false).isEmpty();
+    }
+
+    @Override
+    public void commit() {
+        Changes pending = pendingChanges.get();
+        if (pending == null) {
+            return;
+        }
+        pendingChanges.remove();
+        synchronized (this) {
+            changes.tailMap(pending.rollbackHeight, false).clear();
+            pending.added.forEach((height, dbKeys) -> changes.computeIfAbsent(height, k -> new HashSet<>()).addAll(dbKeys));
+            for (Trim trim : pending.trims) {
+                NavigableMap<Integer, Set<DbKey>> trimmed = changes.headMap(trim.height, false);
+                if (trim.dbKeys == null) {
+                    trimmed.clear();
+                    trimCovered = trimCovered || trim.height > startHeight;
+                } else {
+                    trimmed.values().removeIf(dbKeys -> {
+                        dbKeys.removeAll(trim.dbKeys);
+                        return dbKeys.isEmpty();
+                    });
+                }
+                trimHeight = trim.height;
+            }
+            if (!trimCovered && !changes.isEmpty()) {
+                int minHeight = changes.lastKey() - Constants.MAX_ROLLBACK;
+                Map.Entry<Integer, Set<DbKey>> entry;
+                while ((entry = changes.firstEntry()) != null && entry.getKey() < minHeight) {
+                    changes.remove(entry.getKey());
+                    startHeight = Math.max(startHeight, entry.getKey());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rollback() {
+        pendingChanges.remove();
+    }
+
+    private static void addKeys(Set<DbKey> dbKeys, Map<Integer, Set<DbKey>> changes, int limit) {
+        for (Set<DbKey> heightKeys : changes.values()) {
+            for (DbKey dbKey : heightKeys) {
+                if (dbKeys.size() >= limit) {
+                    return;
+                }
+                dbKeys.add(dbKey);
+            }
+        }
+    }
+
+    private synchronized void start(int height) {
+        if (startHeight == Integer.MIN_VALUE) {
+            startHeight = height;
+        }
+    }
+
+    private Changes getChanges() {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        Changes pending = pendingChanges.get();
+        if (pending == null) {
+            pending = new Changes();
+            pendingChanges.set(pending);
+            db.registerCallback(this);
+        }
+        return pending;
+    }
+
+    private static final class Changes {
+        private final NavigableMap<Integer, Set<DbKey>> added = new TreeMap<>();
+        private int rollbackHeight = Integer.MAX_VALUE;
+        private final List<Trim> trims = new ArrayList<>();
+    }
+
+    private static final class Trim {
+        private final int height;
+        private final Set<DbKey> dbKeys;
+
+        private Trim(int height, Set<DbKey> dbKeys) {
+            this.height = height;
+            this.dbKeys = dbKeys;
+        }
+    }
+
+}
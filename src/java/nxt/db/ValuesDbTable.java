@@ -22,11 +22,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
 
     private final boolean multiversion;
     protected final DbKey.Factory<T> dbKeyFactory;
+    final UndoLog undoLog = new UndoLog(db);
+    private final String getSQL;
+    private final String updateLatestSQL;
 
     protected ValuesDbTable(String table, DbKey.Factory<T> dbKeyFactory) {
         this(table, dbKeyFactory, false);
@@ -36,6 +40,8 @@ public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
         super(table);
         this.dbKeyFactory = dbKeyFactory;
         this.multiversion = multiversion;
+        this.getSQL = "SELECT * FROM " + table + dbKeyFactory.getPKClause() + (multiversion ? " AND latest = TRUE" : "") + " ORDER BY db_id";
+        this.updateLatestSQL = "UPDATE " + table + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE";
     }
 
     protected abstract V load(Connection con, ResultSet rs) throws SQLException;
@@ -55,8 +61,7 @@ public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
             }
         }
         try (Connection con = db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
-                     + (multiversion ? " AND latest = TRUE" : "") + " ORDER BY db_id")) {
+             PreparedStatement pstmt = con.prepareStatement(getSQL)) {
             dbKey.setPK(pstmt);
             values = get(con, pstmt);
             if (db.isInTransaction()) {
@@ -93,8 +98,7 @@ public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
         db.getCache(table).put(dbKey, values);
         try (Connection con = db.getConnection()) {
             if (multiversion) {
-                try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
-                        + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE")) {
+                try (PreparedStatement pstmt = con.prepareStatement(updateLatestSQL)) {
                     dbKey.setPK(pstmt);
                     pstmt.executeUpdate();
                 }
@@ -102,6 +106,7 @@ public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
             for (V v : values) {
                 save(con, t, v);
             }
+            undoLog.record(dbKey);
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
@@ -109,20 +114,37 @@ public abstract class ValuesDbTable<T,V> extends DerivedDbTable {
 
     @Override
     public final void rollback(int height) {
+        Set<DbKey> dbKeys = undoLog.getKeys(height);
         if (multiversion) {
-            VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory);
-        } else {
+            if (dbKeys == null) {
+                VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory);
+            } else if (!dbKeys.isEmpty()) {
+                VersionedEntityDbTable.rollback(db, table, height, dbKeyFactory, dbKeys);
+            }
+        } else if (dbKeys == null || !dbKeys.isEmpty()) {
             super.rollback(height);
         }
+        undoLog.rollback(height);
+    }
+
+    @Override
+    public void truncate() {
+        super.truncate();
+        undoLog.rollback(-1);
     }
 
     @Override
     public final void trim(int height) {
         if (multiversion) {
-            VersionedEntityDbTable.trim(db, table, height, dbKeyFactory);
+            VersionedEntityDbTable.trim(db, table, height, dbKeyFactory, undoLog);
         } else {
             super.trim(height);
         }
     }
 
+    @Override
+    public final boolean isTrimPending() {
+        return multiversion && undoLog.isTrimPending();
+    }
+
 }
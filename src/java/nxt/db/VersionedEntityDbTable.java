@@ -24,10 +24,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
 
+    private static final int TRIM_KEYS_LIMIT = 1000;
+
     protected VersionedEntityDbTable(String table, DbKey.Factory<T> dbKeyFactory) {
         super(table, dbKeyFactory, true, null);
     }
@@ -36,6 +40,18 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
         super(table, dbKeyFactory, true, fullTextSearchColumns);
     }
 
+    /**
+     * @param cached keep the latest version of recently used entities in a shared cache, see nxt.entityCacheSize.
+     *               Only tables which are never modified by direct SQL updates can be cached.
+     */
+    protected VersionedEntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, boolean cached) {
+        super(table, dbKeyFactory, true, null, cached);
+    }
+
+    protected VersionedEntityDbTable(String table, DbKey.Factory<T> dbKeyFactory, String fullTextSearchColumns, boolean cached) {
+        super(table, dbKeyFactory, true, fullTextSearchColumns, cached);
+    }
+
     public final boolean delete(T t) {
         return delete(t, false);
     }
@@ -48,6 +64,7 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
             throw new IllegalStateException("Not in transaction");
         }
         DbKey dbKey = dbKeyFactory.newKey(t);
+        invalidateCache(dbKey);
         try (Connection con = db.getConnection();
              PreparedStatement pstmtCount = con.prepareStatement("SELECT 1 FROM " + table
                      + dbKeyFactory.getPKClause() + " AND height < ? LIMIT 1")) {
@@ -55,12 +72,12 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
             pstmtCount.setInt(i, Nxt.getBlockchain().getHeight());
             try (ResultSet rs = pstmtCount.executeQuery()) {
                 if (rs.next()) {
-                    try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
-                            + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+                    try (PreparedStatement pstmt = con.prepareStatement(updateLatestSQL)) {
                         dbKey.setPK(pstmt);
                         pstmt.executeUpdate();
                         save(con, t);
                         pstmt.executeUpdate(); // delete after the save
+                        undoLog.record(dbKey);
                     }
                     return true;
                 } else {
@@ -122,6 +139,49 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
         }
     }
 
+    /**
+     * Rollback only the rows of the given keys, which must include all keys with rows above the rollback height
+     */
+    static void rollback(final TransactionalDb db, final String table, final int height, final DbKey.Factory<?> dbKeyFactory,
+                         final Collection<DbKey> dbKeys) {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table
+                     + dbKeyFactory.getPKClause() + " AND height > ?");
+             PreparedStatement pstmtSetLatest = con.prepareStatement("UPDATE " + table
+                     + " SET latest = TRUE " + dbKeyFactory.getPKClause() + " AND height ="
+                     + " (SELECT MAX(height) FROM " + table + dbKeyFactory.getPKClause() + ")")) {
+            for (DbKey dbKey : dbKeys) {
+                int i = dbKey.setPK(pstmtDelete);
+                pstmtDelete.setInt(i, height);
+                pstmtDelete.executeUpdate();
+                i = 1;
+                i = dbKey.setPK(pstmtSetLatest, i);
+                i = dbKey.setPK(pstmtSetLatest, i);
+                pstmtSetLatest.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Trim the keys recorded in the undo log, in chunks of TRIM_KEYS_LIMIT keys, falling back to a full trim
+     * if the undo log does not cover all the keys changed since the previous trim
+     */
+    static void trim(final TransactionalDb db, final String table, final int height, final DbKey.Factory<?> dbKeyFactory,
+                     final UndoLog undoLog) {
+        Set<DbKey> dbKeys = undoLog.getTrimKeys(height, TRIM_KEYS_LIMIT);
+        if (dbKeys == null) {
+            trim(db, table, height, dbKeyFactory);
+        } else if (!dbKeys.isEmpty()) {
+            trim(db, table, height, dbKeyFactory, dbKeys);
+        }
+        undoLog.trim(height, dbKeys);
+    }
+
     static void trim(final TransactionalDb db, final String table, final int height, final DbKey.Factory dbKeyFactory) {
         if (!db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
@@ -153,4 +213,41 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
         }
     }
 
+    static void trim(final TransactionalDb db, final String table, final int height, final DbKey.Factory<?> dbKeyFactory,
+                     final Collection<DbKey> dbKeys) {
+        if (!db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmtSelect = con.prepareStatement("SELECT MAX(height) AS max_height FROM " + table
+                     + dbKeyFactory.getPKClause() + " AND height < ?");
+             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table + dbKeyFactory.getPKClause()
+                     + " AND height < ? AND height >= 0");
+             PreparedStatement pstmtDeleteDeleted = con.prepareStatement("DELETE FROM " + table + dbKeyFactory.getPKClause()
+                     + " AND height < ? AND height >= 0 AND latest = FALSE AND NOT EXISTS (SELECT 1 FROM " + table
+                     + dbKeyFactory.getPKClause() + " AND height >= ?)")) {
+            for (DbKey dbKey : dbKeys) {
+                int i = dbKey.setPK(pstmtSelect);
+                pstmtSelect.setInt(i, height);
+                try (ResultSet rs = pstmtSelect.executeQuery()) {
+                    if (rs.next()) {
+                        int maxHeight = rs.getInt("max_height");
+                        if (!rs.wasNull()) {
+                            i = dbKey.setPK(pstmtDelete);
+                            pstmtDelete.setInt(i, maxHeight);
+                            pstmtDelete.executeUpdate();
+                        }
+                    }
+                }
+                i = dbKey.setPK(pstmtDeleteDeleted);
+                pstmtDeleteDeleted.setInt(i++, height);
+                i = dbKey.setPK(pstmtDeleteDeleted, i);
+                pstmtDeleteDeleted.setInt(i, height);
+                pstmtDeleteDeleted.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
 }
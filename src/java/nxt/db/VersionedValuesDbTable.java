@@ -61,6 +61,7 @@ public abstract class VersionedValuesDbTable<T, V> extends ValuesDbTable<T, V> {
                     for (V v : values) {
                         save(con, t, v);
                     }
+                    undoLog.record(dbKey);
                     try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
                             + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE")) {
                         dbKey.setPK(pstmt);
@@ -243,6 +243,8 @@ public final class API {
                     null, Math.max(Nxt.getIntProperty("nxt.maxUploadFileSize"), Constants.MAX_TAGGED_DATA_DATA_LENGTH), -1L, 0));
             apiHandler.addServlet(ShapeShiftProxyServlet.class, ShapeShiftProxyServlet.SHAPESHIFT_TARGET + "/*");
 
+            apiHandler.addServlet(EventStreamServlet.class, "/nxt-events");
+
             GzipHandler gzipHandler = new GzipHandler();
             if (!Nxt.getBooleanProperty("nxt.enableAPIServerGZIPFilter")) {
                 gzipHandler.setExcludedPaths("/nxt", "/nxt-proxy");
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.http;
+
+import nxt.BlockchainProcessor;
+import nxt.Nxt;
+import nxt.util.JSON;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the responses of read-only API requests
+ *
+ * A response is cached if the request handler allows it, and is only used for requests with the same
+ * request type and parameters received while the last block is unchanged.  Responses which depend on the
+ * unconfirmed transactions are also discarded when the unconfirmed transactions change.  The cache is
+ * cleared when a block is pushed or popped.
+ *
+ * The cache size is limited by nxt.apiResponseCacheSize (MB) and the least recently used responses are
+ * evicted first.  The cache is disabled if the size is 0.
+ */
+final class APIResponseCache {
+
+    /** Maximum cache size in characters */
+    private static final long maxSize = Math.max(Nxt.getIntProperty("nxt.apiResponseCacheSize"), 0) * 1024L * 1024L / 2;
+
+    /** Request parameters which are not part of the cache key */
+    private static final String[] ignoredParameters = {"random"};
+
+    /** Cached responses */
+    private static final Map<String, String> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Current cache size in characters */
+    private static long size;
+
+    /** Cache hits */
+    private static final AtomicLong hits = new AtomicLong();
+
+    /** Cache misses */
+    private static final AtomicLong misses = new AtomicLong();
+
+    static {
+        if (maxSize > 0) {
+            Nxt.getBlockchainProcessor().addListener(block -> clear(), BlockchainProcessor.Event.BLOCK_PUSHED);
+            Nxt.getBlockchainProcessor().addListener(block -> clear(), BlockchainProcessor.Event.BLOCK_POPPED);
+        }
+    }
+
+    private APIResponseCache() {} //never
+
+    /**
+     * Check if the cache is enabled
+     *
+     * @return                      TRUE if the cache is enabled
+     */
+    static boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Create the cache key for a request
+     *
+     * @param   req                 API request
+     * @param   apiRequestHandler   Request handler
+     * @return                      Cache key
+     */
+    static String getKey(HttpServletRequest req, APIServlet.APIRequestHandler apiRequestHandler) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(Nxt.getBlockchain().getLastBlock().getId());
+        if (apiRequestHandler.cacheDependsOnUnconfirmedTransactions()) {
+            sb.append(':').append(Nxt.getTransactionProcessor().getUnconfirmedTransactionsModificationCount());
+        }
+        Map<String, String[]> parameters = new TreeMap<>(req.getParameterMap());
+        for (String name : ignoredParameters) {
+            parameters.remove(name);
+        }
+        parameters.forEach((name, values) -> sb.append('&').append(name).append('=').append(Arrays.toString(values)));
+        return sb.toString();
+    }
+
+    /**
+     * Return a cached response
+     *
+     * @param   key                 Cache key
+     * @return                      Cached response or null if the response is not cached
+     */
+    static JSONStreamAware get(String key) {
+        String response;
+        synchronized (responses) {
+            response = responses.get(key);
+        }
+        if (response == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new CachedResponse(response);
+    }
+
+    /**
+     * Cache a response.  Error responses are not cached.
+     *
+     * @param   key                 Cache key
+     * @param   response            Response
+     */
+    static void put(String key, JSONStreamAware response) {
+        if (!(response instanceof JSONObject) || ((JSONObject)response).get("errorCode") != null) {
+            return;
+        }
+        String jsonString = JSON.toJSONString((JSONObject)response);
+        if (jsonString.length() > maxSize / 16) {
+            return;
+        }
+        synchronized (responses) {
+            String oldResponse = responses.put(key, jsonString);
+            if (oldResponse != null) {
+                size -= oldResponse.length();
+            }
+            size += jsonString.length();
+            while (size > maxSize) {
+                Map.Entry<String, String> eldest = responses.entrySet().iterator().next();
+                size -= eldest.getValue().length();
+                responses.remove(eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Clear the cache
+     */
+    static void clear() {
+        synchronized (responses) {
+            responses.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Return the number of cache hits
+     *
+     * @return                      Number of cache hits
+     */
+    static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of cache misses
+     *
+     * @return                      Number of cache misses
+     */
+    static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Return the number of cached responses
+     *
+     * @return                      Number of cached responses
+     */
+    static int getCount() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    /**
+     * Cached response
+     *
+     * The request processing time is added to the cached JSON object when the response is written
+     */
+    static final class CachedResponse implements JSONStreamAware {
+
+        /** Cached JSON object */
+        private final String jsonString;
+
+        /** Request processing time */
+        private long requestProcessingTime;
+
+        private CachedResponse(String jsonString) {
+            this.jsonString = jsonString;
+        }
+
+        void setRequestProcessingTime(long requestProcessingTime) {
+            this.requestProcessingTime = requestProcessingTime;
+        }
+
+        @Override
+        public void writeJSONString(Writer out) throws IOException {
+            int end = jsonString.lastIndexOf('}');
+            out.write(jsonString, 0, end);
+            if (end > 1) {
+                out.write(',');
+            }
+            out.write("\"requestProcessingTime\":");
+            out.write(Long.toString(requestProcessingTime));
+            out.write('}');
+        }
+    }
+}
@@ -111,6 +111,30 @@ public final class APIServlet extends HttpServlet {
             return true;
         }
 
+        /**
+         * Allow processing a request with the required block parameters without holding the blockchain read lock.
+         * The request is processed again if the blockchain is updated while it is being processed, so the request
+         * must not have side effects or write to the HTTP response.
+         */
+        protected boolean allowOptimisticRead() {
+            return !requirePost() && !startDbTransaction();
+        }
+
+        /**
+         * Allow caching the response until the last block changes.  The response must only depend on the request
+         * parameters and the blockchain state.
+         */
+        protected boolean allowResponseCache() {
+            return false;
+        }
+
+        /**
+         * The cached response also depends on the unconfirmed transactions and is discarded when they change
+         */
+        protected boolean cacheDependsOnUnconfirmedTransactions() {
+            return false;
+        }
+
         protected boolean requireBlockchain() {
             return true;
         }
@@ -228,39 +252,64 @@ public final class APIServlet extends HttpServlet {
             if (apiRequestHandler.requirePassword()) {
                 API.verifyPassword(req);
             }
+            //
+            // Cacheable requests are processed only if the response is not already cached.  The response is
+            // cached if the blockchain and the unconfirmed transactions were not updated while processing the request.
+            //
+            String cacheKey = null;
+            long cacheStamp = 0;
+            long cacheModificationCount = 0;
+            if (APIResponseCache.isEnabled() && apiRequestHandler.allowResponseCache()) {
+                cacheStamp = Nxt.getBlockchain().tryOptimisticRead();
+                if (cacheStamp != 0) {
+                    cacheModificationCount = Nxt.getTransactionProcessor().getUnconfirmedTransactionsModificationCount();
+                    cacheKey = APIResponseCache.getKey(req, apiRequestHandler);
+                    JSONStreamAware cachedResponse = APIResponseCache.get(cacheKey);
+                    if (cachedResponse != null) {
+                        response = cachedResponse;
+                        return;
+                    }
+                }
+            }
             final long requireBlockId = apiRequestHandler.allowRequiredBlockParameters() ?
                     ParameterParser.getUnsignedLong(req, "requireBlock", false) : 0;
             final long requireLastBlockId = apiRequestHandler.allowRequiredBlockParameters() ?
                     ParameterParser.getUnsignedLong(req, "requireLastBlock", false) : 0;
             if (requireBlockId != 0 || requireLastBlockId != 0) {
+                //
+                // Read-only requests are first processed without the blockchain read lock and the response is
+                // used if the blockchain was not updated while processing the request.  Otherwise the request is
+                // processed again while holding the read lock.
+                //
+                if (apiRequestHandler.allowOptimisticRead()) {
+                    long stamp = Nxt.getBlockchain().tryOptimisticRead();
+                    if (stamp != 0) {
+                        JSONStreamAware optimisticResponse = null;
+                        try {
+                            optimisticResponse = processRequest(apiRequestHandler, req, resp, requireBlockId, requireLastBlockId);
+                        } catch (NxtException | RuntimeException e) {
+                            if (Nxt.getBlockchain().validate(stamp)) {
+                                throw e;
+                            }
+                        }
+                        if (Nxt.getBlockchain().validate(stamp)) {
+                            response = optimisticResponse;
+                            return;
+                        }
+                    }
+                }
                 Nxt.getBlockchain().readLock();
-            }
-            try {
                 try {
-                    if (apiRequestHandler.startDbTransaction()) {
-                        Db.db.beginTransaction();
-                    }
-                    if (requireBlockId != 0 && !Nxt.getBlockchain().hasBlock(requireBlockId)) {
-                        response = REQUIRED_BLOCK_NOT_FOUND;
-                        return;
-                    }
-                    if (requireLastBlockId != 0 && requireLastBlockId != Nxt.getBlockchain().getLastBlock().getId()) {
-                        response = REQUIRED_LAST_BLOCK_NOT_FOUND;
-                        return;
-                    }
-                    response = apiRequestHandler.processRequest(req, resp);
-                    if (requireLastBlockId == 0 && requireBlockId != 0 && response instanceof JSONObject) {
-                        ((JSONObject) response).put("lastBlock", Nxt.getBlockchain().getLastBlock().getStringId());
-                    }
+                    response = processRequest(apiRequestHandler, req, resp, requireBlockId, requireLastBlockId);
                 } finally {
-                    if (apiRequestHandler.startDbTransaction()) {
-                        Db.db.endTransaction();
-                    }
-                }
-            } finally {
-                if (requireBlockId != 0 || requireLastBlockId != 0) {
                     Nxt.getBlockchain().readUnlock();
                 }
+            } else {
+                response = processRequest(apiRequestHandler, req, resp, 0, 0);
+            }
+            if (cacheKey != null && Nxt.getBlockchain().validate(cacheStamp) &&
+                    cacheModificationCount == Nxt.getTransactionProcessor().getUnconfirmedTransactionsModificationCount()) {
+                APIResponseCache.put(cacheKey, response);
             }
         } catch (ParameterException e) {
             response = e.getErrorResponse();
@@ -280,6 +329,8 @@ public final class APIServlet extends HttpServlet {
             if (response != null) {
                 if (response instanceof JSONObject) {
                     ((JSONObject) response).put("requestProcessingTime", System.currentTimeMillis() - startTime);
+                } else if (response instanceof APIResponseCache.CachedResponse) {
+                    ((APIResponseCache.CachedResponse) response).setRequestProcessingTime(System.currentTimeMillis() - startTime);
                 }
                 try (Writer writer = resp.getWriter()) {
                     JSON.writeJSONString(response, writer);
@@ -289,4 +340,28 @@ public final class APIServlet extends HttpServlet {
 
     }
 
+    private static JSONStreamAware processRequest(APIRequestHandler apiRequestHandler, HttpServletRequest req, HttpServletResponse resp,
+                                                  long requireBlockId, long requireLastBlockId) throws NxtException {
+        try {
+            if (apiRequestHandler.startDbTransaction()) {
+                Db.db.beginTransaction();
+            }
+            if (requireBlockId != 0 && !Nxt.getBlockchain().hasBlock(requireBlockId)) {
+                return REQUIRED_BLOCK_NOT_FOUND;
+            }
+            if (requireLastBlockId != 0 && requireLastBlockId != Nxt.getBlockchain().getLastBlock().getId()) {
+                return REQUIRED_LAST_BLOCK_NOT_FOUND;
+            }
+            JSONStreamAware response = apiRequestHandler.processRequest(req, resp);
+            if (requireLastBlockId == 0 && requireBlockId != 0 && response instanceof JSONObject) {
+                ((JSONObject) response).put("lastBlock", Nxt.getBlockchain().getLastBlock().getStringId());
+            }
+            return response;
+        } finally {
+            if (apiRequestHandler.startDbTransaction()) {
+                Db.db.endTransaction();
+            }
+        }
+    }
+
 }
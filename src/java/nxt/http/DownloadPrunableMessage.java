@@ -91,4 +91,10 @@ public final class DownloadPrunableMessage extends APIServlet.APIRequestHandler
     protected JSONStreamAware processRequest(HttpServletRequest request) throws NxtException {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    protected boolean allowOptimisticRead() {
+        return false;
+    }
+
 }
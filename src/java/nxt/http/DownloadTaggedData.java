@@ -85,4 +85,10 @@ public final class DownloadTaggedData extends APIServlet.APIRequestHandler {
     protected JSONStreamAware processRequest(HttpServletRequest request) throws NxtException {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    protected boolean allowOptimisticRead() {
+        return false;
+    }
+
 }
@@ -61,6 +61,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * has not been received within nxt.apiEventTimeout seconds.
  *
  * The maximum number of event users is specified by nxt.apiMaxEventUsers.
+ * Applications which need to receive events as they happen should use
+ * the WebSocket event stream instead (see EventStream).
  */
 class EventListener implements Runnable, AsyncListener, TransactionalDb.TransactionCallback {
 
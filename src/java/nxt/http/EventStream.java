@@ -0,0 +1,592 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.http;
+
+import nxt.AccountLedger;
+import nxt.AccountLedger.LedgerEntry;
+import nxt.AccountLedger.LedgerHolding;
+import nxt.Attachment;
+import nxt.BlockchainProcessor;
+import nxt.Db;
+import nxt.Nxt;
+import nxt.Transaction;
+import nxt.TransactionProcessor;
+import nxt.db.TransactionalDb;
+import nxt.peer.Peers;
+import nxt.util.AsyncSubscriber;
+import nxt.util.Convert;
+import nxt.util.JSON;
+import nxt.util.Listener;
+import nxt.util.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EventStream pushes peer, block, transaction and account ledger events to an
+ * application over a WebSocket connection.
+ *
+ * The application subscribes to events by sending a JSON text message:
+ * <ul>
+ * <li>requestType - 'subscribe' or 'unsubscribe'
+ * <li>event - Array of event names as used by EventRegister, for example 'Block.BLOCK_PUSHED'.
+ *     All events are selected if no event names are specified.
+ * <li>account - Optional array of account identifiers.  Transaction events are restricted to
+ *     transactions sent or received by these accounts and ledger events to these accounts.
+ * <li>asset - Optional array of asset identifiers.  Transaction events are restricted to asset
+ *     transactions for these assets and ledger events to balance changes for these assets.
+ * </ul>
+ * A new subscription replaces the current subscription.  Each event is sent as a JSON text message
+ * with the same format as the events returned by EventWait.
+ *
+ * A single set of Nxt listeners is shared by all event streams.  Events are held until the database
+ * transaction is committed and are then sent to the event streams in the order they were notified,
+ * so the streams do not delay block processing.  An event stream is closed if the application does
+ * not read its events and the number of pending events exceeds nxt.apiEventStreamMaxPendingEvents.
+ * All the event streams are closed if the events can not be queued for sending, so that an application
+ * never misses events without being told.
+ */
+@WebSocket
+public final class EventStream {
+
+    /** Maximum number of pending events for an event stream */
+    static final int maxPendingEvents = Nxt.getIntProperty("nxt.apiEventStreamMaxPendingEvents");
+
+    /** Active event streams */
+    private static final Set<EventStream> eventStreams = ConcurrentHashMap.newKeySet();
+
+    /** All event names */
+    private static final Set<String> allEvents = new HashSet<>();
+    static {
+        EventListener.peerEvents.forEach(event -> allEvents.add("Peer." + event.name()));
+        EventListener.blockEvents.forEach(event -> allEvents.add("Block." + event.name()));
+        EventListener.txEvents.forEach(event -> allEvents.add("Transaction." + event.name()));
+        EventListener.ledgerEvents.forEach(event -> allEvents.add("Ledger." + event.name()));
+    }
+
+    /** Events are sent to the event streams by the dispatcher */
+    private static final AsyncSubscriber dispatcher = new AsyncSubscriber("API event stream", 10000);
+
+    /** Send events to the event streams, or close the event streams if the events are discarded */
+    private static final Listener<List<Event>> sender = dispatcher.listener(
+            events -> eventStreams.forEach(eventStream -> events.forEach(eventStream::send)),
+            EventStream::closeAll);
+
+    /** Nxt listeners have been added */
+    private static boolean listenersAdded;
+
+    /** Number of reserved event streams, including streams that are not yet connected */
+    private static final AtomicInteger streamCount = new AtomicInteger();
+
+    /**
+     * Reserve an event stream
+     *
+     * The reservation is released when the event stream is closed or fails, or by
+     * calling releaseStream() if the event stream is not created.
+     *
+     * @param   maxStreams          Maximum number of event streams
+     * @return                      TRUE if the event stream is reserved
+     */
+    static boolean reserveStream(int maxStreams) {
+        if (streamCount.incrementAndGet() > maxStreams) {
+            streamCount.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release an event stream reservation
+     */
+    static void releaseStream() {
+        streamCount.decrementAndGet();
+    }
+
+    /** Application IP address */
+    private final String address;
+
+    /** WebSocket session */
+    private volatile Session session;
+
+    /** Current subscription or null if there is no subscription */
+    private volatile Subscription subscription;
+
+    /** Number of events sent but not yet written */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /** The event stream reservation has been released */
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Create an event stream
+     *
+     * @param   address             Application IP address
+     */
+    EventStream(String address) {
+        this.address = address;
+    }
+
+    /**
+     * WebSocket connection complete
+     *
+     * @param   session             WebSocket session
+     */
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        this.session = session;
+        addListeners();
+        eventStreams.add(this);
+        Logger.logDebugMessage(String.format("Event stream opened for %s", address));
+    }
+
+    /**
+     * WebSocket session has been closed
+     *
+     * @param   statusCode          Status code
+     * @param   reason              Reason message
+     */
+    @OnWebSocketClose
+    public void onClose(int statusCode, String reason) {
+        eventStreams.remove(this);
+        session = null;
+        release();
+        Logger.logDebugMessage(String.format("Event stream closed for %s", address));
+    }
+
+    /**
+     * WebSocket error
+     *
+     * @param   cause               Error
+     */
+    @OnWebSocketError
+    public void onError(Throwable cause) {
+        eventStreams.remove(this);
+        release();
+        Logger.logDebugMessage(String.format("Event stream error for %s: %s", address, cause.toString()));
+    }
+
+    /**
+     * Release the event stream reservation once
+     */
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            releaseStream();
+        }
+    }
+
+    /**
+     * Process a subscription message
+     *
+     * @param   message             Subscription message
+     */
+    @OnWebSocketMessage
+    public void onMessage(String message) {
+        JSONObject response = new JSONObject();
+        try {
+            Object request = JSONValue.parseWithException(message);
+            if (!(request instanceof JSONObject)) {
+                throw new IllegalArgumentException("Subscription message must be a JSON object");
+            }
+            JSONObject jsonRequest = (JSONObject)request;
+            String requestType = (String)jsonRequest.get("requestType");
+            if ("subscribe".equals(requestType)) {
+                subscription = new Subscription(getStrings(jsonRequest, "event"),
+                        getStrings(jsonRequest, "account"), getStrings(jsonRequest, "asset"));
+                response.put("subscribed", true);
+            } else if ("unsubscribe".equals(requestType)) {
+                subscription = null;
+                response.put("subscribed", false);
+            } else {
+                throw new IllegalArgumentException("Unknown request type");
+            }
+            response.put("requestType", requestType);
+        } catch (Exception exc) {
+            response.put("errorCode", 4);
+            response.put("errorDescription", "Incorrect subscription: " + exc.getMessage());
+        }
+        sendString(JSON.toString(response));
+    }
+
+    /**
+     * Send an event if it is selected by the current subscription
+     *
+     * @param   event               Event
+     */
+    private void send(Event event) {
+        Subscription s = subscription;
+        if (s == null || !s.events.contains(event.type)) {
+            return;
+        }
+        String text;
+        if (s.accounts.isEmpty() && s.assets.isEmpty()) {
+            text = event.toJSONString();
+        } else {
+            List<String> ids = new ArrayList<>();
+            event.items.forEach(item -> {
+                if (s.isSelected(item)) {
+                    ids.add(item.id);
+                }
+            });
+            if (ids.isEmpty()) {
+                return;
+            }
+            text = Event.toJSONString(event.name, ids);
+        }
+        sendString(text);
+    }
+
+    /**
+     * Send a text message without waiting for it to be written
+     *
+     * @param   text                Text message
+     */
+    private void sendString(String text) {
+        Session s = session;
+        if (s == null || !s.isOpen()) {
+            return;
+        }
+        if (pendingCount.incrementAndGet() > maxPendingEvents) {
+            pendingCount.decrementAndGet();
+            Logger.logDebugMessage(String.format("Closing event stream for %s: too many pending events", address));
+            s.close(StatusCode.POLICY_VIOLATION, "Too many pending events");
+            return;
+        }
+        s.getRemote().sendString(text, new WriteCallback() {
+            @Override
+            public void writeFailed(Throwable exc) {
+                pendingCount.decrementAndGet();
+                Logger.logDebugMessage(String.format("Unable to send event to %s: %s", address, exc.toString()));
+            }
+
+            @Override
+            public void writeSuccess() {
+                pendingCount.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Close all the event streams because their events have been discarded
+     */
+    private static void closeAll() {
+        eventStreams.forEach(eventStream -> {
+            eventStreams.remove(eventStream);
+            Session s = eventStream.session;
+            if (s != null && s.isOpen()) {
+                Logger.logDebugMessage(String.format("Closing event stream for %s: event queue is full", eventStream.address));
+                s.close(StatusCode.POLICY_VIOLATION, "Event queue is full");
+            }
+        });
+    }
+
+    /**
+     * Return a string array parameter
+     *
+     * @param   request             Subscription request
+     * @param   name                Parameter name
+     * @return                      Parameter values
+     */
+    private static List<String> getStrings(JSONObject request, String name) {
+        Object value = request.get(name);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (!(value instanceof JSONArray)) {
+            throw new IllegalArgumentException("'" + name + "' must be an array");
+        }
+        List<String> values = new ArrayList<>();
+        ((JSONArray)value).forEach(element -> values.add(element.toString()));
+        return values;
+    }
+
+    /**
+     * Add the Nxt listeners used by all event streams
+     */
+    private static synchronized void addListeners() {
+        if (listenersAdded) {
+            return;
+        }
+        EventListener.peerEvents.forEach(event -> Peers.addListener(peer -> {
+            if (!eventStreams.isEmpty()) {
+                sender.notify(Collections.singletonList(new Event("Peer." + event.name(), new Item(peer.getHost()))));
+            }
+        }, event));
+        EventListener.blockEvents.forEach(event -> Nxt.getBlockchainProcessor().addListener(block -> {
+            if (!eventStreams.isEmpty()) {
+                Publisher.publish(new Event("Block." + event.name(), new Item(block.getStringId())));
+            }
+        }, event));
+        EventListener.txEvents.forEach(event -> Nxt.getTransactionProcessor().addListener(transactions -> {
+            if (!eventStreams.isEmpty()) {
+                List<Item> items = new ArrayList<>(transactions.size());
+                transactions.forEach(transaction -> items.add(new Item(transaction.getStringId(),
+                        new long[] {transaction.getSenderId(), transaction.getRecipientId()}, getAssetId(transaction))));
+                Publisher.publish(new Event("Transaction." + event.name(), items));
+            }
+        }, event));
+        EventListener.ledgerEvents.forEach(event -> AccountLedger.addListener(entry -> {
+            if (!eventStreams.isEmpty()) {
+                Publisher.publish(new Event("Ledger." + event.name(),
+                        String.format("Ledger.%s.%s", event.name(), Convert.rsAccount(entry.getAccountId())),
+                        Collections.singletonList(new Item(Long.toUnsignedString(entry.getLedgerId()),
+                                new long[] {entry.getAccountId()}, getAssetId(entry)))));
+            }
+        }, event));
+        listenersAdded = true;
+    }
+
+    /**
+     * Return the asset identifier for an asset transaction
+     *
+     * @param   transaction         Transaction
+     * @return                      Asset identifier or 0 if this is not an asset transaction
+     */
+    private static long getAssetId(Transaction transaction) {
+        Attachment attachment = transaction.getAttachment();
+        if (attachment instanceof Attachment.ColoredCoinsAssetIssuance) {
+            return transaction.getId();
+        } else if (attachment instanceof Attachment.ColoredCoinsAssetTransfer) {
+            return ((Attachment.ColoredCoinsAssetTransfer)attachment).getAssetId();
+        } else if (attachment instanceof Attachment.ColoredCoinsAssetDelete) {
+            return ((Attachment.ColoredCoinsAssetDelete)attachment).getAssetId();
+        } else if (attachment instanceof Attachment.ColoredCoinsOrderPlacement) {
+            return ((Attachment.ColoredCoinsOrderPlacement)attachment).getAssetId();
+        } else if (attachment instanceof Attachment.ColoredCoinsDividendPayment) {
+            return ((Attachment.ColoredCoinsDividendPayment)attachment).getAssetId();
+        }
+        return 0;
+    }
+
+    /**
+     * Return the asset identifier for an asset balance change
+     *
+     * @param   entry               Ledger entry
+     * @return                      Asset identifier or 0 if this is not an asset balance change
+     */
+    private static long getAssetId(LedgerEntry entry) {
+        LedgerHolding holding = entry.getHolding();
+        return (holding == LedgerHolding.ASSET_BALANCE || holding == LedgerHolding.UNCONFIRMED_ASSET_BALANCE) ?
+                entry.getHoldingId() : 0;
+    }
+
+    /**
+     * Events notified within a database transaction are held until the transaction is committed
+     * and are discarded if the transaction is rolled back
+     */
+    private static final class Publisher implements TransactionalDb.TransactionCallback {
+
+        /** Publisher instance */
+        private static final Publisher instance = new Publisher();
+
+        /** Events for the current database transaction */
+        private static final ThreadLocal<List<Event>> pendingEvents = new ThreadLocal<>();
+
+        /**
+         * Publish an event
+         *
+         * @param   event           Event
+         */
+        private static void publish(Event event) {
+            if (!Db.db.isInTransaction()) {
+                sender.notify(Collections.singletonList(event));
+                return;
+            }
+            List<Event> events = pendingEvents.get();
+            if (events == null) {
+                events = new ArrayList<>();
+                pendingEvents.set(events);
+                Db.db.registerCallback(instance);
+            }
+            events.add(event);
+        }
+
+        /**
+         * Transaction has been committed
+         */
+        @Override
+        public void commit() {
+            List<Event> events = pendingEvents.get();
+            pendingEvents.remove();
+            if (events != null) {
+                sender.notify(events);
+            }
+        }
+
+        /**
+         * Transaction has been rolled back
+         */
+        @Override
+        public void rollback() {
+            pendingEvents.remove();
+        }
+    }
+
+    /**
+     * Event subscription
+     */
+    private static final class Subscription {
+
+        /** Selected event names */
+        private final Set<String> events = new HashSet<>();
+
+        /** Selected accounts */
+        private final Set<Long> accounts = new HashSet<>();
+
+        /** Selected assets */
+        private final Set<Long> assets = new HashSet<>();
+
+        /**
+         * Create an event subscription
+         *
+         * @param   events          Event names or an empty list to select all events
+         * @param   accounts        Account identifiers
+         * @param   assets          Asset identifiers
+         */
+        private Subscription(List<String> events, List<String> accounts, List<String> assets) {
+            if (events.isEmpty()) {
+                this.events.addAll(allEvents);
+            } else {
+                events.forEach(event -> {
+                    if (!allEvents.contains(event)) {
+                        throw new IllegalArgumentException("Unknown event name " + event);
+                    }
+                    this.events.add(event);
+                });
+            }
+            accounts.forEach(account -> this.accounts.add(Convert.parseAccountId(account)));
+            assets.forEach(asset -> this.assets.add(Convert.parseUnsignedLong(asset)));
+        }
+
+        /**
+         * Check if an event item is selected by the account and asset filters
+         *
+         * @param   item            Event item
+         * @return                  TRUE if the item is selected
+         */
+        private boolean isSelected(Item item) {
+            if (item.accountIds == null) {
+                return true;
+            }
+            if (!assets.isEmpty() && !assets.contains(item.assetId)) {
+                return false;
+            }
+            if (accounts.isEmpty()) {
+                return true;
+            }
+            for (long accountId : item.accountIds) {
+                if (accounts.contains(accountId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Event
+     */
+    private static final class Event {
+
+        /** Event name used by subscriptions */
+        private final String type;
+
+        /** Event name sent to the application */
+        private final String name;
+
+        /** Event items */
+        private final List<Item> items;
+
+        /** JSON text for subscriptions without filters */
+        private volatile String jsonString;
+
+        private Event(String type, Item item) {
+            this(type, type, Collections.singletonList(item));
+        }
+
+        private Event(String type, List<Item> items) {
+            this(type, type, items);
+        }
+
+        private Event(String type, String name, List<Item> items) {
+            this.type = type;
+            this.name = name;
+            this.items = items;
+        }
+
+        private String toJSONString() {
+            String s = jsonString;
+            if (s == null) {
+                List<String> ids = new ArrayList<>(items.size());
+                items.forEach(item -> ids.add(item.id));
+                s = toJSONString(name, ids);
+                jsonString = s;
+            }
+            return s;
+        }
+
+        private static String toJSONString(String name, List<String> ids) {
+            JSONArray idsJSON = new JSONArray();
+            idsJSON.addAll(ids);
+            JSONObject eventJSON = new JSONObject();
+            eventJSON.put("name", name);
+            eventJSON.put("ids", idsJSON);
+            return JSON.toString(eventJSON);
+        }
+    }
+
+    /**
+     * Event item
+     */
+    private static final class Item {
+
+        /** Item identifier */
+        private final String id;
+
+        /** Accounts for the account filter or null if the item is not filtered */
+        private final long[] accountIds;
+
+        /** Asset for the asset filter */
+        private final long assetId;
+
+        private Item(String id) {
+            this(id, null, 0);
+        }
+
+        private Item(String id, long[] accountIds, long assetId) {
+            this.id = id;
+            this.accountIds = accountIds;
+            this.assetId = assetId;
+        }
+    }
+}
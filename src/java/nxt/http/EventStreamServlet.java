@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.http;
+
+import nxt.Nxt;
+import nxt.util.Logger;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
+import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * EventStreamServlet accepts WebSocket connections for the API event stream.
+ *
+ * Events are pushed to the application as they happen instead of being returned by
+ * EventWait requests.  See EventStream for the subscription messages.
+ *
+ * The maximum number of event streams is specified by nxt.apiMaxEventStreams.  Event streams are
+ * rejected if the eventRegister API is disabled, and cross-origin event streams are rejected unless
+ * nxt.apiServerCORS is enabled.
+ */
+public final class EventStreamServlet extends WebSocketServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Maximum number of event streams */
+    static final int maxEventStreams = Nxt.getIntProperty("nxt.apiMaxEventStreams");
+
+    /** Event stream idle timeout (milliseconds) */
+    static final int idleTimeout = Math.max(Nxt.getIntProperty("nxt.apiEventStreamIdleTimeout"), 15) * 1000;
+
+    /** Maximum subscription message size */
+    static final int MAX_MESSAGE_SIZE = 64 * 1024;
+
+    /**
+     * Configure the WebSocket factory
+     *
+     * @param   factory             WebSocket factory
+     */
+    @Override
+    public void configure(WebSocketServletFactory factory) {
+        factory.getPolicy().setIdleTimeout(idleTimeout);
+        factory.getPolicy().setMaxTextMessageSize(MAX_MESSAGE_SIZE);
+        factory.setCreator(new EventStreamCreator());
+    }
+
+    /**
+     * WebSocket creator for event streams
+     */
+    private static class EventStreamCreator implements WebSocketCreator {
+
+        /**
+         * Create an event stream
+         *
+         * @param   req             WebSocket upgrade request
+         * @param   resp            WebSocket upgrade response
+         * @return                  WebSocket or null if the connection is rejected
+         */
+        @Override
+        public Object createWebSocket(ServletUpgradeRequest req, ServletUpgradeResponse resp) {
+            String address = req.getRemoteAddress();
+            try {
+                if (!API.isAllowed(address)) {
+                    resp.sendForbidden("Not allowed");
+                    return null;
+                }
+                if (APIServlet.getAPIRequestHandler(APIEnum.EVENT_REGISTER.getName()) == null) {
+                    resp.sendForbidden("The event API is disabled");
+                    return null;
+                }
+                String origin = req.getHeader("Origin");
+                if (origin != null && !API.apiServerCORS && !isSameOrigin(origin, req.getHeader("Host"))) {
+                    resp.sendForbidden("Cross-origin event streams are not allowed");
+                    return null;
+                }
+                if (!EventStream.reserveStream(maxEventStreams)) {
+                    resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                            String.format("Too many API event streams: Maximum %d", maxEventStreams));
+                    return null;
+                }
+            } catch (IOException exc) {
+                Logger.logDebugMessage(String.format("Unable to reject event stream from %s: %s", address, exc.toString()));
+                return null;
+            }
+            try {
+                return new EventStream(address);
+            } catch (RuntimeException e) {
+                EventStream.releaseStream();
+                throw e;
+            }
+        }
+
+        /**
+         * Check if a browser origin is the API server itself
+         *
+         * Browsers do not apply the same-origin policy to WebSocket connections, so cross-origin
+         * connections are only accepted when CORS is enabled by nxt.apiServerCORS.
+         *
+         * @param   origin          Origin header
+         * @param   host            Host header
+         * @return                  TRUE if the origin is the API server
+         */
+        private static boolean isSameOrigin(String origin, String host) {
+            if (host == null) {
+                return false;
+            }
+            try {
+                String authority = new URI(origin).getAuthority();
+                return authority != null && authority.equalsIgnoreCase(host);
+            } catch (URISyntaxException e) {
+                return false;
+            }
+        }
+    }
+}
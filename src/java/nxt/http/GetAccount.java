@@ -132,4 +132,14 @@ public final class GetAccount extends APIServlet.APIRequestHandler {
 
     }
 
+    @Override
+    protected boolean allowResponseCache() {
+        return true;
+    }
+
+    @Override
+    protected boolean cacheDependsOnUnconfirmedTransactions() {
+        return true;
+    }
+
 }
@@ -22,7 +22,7 @@ import nxt.AccountLedger.LedgerEvent;
 import nxt.AccountLedger.LedgerHolding;
 import nxt.NxtException;
 import nxt.util.Convert;
-import org.json.simple.JSONArray;
+import nxt.util.JSONEncodedArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
@@ -280,7 +280,7 @@ public class GetAccountLedger extends APIServlet.APIRequestHandler {
         //
         // Return the response
         //
-        JSONArray responseEntries = new JSONArray();
+        JSONEncodedArray responseEntries = new JSONEncodedArray();
         ledgerEntries.forEach((entry) -> {
             JSONObject responseEntry = new JSONObject();
             JSONData.ledgerEntry(responseEntry, entry, includeTransactions, includeHoldingInfo);
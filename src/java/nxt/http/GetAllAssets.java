@@ -50,4 +50,9 @@ public final class GetAllAssets extends APIServlet.APIRequestHandler {
         return response;
     }
 
+    @Override
+    protected boolean allowResponseCache() {
+        return true;
+    }
+
 }
@@ -19,7 +19,7 @@ package nxt.http;
 import nxt.NxtException;
 import nxt.Trade;
 import nxt.db.DbIterator;
-import org.json.simple.JSONArray;
+import nxt.util.JSONEncodedArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
@@ -41,7 +41,7 @@ public final class GetAllTrades extends APIServlet.APIRequestHandler {
         boolean includeAssetInfo = "true".equalsIgnoreCase(req.getParameter("includeAssetInfo"));
 
         JSONObject response = new JSONObject();
-        JSONArray trades = new JSONArray();
+        JSONEncodedArray trades = new JSONEncodedArray();
         try (DbIterator<Trade> tradeIterator = Trade.getAllTrades(firstIndex, lastIndex)) {
             while (tradeIterator.hasNext()) {
                 Trade trade = tradeIterator.next();
@@ -84,4 +84,9 @@ public final class GetBlock extends APIServlet.APIRequestHandler {
 
     }
 
-}
\ No newline at end of file
+    @Override
+    protected boolean allowResponseCache() {
+        return true;
+    }
+
+}
@@ -20,7 +20,7 @@ import nxt.Block;
 import nxt.Nxt;
 import nxt.NxtException;
 import nxt.db.DbIterator;
-import org.json.simple.JSONArray;
+import nxt.util.JSONEncodedArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
@@ -43,7 +43,7 @@ public final class GetBlocks extends APIServlet.APIRequestHandler {
         boolean includeTransactions = "true".equalsIgnoreCase(req.getParameter("includeTransactions"));
         boolean includeExecutedPhased = "true".equalsIgnoreCase(req.getParameter("includeExecutedPhased"));
 
-        JSONArray blocks = new JSONArray();
+        JSONEncodedArray blocks = new JSONEncodedArray();
         try (DbIterator<? extends Block> iterator = Nxt.getBlockchain().getBlocks(firstIndex, lastIndex)) {
             while (iterator.hasNext()) {
                 Block block = iterator.next();
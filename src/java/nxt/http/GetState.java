@@ -99,6 +99,11 @@ public final class GetState extends APIServlet.APIRequestHandler {
         response.put("peerPort", Peers.getDefaultPeerPort());
         response.put("isOffline", Constants.isOffline);
         response.put("needsAdminPassword", !API.disableAdminPassword);
+        if (APIResponseCache.isEnabled()) {
+            response.put("numberOfCachedAPIResponses", APIResponseCache.getCount());
+            response.put("apiResponseCacheHits", APIResponseCache.getHits());
+            response.put("apiResponseCacheMisses", APIResponseCache.getMisses());
+        }
         InetAddress externalAddress = UPnP.getExternalAddress();
         if (externalAddress != null) {
             response.put("upnpExternalAddress", externalAddress.getHostAddress());
@@ -79,4 +79,9 @@ public final class GetTrades extends APIServlet.APIRequestHandler {
         return true;
     }
 
+    @Override
+    protected boolean allowResponseCache() {
+        return true;
+    }
+
 }
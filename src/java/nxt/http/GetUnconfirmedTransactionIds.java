@@ -18,8 +18,6 @@ package nxt.http;
 
 import nxt.Nxt;
 import nxt.Transaction;
-import nxt.db.DbIterator;
-import nxt.db.FilteringIterator;
 import nxt.util.Convert;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -45,20 +43,19 @@ public final class GetUnconfirmedTransactionIds extends APIServlet.APIRequestHan
 
         JSONArray transactionIds = new JSONArray();
         if (accountIds.isEmpty()) {
-            try (DbIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(firstIndex, lastIndex)) {
-                while (transactionsIterator.hasNext()) {
-                    Transaction transaction = transactionsIterator.next();
-                    transactionIds.add(transaction.getStringId());
-                }
-            }
+            Nxt.getTransactionProcessor().getUnconfirmedTransactions(firstIndex, lastIndex)
+                    .forEach(transaction -> transactionIds.add(transaction.getStringId()));
         } else {
-            try (FilteringIterator<? extends Transaction> transactionsIterator = new FilteringIterator<> (
-                    Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(0, -1),
-                    transaction -> accountIds.contains(transaction.getSenderId()) || accountIds.contains(transaction.getRecipientId()),
-                    firstIndex, lastIndex)) {
-                while (transactionsIterator.hasNext()) {
-                    Transaction transaction = transactionsIterator.next();
-                    transactionIds.add(transaction.getStringId());
+            int index = 0;
+            for (Transaction transaction : Nxt.getTransactionProcessor().getUnconfirmedTransactions(0, -1)) {
+                if (accountIds.contains(transaction.getSenderId()) || accountIds.contains(transaction.getRecipientId())) {
+                    if (index > lastIndex) {
+                        break;
+                    }
+                    if (index >= firstIndex) {
+                        transactionIds.add(transaction.getStringId());
+                    }
+                    index += 1;
                 }
             }
         }
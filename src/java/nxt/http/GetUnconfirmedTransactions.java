@@ -18,8 +18,6 @@ package nxt.http;
 
 import nxt.Nxt;
 import nxt.Transaction;
-import nxt.db.DbIterator;
-import nxt.db.FilteringIterator;
 import nxt.util.Convert;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -45,20 +43,19 @@ public final class GetUnconfirmedTransactions extends APIServlet.APIRequestHandl
 
         JSONArray transactions = new JSONArray();
         if (accountIds.isEmpty()) {
-            try (DbIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(firstIndex, lastIndex)) {
-                while (transactionsIterator.hasNext()) {
-                    Transaction transaction = transactionsIterator.next();
-                    transactions.add(JSONData.unconfirmedTransaction(transaction));
-                }
-            }
+            Nxt.getTransactionProcessor().getUnconfirmedTransactions(firstIndex, lastIndex)
+                    .forEach(transaction -> transactions.add(JSONData.unconfirmedTransaction(transaction)));
         } else {
-            try (FilteringIterator<? extends Transaction> transactionsIterator = new FilteringIterator<> (
-                    Nxt.getTransactionProcessor().getAllUnconfirmedTransactions(0, -1),
-                    transaction -> accountIds.contains(transaction.getSenderId()) || accountIds.contains(transaction.getRecipientId()),
-                    firstIndex, lastIndex)) {
-                while (transactionsIterator.hasNext()) {
-                    Transaction transaction = transactionsIterator.next();
-                    transactions.add(JSONData.unconfirmedTransaction(transaction));
+            int index = 0;
+            for (Transaction transaction : Nxt.getTransactionProcessor().getUnconfirmedTransactions(0, -1)) {
+                if (accountIds.contains(transaction.getSenderId()) || accountIds.contains(transaction.getRecipientId())) {
+                    if (index > lastIndex) {
+                        break;
+                    }
+                    if (index >= firstIndex) {
+                        transactions.add(JSONData.unconfirmedTransaction(transaction));
+                    }
+                    index += 1;
                 }
             }
         }
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.peer;
+
+import nxt.Nxt;
+import nxt.NxtException;
+import nxt.TransactionProcessor;
+import nxt.util.JSON;
+import nxt.util.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process transaction identifiers announced by a peer.  The transactions which are not already
+ * known are requested from the peer in the background.  A transaction which has been requested
+ * from one peer is not requested from other peers until the request has completed.
+ */
+final class AnnounceTransactions extends PeerServlet.PeerRequestHandler {
+
+    static final AnnounceTransactions instance = new AnnounceTransactions();
+
+    private static final JSONStreamAware TOO_MANY_TRANSACTIONS_ANNOUNCED;
+    static {
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.TOO_MANY_TRANSACTIONS_ANNOUNCED);
+        TOO_MANY_TRANSACTIONS_ANNOUNCED = JSON.prepare(response);
+    }
+
+    /** Transactions currently being requested from a peer */
+    private static final Set<Long> requestedTransactions = ConcurrentHashMap.newKeySet();
+
+    private AnnounceTransactions() {}
+
+    @Override
+    JSONStreamAware processRequest(JSONObject request, Peer peer) {
+        List<String> transactionIds = (List<String>)request.get("transactionIds");
+        if (transactionIds == null || transactionIds.isEmpty()) {
+            return JSON.emptyJSON;
+        }
+        if (transactionIds.size() > Peers.MAX_ANNOUNCED_TRANSACTIONS) {
+            return TOO_MANY_TRANSACTIONS_ANNOUNCED;
+        }
+        TransactionProcessor transactionProcessor = Nxt.getTransactionProcessor();
+        List<Long> missingIds = new ArrayList<>();
+        for (String transactionId : transactionIds) {
+            long id = Long.parseUnsignedLong(transactionId);
+            ((PeerImpl)peer).addKnownTransaction(id);
+            if (transactionProcessor.getUnconfirmedTransaction(id) == null && !Nxt.getBlockchain().hasTransaction(id)
+                    && requestedTransactions.add(id)) {
+                missingIds.add(id);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            Peers.peersService.submit(() -> requestTransactions(peer, missingIds));
+        }
+        return JSON.emptyJSON;
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+    private static void requestTransactions(Peer peer, List<Long> transactionIds) {
+        try {
+            JSONObject request = new JSONObject();
+            JSONArray requestIds = new JSONArray();
+            transactionIds.forEach(transactionId -> requestIds.add(Long.toUnsignedString(transactionId)));
+            request.put("requestType", "getUnconfirmedTransactions");
+            request.put("transactionIds", requestIds);
+            JSONObject response = peer.send(JSON.prepareRequest(request), Peers.MAX_MESSAGE_SIZE);
+            if (response == null) {
+                return;
+            }
+            JSONArray transactionsData = (JSONArray)response.get("unconfirmedTransactions");
+            if (transactionsData == null || transactionsData.isEmpty()) {
+                return;
+            }
+            if (transactionsData.size() > transactionIds.size()) {
+                peer.blacklist("Too many transactions returned");
+                return;
+            }
+            JSONObject transactionsRequest = new JSONObject();
+            transactionsRequest.put("transactions", transactionsData);
+            try {
+                Nxt.getTransactionProcessor().processPeerTransactions(transactionsRequest);
+            } catch (NxtException.ValidationException|RuntimeException e) {
+                peer.blacklist(e);
+            }
+        } catch (RuntimeException e) {
+            Logger.logDebugMessage("Unable to request transactions from peer " + peer.getHost(), e);
+        } finally {
+            requestedTransactions.removeAll(transactionIds);
+        }
+    }
+}
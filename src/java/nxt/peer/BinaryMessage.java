@@ -0,0 +1,334 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.peer;
+
+import nxt.Block;
+import nxt.Transaction;
+import nxt.util.Convert;
+import nxt.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary peer message
+ *
+ * A binary message is sent instead of JSON text over a WebSocket connection when both peers
+ * support WebSocket message version 2.  Blocks and transactions are carried in their binary
+ * peer representation instead of being converted to JSON.  The message format is:
+ * <ul>
+ * <li>int - JSON envelope length
+ * <li>byte[] - JSON envelope containing the message values which are not binary
+ * <li>int - Number of binary values
+ * <li>Binary values, each consisting of:
+ *   <ul>
+ *   <li>int - Key length
+ *   <li>byte[] - UTF-8 key
+ *   <li>byte - 1 if the value is a list, 0 otherwise
+ *   <li>int - Number of elements (1 if the value is not a list)
+ *   <li>Elements, each consisting of the int length followed by the element bytes
+ *   </ul>
+ * </ul>
+ *
+ * Binary values are only supported at the top level of a message, either as a single value
+ * or as a list consisting only of binary values.  A decoded binary value is returned as a byte array.
+ */
+final class BinaryMessage {
+
+    private BinaryMessage() {} //never
+
+    /**
+     * Message value which is sent as JSON to peers which do not support binary messages
+     */
+    abstract static class Value implements JSONAware {
+
+        /**
+         * Return the binary value.  The buffer may be shared and must not be modified.
+         *
+         * @return                      Value bytes
+         */
+        abstract ByteBuffer getBytes();
+    }
+
+    /**
+     * Create a block message value
+     *
+     * @param   block               Block
+     * @return                      Message value
+     */
+    static Value block(Block block) {
+        return new Value() {
+            @Override
+            ByteBuffer getBytes() {
+                return block.getPeerBuffer();
+            }
+
+            @Override
+            public String toJSONString() {
+                return block.getPeerJSON().toJSONString();
+            }
+        };
+    }
+
+    /**
+     * Create a block header message value, consisting of the signed block bytes without the
+     * block transactions.  The JSON representation is the hex string of the block bytes.
+     *
+     * @param   block               Block
+     * @return                      Message value
+     */
+    static Value blockHeader(Block block) {
+        return new Value() {
+            @Override
+            ByteBuffer getBytes() {
+                return ByteBuffer.wrap(block.getBytes());
+            }
+
+            @Override
+            public String toJSONString() {
+                return JSONValue.toJSONString(Convert.toHexString(block.getBytes()));
+            }
+        };
+    }
+
+    /**
+     * Create a transaction message value
+     *
+     * @param   transaction         Transaction
+     * @return                      Message value
+     */
+    static Value transaction(Transaction transaction) {
+        return new Value() {
+            @Override
+            ByteBuffer getBytes() {
+                return ByteBuffer.wrap(transaction.getPeerBytes());
+            }
+
+            @Override
+            public String toJSONString() {
+                return JSON.toJSONString(transaction.getJSONObject());
+            }
+        };
+    }
+
+    /**
+     * Prepare a request which can be sent as either JSON text or a binary message.  The JSON text
+     * is not created until the request is sent to a peer which does not support binary messages.
+     *
+     * @param   jsonRequest         Request sent as JSON text
+     * @param   binaryRequest       Request sent as a binary message
+     * @return                      Prepared request
+     */
+    static JSONStreamAware prepareRequest(JSONObject jsonRequest, JSONObject binaryRequest) {
+        jsonRequest.put("protocol", 1);
+        binaryRequest.put("protocol", 1);
+        return new PreparedRequest(jsonRequest, binaryRequest);
+    }
+
+    /**
+     * Prepared request
+     */
+    private static final class PreparedRequest implements JSONStreamAware {
+
+        private final JSONObject jsonRequest;
+        private final JSONObject binaryRequest;
+        private volatile char[] jsonChars;
+
+        private PreparedRequest(JSONObject jsonRequest, JSONObject binaryRequest) {
+            this.jsonRequest = jsonRequest;
+            this.binaryRequest = binaryRequest;
+        }
+
+        @Override
+        public void writeJSONString(Writer out) throws IOException {
+            char[] chars = jsonChars;
+            if (chars == null) {
+                synchronized (this) {
+                    if ((chars = jsonChars) == null) {
+                        chars = JSON.toJSONString(jsonRequest).toCharArray();
+                        jsonChars = chars;
+                    }
+                }
+            }
+            out.write(chars);
+        }
+    }
+
+    /**
+     * Encode a binary message
+     *
+     * @param   message             JSON message
+     * @return                      Message bytes
+     * @throws  IOException         Unable to encode the message
+     */
+    static byte[] encode(JSONStreamAware message) throws IOException {
+        if (message instanceof PreparedRequest) {
+            message = ((PreparedRequest)message).binaryRequest;
+        }
+        JSONStreamAware envelope = message;
+        List<byte[]> keys = new ArrayList<>();
+        List<List<ByteBuffer>> values = new ArrayList<>();
+        List<Boolean> isList = new ArrayList<>();
+        if (message instanceof JSONObject) {
+            JSONObject jsonEnvelope = new JSONObject();
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>)message).entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Value) {
+                    List<ByteBuffer> valueBytes = new ArrayList<>(1);
+                    valueBytes.add(((Value)value).getBytes());
+                    keys.add(Convert.toBytes(entry.getKey().toString()));
+                    values.add(valueBytes);
+                    isList.add(false);
+                } else if (isValueList(value)) {
+                    List<ByteBuffer> valueBytes = new ArrayList<>(((List)value).size());
+                    for (Object element : (List)value) {
+                        valueBytes.add(((Value)element).getBytes());
+                    }
+                    keys.add(Convert.toBytes(entry.getKey().toString()));
+                    values.add(valueBytes);
+                    isList.add(true);
+                } else {
+                    jsonEnvelope.put(entry.getKey(), value);
+                }
+            }
+            envelope = jsonEnvelope;
+        }
+        byte[] envelopeBytes = Convert.toBytes(JSON.toString(envelope));
+        int length = 4 + envelopeBytes.length + 4;
+        for (int i = 0; i < keys.size(); i++) {
+            length += 4 + keys.get(i).length + 1 + 4;
+            for (ByteBuffer valueBytes : values.get(i)) {
+                length += 4 + valueBytes.remaining();
+            }
+        }
+        if (length > Peers.MAX_MESSAGE_SIZE) {
+            throw new ProtocolException("Binary message length exceeds max message size");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.putInt(envelopeBytes.length).put(envelopeBytes);
+        buf.putInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            buf.putInt(keys.get(i).length).put(keys.get(i));
+            buf.put((byte)(isList.get(i) ? 1 : 0));
+            buf.putInt(values.get(i).size());
+            for (ByteBuffer valueBytes : values.get(i)) {
+                buf.putInt(valueBytes.remaining()).put(valueBytes);
+            }
+        }
+        return buf.array();
+    }
+
+    /**
+     * Check if a message value is a non-empty list consisting only of binary values
+     *
+     * @param   value               Message value
+     * @return                      TRUE if the list is sent as binary values
+     */
+    private static boolean isValueList(Object value) {
+        if (!(value instanceof List) || ((List)value).isEmpty()) {
+            return false;
+        }
+        for (Object element : (List)value) {
+            if (!(element instanceof Value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a binary message
+     *
+     * @param   bytes               Message bytes
+     * @return                      JSON message with the binary values as byte arrays
+     * @throws  ParseException      Unable to parse the JSON envelope
+     * @throws  ProtocolException   Message format is not valid
+     */
+    static JSONObject decode(byte[] bytes) throws ParseException, ProtocolException {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            byte[] envelopeBytes = getBytes(buf);
+            JSONObject message = (JSONObject)JSONValue.parseWithException(Convert.toString(envelopeBytes));
+            int count = getCount(buf, 4 + 1 + 4);
+            for (int i = 0; i < count; i++) {
+                byte[] keyBytes = getBytes(buf);
+                boolean isList = buf.get() != 0;
+                int elementCount = getCount(buf, 4);
+                if (!isList && elementCount != 1) {
+                    throw new ProtocolException("Binary value must have one element");
+                }
+                JSONArray elements = new JSONArray();
+                for (int j = 0; j < elementCount; j++) {
+                    elements.add(getBytes(buf));
+                }
+                message.put(Convert.toString(keyBytes), isList ? elements : elements.get(0));
+            }
+            if (buf.hasRemaining()) {
+                throw new ProtocolException("Binary message too long, " + buf.remaining() + " extra bytes");
+            }
+            return message;
+        } catch (RuntimeException e) {
+            throw new ProtocolException("Invalid binary message: " + e.toString());
+        }
+    }
+
+    /**
+     * Read a length-prefixed byte array.  The length is checked against the remaining bytes
+     * before the array is allocated.
+     *
+     * @param   buf                 Message buffer
+     * @return                      Byte array
+     * @throws  ProtocolException   Length is not valid
+     */
+    private static byte[] getBytes(ByteBuffer buf) throws ProtocolException {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            throw new ProtocolException("Invalid binary length " + length + ", " + buf.remaining() + " bytes remaining");
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read an item count.  The count is checked against the remaining bytes, since each item
+     * takes at least the minimum item length.
+     *
+     * @param   buf                 Message buffer
+     * @param   minLength           Minimum item length
+     * @return                      Item count
+     * @throws  ProtocolException   Count is not valid
+     */
+    private static int getCount(ByteBuffer buf, int minLength) throws ProtocolException {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / minLength) {
+            throw new ProtocolException("Invalid binary item count " + count + ", " + buf.remaining() + " bytes remaining");
+        }
+        return count;
+    }
+}
@@ -27,6 +27,9 @@ final class Errors {
     final static String SEQUENCE_ERROR = "Peer request received before 'getInfo' request";
     final static String MAX_INBOUND_CONNECTIONS = "Maximum number of inbound connections exceeded";
     final static String TOO_MANY_BLOCKS_REQUESTED = "Too many blocks requested";
+    final static String TOO_MANY_TRANSACTIONS_REQUESTED = "Too many transactions requested";
+    final static String UNKNOWN_BLOCK = "Unknown block";
+    final static String TOO_MANY_TRANSACTIONS_ANNOUNCED = "Too many transactions announced";
     final static String DOWNLOADING = "Blockchain download in progress";
     final static String LIGHT_CLIENT = "Peer is in light mode";
 
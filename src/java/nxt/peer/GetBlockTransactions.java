@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.peer;
+
+import nxt.Block;
+import nxt.Constants;
+import nxt.Nxt;
+import nxt.Transaction;
+import nxt.util.Convert;
+import nxt.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Get the requested transactions of a block.  This is used to obtain the transactions which
+ * are missing from the unconfirmed pool when rebuilding a compact block.
+ */
+final class GetBlockTransactions extends PeerServlet.PeerRequestHandler {
+
+    static final GetBlockTransactions instance = new GetBlockTransactions();
+
+    private static final JSONStreamAware UNKNOWN_BLOCK;
+    private static final JSONStreamAware TOO_MANY_TRANSACTIONS_REQUESTED;
+    static {
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.UNKNOWN_BLOCK);
+        UNKNOWN_BLOCK = JSON.prepare(response);
+        response = new JSONObject();
+        response.put("error", Errors.TOO_MANY_TRANSACTIONS_REQUESTED);
+        TOO_MANY_TRANSACTIONS_REQUESTED = JSON.prepare(response);
+    }
+
+    private GetBlockTransactions() {}
+
+    @Override
+    JSONStreamAware processRequest(JSONObject request, Peer peer) {
+        long blockId = Convert.parseUnsignedLong((String)request.get("blockId"));
+        List<String> transactionIds = (List<String>)request.get("transactionIds");
+        if (transactionIds == null) {
+            return JSON.emptyJSON;
+        }
+        if (transactionIds.size() > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+            return TOO_MANY_TRANSACTIONS_REQUESTED;
+        }
+        Block block = Nxt.getBlockchain().getBlock(blockId);
+        if (block == null) {
+            return UNKNOWN_BLOCK;
+        }
+        Set<Long> requestedIds = new HashSet<>();
+        transactionIds.forEach(transactionId -> requestedIds.add(Long.parseUnsignedLong(transactionId)));
+        JSONArray transactionsData = new JSONArray();
+        for (Transaction transaction : block.getTransactions()) {
+            if (requestedIds.contains(transaction.getId())) {
+                transactionsData.add(BinaryMessage.transaction(transaction));
+            }
+        }
+        JSONObject response = new JSONObject();
+        response.put("transactions", transactionsData);
+        return response;
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+}
@@ -17,6 +17,7 @@
 package nxt.peer;
 
 import nxt.Block;
+import nxt.Constants;
 import nxt.Nxt;
 import nxt.util.Convert;
 import nxt.util.JSON;
@@ -63,7 +64,11 @@ final class GetNextBlocks extends PeerServlet.PeerRequestHandler {
             }
             blocks = Nxt.getBlockchain().getBlocksAfter(blockId, limit > 0 ? (int)limit : 36);
         }
-        blocks.forEach(block -> nextBlocksArray.add(block.getJSONObject()));
+        //
+        // Transactions before the NQT block use the legacy byte format, so these blocks are always sent as JSON
+        //
+        blocks.forEach(block -> nextBlocksArray.add(block.getHeight() > Constants.NQT_BLOCK ?
+                BinaryMessage.block(block) : block.getPeerJSON()));
         response.put("nextBlocks", nextBlocksArray);
 
         return response;
@@ -30,12 +30,24 @@ final class GetUnconfirmedTransactions extends PeerServlet.PeerRequestHandler {
 
     static final GetUnconfirmedTransactions instance = new GetUnconfirmedTransactions();
 
+    private static final JSONStreamAware TOO_MANY_TRANSACTIONS_REQUESTED;
+    static {
+        JSONObject response = new JSONObject();
+        response.put("error", Errors.TOO_MANY_TRANSACTIONS_REQUESTED);
+        TOO_MANY_TRANSACTIONS_REQUESTED = JSON.prepare(response);
+    }
+
     private GetUnconfirmedTransactions() {}
 
 
     @Override
     JSONStreamAware processRequest(JSONObject request, Peer peer) {
 
+        List<String> transactionIds = (List<String>)request.get("transactionIds");
+        if (transactionIds != null) {
+            return getTransactions(transactionIds, peer);
+        }
+
         List<String> exclude = (List<String>)request.get("exclude");
         if (exclude == null) {
             return JSON.emptyJSON;
@@ -47,7 +59,7 @@ final class GetUnconfirmedTransactions extends PeerServlet.PeerRequestHandler {
             if (transactionsData.size() >= 100) {
                 break;
             }
-            transactionsData.add(transaction.getJSONObject());
+            transactionsData.add(BinaryMessage.transaction(transaction));
         }
         JSONObject response = new JSONObject();
         response.put("unconfirmedTransactions", transactionsData);
@@ -55,6 +67,27 @@ final class GetUnconfirmedTransactions extends PeerServlet.PeerRequestHandler {
         return response;
     }
 
+    /**
+     * Return the requested unconfirmed transactions which are still in the unconfirmed pool
+     */
+    private static JSONStreamAware getTransactions(List<String> transactionIds, Peer peer) {
+        if (transactionIds.size() > Peers.MAX_ANNOUNCED_TRANSACTIONS) {
+            return TOO_MANY_TRANSACTIONS_REQUESTED;
+        }
+        JSONArray transactionsData = new JSONArray();
+        for (String transactionId : transactionIds) {
+            long id = Long.parseUnsignedLong(transactionId);
+            Transaction transaction = Nxt.getTransactionProcessor().getUnconfirmedTransaction(id);
+            if (transaction != null) {
+                transactionsData.add(BinaryMessage.transaction(transaction));
+                ((PeerImpl)peer).addKnownTransaction(id);
+            }
+        }
+        JSONObject response = new JSONObject();
+        response.put("unconfirmedTransactions", transactionsData);
+        return response;
+    }
+
     @Override
     boolean rejectWhileDownloading() {
         return true;
@@ -87,6 +87,12 @@ final class PeerImpl implements Peer {
     private volatile int hallmarkBalanceHeight;
     private volatile long services;
     private volatile BlockchainState blockchainState;
+    private final Set<Long> knownTransactions = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > Peers.MAX_KNOWN_TRANSACTIONS;
+        }
+    });
 
     PeerImpl(String host, String announcedAddress) {
         this.host = host;
@@ -473,7 +479,26 @@ final class PeerImpl implements Peer {
             //
             // Send the request and process the response
             //
-            if (useWebSocket) {
+            if (useWebSocket && webSocket.supportsBinaryMessages()) {
+                //
+                // Send a binary request using the WebSocket session
+                //
+                byte[] wsRequest = BinaryMessage.encode(request);
+                if (communicationLoggingMask != 0)
+                    log = "WebSocket " + host + ": " + JSON.toString(request);
+                byte[] wsResponse = webSocket.doPost(wsRequest);
+                updateUploadedVolume(wsRequest.length);
+                if (maxResponseSize > 0) {
+                    if (wsResponse.length > maxResponseSize)
+                        throw new NxtException.NxtIOException("Maximum size exceeded: " + wsResponse.length);
+                    response = BinaryMessage.decode(wsResponse);
+                    if ((communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
+                        log += " >>> " + JSON.toJSONString(response);
+                        showLog = true;
+                    }
+                    updateDownloadedVolume(wsResponse.length);
+                }
+            } else if (useWebSocket) {
                 //
                 // Send the request using the WebSocket session
                 //
@@ -851,6 +876,32 @@ final class PeerImpl implements Peer {
         }
     }
 
+    /**
+     * Remember that the peer has a transaction, either because it announced the transaction or
+     * because the transaction was announced or sent to it.  Only the most recent transactions
+     * are remembered.
+     *
+     * @param   transactionId       Transaction identifier
+     * @return                      TRUE if the transaction was not already known to the peer
+     */
+    boolean addKnownTransaction(long transactionId) {
+        synchronized (knownTransactions) {
+            return knownTransactions.add(transactionId);
+        }
+    }
+
+    /**
+     * Check if the peer is known to have a transaction
+     *
+     * @param   transactionId       Transaction identifier
+     * @return                      TRUE if the transaction is known to the peer
+     */
+    boolean isKnownTransaction(long transactionId) {
+        synchronized (knownTransactions) {
+            return knownTransactions.contains(transactionId);
+        }
+    }
+
     long getServices() {
         synchronized (this) {
             return services;
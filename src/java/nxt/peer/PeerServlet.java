@@ -57,6 +57,8 @@ public final class PeerServlet extends WebSocketServlet {
     static {
         Map<String,PeerRequestHandler> map = new HashMap<>();
         map.put("addPeers", AddPeers.instance);
+        map.put("announceTransactions", AnnounceTransactions.instance);
+        map.put("getBlockTransactions", GetBlockTransactions.instance);
         map.put("getCumulativeDifficulty", GetCumulativeDifficulty.instance);
         map.put("getInfo", GetInfo.instance);
         map.put("getMilestoneBlockIds", GetMilestoneBlockIds.instance);
@@ -234,6 +236,54 @@ public final class PeerServlet extends WebSocketServlet {
         }
     }
 
+    /**
+     * Process WebSocket binary POST request
+     *
+     * @param   webSocket           WebSocket for the connection
+     * @param   requestId           Request identifier
+     * @param   request             Binary request message
+     */
+    void doPost(PeerWebSocket webSocket, long requestId, byte[] request) {
+        JSONStreamAware jsonResponse;
+        //
+        // Process the peer request
+        //
+        InetSocketAddress socketAddress = webSocket.getRemoteAddress();
+        if (socketAddress == null) {
+            return;
+        }
+        String remoteAddress = socketAddress.getHostString();
+        PeerImpl peer = Peers.findOrCreatePeer(remoteAddress);
+        if (peer == null) {
+            jsonResponse = UNKNOWN_PEER;
+        } else {
+            peer.setInboundWebSocket(webSocket);
+            jsonResponse = process(peer, request);
+        }
+        //
+        // Return the response
+        //
+        try {
+            byte[] response = BinaryMessage.encode(jsonResponse);
+            webSocket.sendResponse(requestId, response);
+            if (peer != null) {
+                peer.updateUploadedVolume(response.length);
+            }
+        } catch (RuntimeException | IOException e) {
+            if (peer != null) {
+                if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_EXCEPTIONS) != 0) {
+                    if (e instanceof RuntimeException) {
+                        Logger.logDebugMessage("Error sending response to peer " + peer.getHost(), e);
+                    } else {
+                        Logger.logDebugMessage(String.format("Error sending response to peer %s: %s",
+                            peer.getHost(), e.getMessage() != null ? e.getMessage() : e.toString()));
+                    }
+                }
+                peer.blacklist(e);
+            }
+        }
+    }
+
     /**
      * Process the peer request
      *
@@ -242,9 +292,54 @@ public final class PeerServlet extends WebSocketServlet {
      * @return                      JSON response
      */
     private JSONStreamAware process(PeerImpl peer, Reader inputReader) {
-        //
-        // Check for blacklisted peer
-        //
+        JSONStreamAware blacklisted = checkBlacklisted(peer);
+        if (blacklisted != null) {
+            return blacklisted;
+        }
+        try (CountingInputReader cr = new CountingInputReader(inputReader, Peers.MAX_REQUEST_SIZE)) {
+            JSONObject request = (JSONObject)JSONValue.parseWithException(cr);
+            peer.updateDownloadedVolume(cr.getCount());
+            return process(peer, request);
+        } catch (RuntimeException|ParseException|IOException e) {
+            Logger.logDebugMessage("Error processing POST request: " + e.toString());
+            peer.blacklist(e);
+            return error(e);
+        }
+    }
+
+    /**
+     * Process the binary peer request
+     *
+     * @param   peer                Peer
+     * @param   requestBytes        Binary request message
+     * @return                      JSON response
+     */
+    private JSONStreamAware process(PeerImpl peer, byte[] requestBytes) {
+        JSONStreamAware blacklisted = checkBlacklisted(peer);
+        if (blacklisted != null) {
+            return blacklisted;
+        }
+        try {
+            if (requestBytes.length > Peers.MAX_REQUEST_SIZE) {
+                throw new IOException("Maximum size exceeded: " + requestBytes.length);
+            }
+            JSONObject request = BinaryMessage.decode(requestBytes);
+            peer.updateDownloadedVolume(requestBytes.length);
+            return process(peer, request);
+        } catch (RuntimeException|ParseException|IOException e) {
+            Logger.logDebugMessage("Error processing POST request: " + e.toString());
+            peer.blacklist(e);
+            return error(e);
+        }
+    }
+
+    /**
+     * Check for a blacklisted peer and add the peer if it is not blacklisted
+     *
+     * @param   peer                Peer
+     * @return                      Error response or null if the peer is not blacklisted
+     */
+    private JSONStreamAware checkBlacklisted(PeerImpl peer) {
         if (peer.isBlacklisted()) {
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("error", Errors.BLACKLISTED);
@@ -252,12 +347,18 @@ public final class PeerServlet extends WebSocketServlet {
             return jsonObject;
         }
         Peers.addPeer(peer);
-        //
-        // Process the request
-        //
-        try (CountingInputReader cr = new CountingInputReader(inputReader, Peers.MAX_REQUEST_SIZE)) {
-            JSONObject request = (JSONObject)JSONValue.parseWithException(cr);
-            peer.updateDownloadedVolume(cr.getCount());
+        return null;
+    }
+
+    /**
+     * Process the parsed peer request
+     *
+     * @param   peer                Peer
+     * @param   request             Request message
+     * @return                      JSON response
+     */
+    private JSONStreamAware process(PeerImpl peer, JSONObject request) {
+        try {
             if (request.get("protocol") == null || ((Number)request.get("protocol")).intValue() != 1) {
                 Logger.logDebugMessage("Unsupported protocol " + request.get("protocol"));
                 return UNSUPPORTED_PROTOCOL;
@@ -288,7 +389,7 @@ public final class PeerServlet extends WebSocketServlet {
                 }
             }
             return peerRequestHandler.processRequest(request, peer);
-        } catch (RuntimeException|ParseException|IOException e) {
+        } catch (RuntimeException e) {
             Logger.logDebugMessage("Error processing POST request: " + e.toString());
             peer.blacklist(e);
             return error(e);
@@ -60,8 +60,11 @@ public class PeerWebSocket {
     /** Compressed message flag */
     private static final int FLAG_COMPRESSED = 1;
 
-    /** Our WebSocket message version */
-    private static final int VERSION = 1;
+    /** Binary message flag */
+    private static final int FLAG_BINARY = 2;
+
+    /** Our WebSocket message version - version 2 adds binary messages */
+    private static final int VERSION = Peers.useBinaryMessages ? 2 : 1;
 
     /** Create the WebSocket client */
     private static WebSocketClient peerClient;
@@ -79,7 +82,7 @@ public class PeerWebSocket {
     }
 
     /** Negotiated WebSocket message version */
-    private int version = VERSION;
+    private volatile int version = 1;
 
     /** Thread pool for server request processing */
     private static final ExecutorService threadPool = new QueuedThreadPool(
@@ -205,6 +208,15 @@ public class PeerWebSocket {
         return ((s=session) != null && s.isOpen());
     }
 
+    /**
+     * Check if binary messages can be sent on this connection
+     *
+     * @return                      TRUE if both peers support binary messages
+     */
+    public boolean supportsBinaryMessages() {
+        return version >= 2 && isOpen();
+    }
+
     /**
      * Return the remote address for this connection
      *
@@ -225,6 +237,23 @@ public class PeerWebSocket {
      * @throws  IOException         I/O error occurred
      */
     public String doPost(String request) throws IOException {
+        return new String(doPost(request.getBytes("UTF-8"), 0), "UTF-8");
+    }
+
+    /**
+     * Process a POST request by sending a binary request message and then
+     * waiting for the binary response.  This method is used by the connection
+     * originator and requires a connection which supports binary messages.
+     *
+     * @param   request             Binary request message
+     * @return                      Binary response message
+     * @throws  IOException         I/O error occurred
+     */
+    public byte[] doPost(byte[] request) throws IOException {
+        return doPost(request, FLAG_BINARY);
+    }
+
+    private byte[] doPost(byte[] requestBytes, int flags) throws IOException {
         long requestId;
         //
         // Send the POST request
@@ -235,28 +264,7 @@ public class PeerWebSocket {
                 throw new IOException("WebSocket session is not open");
             }
             requestId = nextRequestId++;
-            byte[] requestBytes = request.getBytes("UTF-8");
-            int requestLength = requestBytes.length;
-            int flags = 0;
-            if (Peers.isGzipEnabled && requestLength >= Peers.MIN_COMPRESS_SIZE) {
-                flags |= FLAG_COMPRESSED;
-                ByteArrayOutputStream outStream = new ByteArrayOutputStream(requestLength);
-                try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
-                    gzipStream.write(requestBytes);
-                }
-                requestBytes = outStream.toByteArray();
-            }
-            ByteBuffer buf = ByteBuffer.allocate(requestBytes.length + 20);
-            buf.putInt(version)
-               .putLong(requestId)
-               .putInt(flags)
-               .putInt(requestLength)
-               .put(requestBytes)
-               .flip();
-            if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
-                throw new ProtocolException("POST request length exceeds max message size");
-            }
-            session.getRemote().sendBytes(buf);
+            sendMessage(requestId, requestBytes, flags);
         } catch (WebSocketException exc) {
             throw new SocketException(exc.getMessage());
         } finally {
@@ -265,7 +273,7 @@ public class PeerWebSocket {
         //
         // Get the response
         //
-        String response;
+        byte[] response;
         try {
             PostRequest postRequest = new PostRequest();
             requestMap.put(requestId, postRequest);
@@ -286,31 +294,28 @@ public class PeerWebSocket {
      * @throws  IOException         I/O error occurred
      */
     public void sendResponse(long requestId, String response) throws IOException {
+        sendResponse(requestId, response.getBytes("UTF-8"), 0);
+    }
+
+    /**
+     * Send binary POST response
+     *
+     * This method is used by the connection acceptor to return the POST response
+     * for a binary request
+     *
+     * @param   requestId           Request identifier
+     * @param   response            Binary response message
+     * @throws  IOException         I/O error occurred
+     */
+    public void sendResponse(long requestId, byte[] response) throws IOException {
+        sendResponse(requestId, response, FLAG_BINARY);
+    }
+
+    private void sendResponse(long requestId, byte[] responseBytes, int flags) throws IOException {
         lock.lock();
         try {
             if (session != null && session.isOpen()) {
-                byte[] responseBytes = response.getBytes("UTF-8");
-                int responseLength = responseBytes.length;
-                int flags = 0;
-                if (Peers.isGzipEnabled && responseLength >= Peers.MIN_COMPRESS_SIZE) {
-                    flags |= FLAG_COMPRESSED;
-                    ByteArrayOutputStream outStream = new ByteArrayOutputStream(responseLength);
-                    try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
-                        gzipStream.write(responseBytes);
-                    }
-                    responseBytes = outStream.toByteArray();
-                }
-                ByteBuffer buf = ByteBuffer.allocate(responseBytes.length + 20);
-                buf.putInt(version)
-                   .putLong(requestId)
-                   .putInt(flags)
-                   .putInt(responseLength)
-                   .put(responseBytes)
-                   .flip();
-                if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
-                    throw new ProtocolException("POST response length exceeds max message size");
-                }
-                session.getRemote().sendBytes(buf);
+                sendMessage(requestId, responseBytes, flags);
             }
         } catch (WebSocketException exc) {
             throw new SocketException(exc.getMessage());
@@ -319,6 +324,39 @@ public class PeerWebSocket {
         }
     }
 
+    /**
+     * Send a message
+     *
+     * The caller must hold the WebSocket lock
+     *
+     * @param   requestId           Request identifier
+     * @param   messageBytes        Message bytes
+     * @param   flags               Message flags
+     * @throws  IOException         I/O error occurred
+     */
+    private void sendMessage(long requestId, byte[] messageBytes, int flags) throws IOException {
+        int messageLength = messageBytes.length;
+        if (Peers.isGzipEnabled && messageLength >= Peers.MIN_COMPRESS_SIZE) {
+            flags |= FLAG_COMPRESSED;
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream(messageLength);
+            try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
+                gzipStream.write(messageBytes);
+            }
+            messageBytes = outStream.toByteArray();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(messageBytes.length + 20);
+        buf.putInt(VERSION)
+           .putLong(requestId)
+           .putInt(flags)
+           .putInt(messageLength)
+           .put(messageBytes)
+           .flip();
+        if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
+            throw new ProtocolException("POST message length exceeds max message size");
+        }
+        session.getRemote().sendBytes(buf);
+    }
+
     /**
      * Process a socket message
      *
@@ -351,9 +389,14 @@ public class PeerWebSocket {
                     }
                 }
             }
-            String message = new String(msgBytes, "UTF-8");
+            byte[] message = msgBytes;
             if (peerServlet != null) {
-                threadPool.execute(() -> peerServlet.doPost(this, requestId, message));
+                if ((flags&FLAG_BINARY) != 0) {
+                    threadPool.execute(() -> peerServlet.doPost(this, requestId, message));
+                } else {
+                    String request = new String(message, "UTF-8");
+                    threadPool.execute(() -> peerServlet.doPost(this, requestId, request));
+                }
             } else {
                 PostRequest postRequest = requestMap.remove(requestId);
                 if (postRequest != null) {
@@ -419,7 +462,7 @@ public class PeerWebSocket {
         private final CountDownLatch latch = new CountDownLatch(1);
 
         /** Response message */
-        private volatile String response;
+        private volatile byte[] response;
 
         /** Socket exception */
         private volatile IOException exception;
@@ -441,7 +484,7 @@ public class PeerWebSocket {
          * @throws  InterruptedException    Wait interrupted
          * @throws  IOException             I/O error occurred
          */
-        public String get(long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        public byte[] get(long timeout, TimeUnit unit) throws InterruptedException, IOException {
             if (!latch.await(timeout, unit)) {
                 throw new SocketTimeoutException("WebSocket read timeout exceeded");
             }
@@ -458,7 +501,7 @@ public class PeerWebSocket {
          *
          * @param   response                Response message
          */
-        public void complete(String response) {
+        public void complete(byte[] response) {
             this.response = response;
             latch.countDown();
         }
@@ -73,6 +73,8 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public final class Peers {
 
@@ -100,6 +102,11 @@ public final class Peers {
     static final int MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
     public static final int MIN_COMPRESS_SIZE = 256;
     static final boolean useWebSockets;
+    static final boolean useBinaryMessages;
+    static final boolean useTransactionInventory = Nxt.getBooleanProperty("nxt.useTransactionInventory");
+    static final boolean useCompactBlocks = Nxt.getBooleanProperty("nxt.useCompactBlocks");
+    static final int MAX_ANNOUNCED_TRANSACTIONS = 100;
+    static final int MAX_KNOWN_TRANSACTIONS = 10000;
     static final int webSocketIdleTimeout;
     static final boolean useProxy = System.getProperty("socksProxyHost") != null || System.getProperty("http.proxyHost") != null;
     static final boolean isGzipEnabled;
@@ -297,6 +304,13 @@ public final class Peers {
             }
         }
 
+        if (useTransactionInventory) {
+            servicesList.add(Peer.Service.TRANSACTION_INVENTORY);
+        }
+        if (useCompactBlocks) {
+            servicesList.add(Peer.Service.COMPACT_BLOCKS);
+        }
+
         long services = 0;
         for (Peer.Service service : servicesList) {
             services |= service.getCode();
@@ -330,6 +344,7 @@ public final class Peers {
         pushThreshold = Nxt.getIntProperty("nxt.pushThreshold");
         pullThreshold = Nxt.getIntProperty("nxt.pullThreshold");
         useWebSockets = Nxt.getBooleanProperty("nxt.useWebSockets");
+        useBinaryMessages = Nxt.getBooleanProperty("nxt.useBinaryPeerMessages");
         webSocketIdleTimeout = Nxt.getIntProperty("nxt.webSocketIdleTimeout");
         isGzipEnabled = Nxt.getBooleanProperty("nxt.enablePeerServerGZIPFilter");
         blacklistingPeriod = Nxt.getIntProperty("nxt.blacklistingPeriod") / 1000;
@@ -1002,7 +1017,30 @@ public final class Peers {
     public static void sendToSomePeers(Block block) {
         JSONObject request = block.getJSONObject();
         request.put("requestType", "processBlock");
-        sendToSomePeers(request);
+        JSONObject binaryRequest = new JSONObject();
+        binaryRequest.put("requestType", "processBlock");
+        binaryRequest.put("previousBlock", Long.toUnsignedString(block.getPreviousBlockId()));
+        binaryRequest.put("timestamp", block.getTimestamp());
+        binaryRequest.put("block", BinaryMessage.block(block));
+        JSONStreamAware blockRequest = BinaryMessage.prepareRequest(request, binaryRequest);
+        if (!useCompactBlocks || block.getTransactions().isEmpty()) {
+            sendToSomePeers(blockRequest);
+            return;
+        }
+        //
+        // Peers which support compact blocks are sent the block header and the transaction ids
+        // and rebuild the block using the transactions in their unconfirmed pool
+        //
+        JSONObject compactRequest = new JSONObject();
+        compactRequest.put("requestType", "processBlock");
+        compactRequest.put("previousBlock", Long.toUnsignedString(block.getPreviousBlockId()));
+        compactRequest.put("timestamp", block.getTimestamp());
+        compactRequest.put("blockHeader", BinaryMessage.blockHeader(block));
+        JSONArray transactionIds = new JSONArray();
+        block.getTransactions().forEach(transaction -> transactionIds.add(transaction.getStringId()));
+        compactRequest.put("transactionIds", transactionIds);
+        JSONStreamAware compactBlockRequest = BinaryMessage.prepareRequest(compactRequest, compactRequest);
+        sendToSomePeersWith(peer -> peer.providesService(Peer.Service.COMPACT_BLOCKS) ? compactBlockRequest : blockRequest, null);
     }
 
     private static final int sendTransactionsBatchSize = 10;
@@ -1012,20 +1050,59 @@ public final class Peers {
         while (nextBatchStart < transactions.size()) {
             JSONObject request = new JSONObject();
             JSONArray transactionsData = new JSONArray();
+            List<Long> transactionIds = new ArrayList<>();
             for (int i = nextBatchStart; i < nextBatchStart + sendTransactionsBatchSize && i < transactions.size(); i++) {
-                transactionsData.add(transactions.get(i).getJSONObject());
+                transactionsData.add(BinaryMessage.transaction(transactions.get(i)));
+                transactionIds.add(transactions.get(i).getId());
             }
             request.put("requestType", "processTransactions");
             request.put("transactions", transactionsData);
-            sendToSomePeers(request);
+            JSONStreamAware transactionsRequest = BinaryMessage.prepareRequest(request, request);
+            //
+            // Peers which support transaction inventory are sent the identifiers of the transactions
+            // they don't already know about and then request the transactions they are missing.
+            // The transactions are known to the peer once it has accepted the request.
+            //
+            sendToSomePeersWith(peer -> {
+                if (!useTransactionInventory || !peer.providesService(Peer.Service.TRANSACTION_INVENTORY)) {
+                    return transactionsRequest;
+                }
+                JSONArray announcedIds = new JSONArray();
+                transactionIds.forEach(transactionId -> {
+                    if (!((PeerImpl)peer).isKnownTransaction(transactionId)) {
+                        announcedIds.add(Long.toUnsignedString(transactionId));
+                    }
+                });
+                if (announcedIds.isEmpty()) {
+                    return null;
+                }
+                JSONObject announceRequest = new JSONObject();
+                announceRequest.put("requestType", "announceTransactions");
+                announceRequest.put("transactionIds", announcedIds);
+                return JSON.prepareRequest(announceRequest);
+            }, peer -> {
+                if (useTransactionInventory && peer.providesService(Peer.Service.TRANSACTION_INVENTORY)) {
+                    transactionIds.forEach(((PeerImpl)peer)::addKnownTransaction);
+                }
+            });
             nextBatchStart += sendTransactionsBatchSize;
         }
     }
 
-    private static void sendToSomePeers(final JSONObject request) {
-        sendingService.submit(() -> {
-            final JSONStreamAware jsonRequest = JSON.prepareRequest(request);
+    private static void sendToSomePeers(final JSONStreamAware jsonRequest) {
+        sendToSomePeersWith(peer -> jsonRequest, null);
+    }
 
+    /**
+     * Send a request to some peers
+     *
+     * @param   requestFunction     Returns the request for a peer or null if the peer already
+     *                              has the information being sent
+     * @param   successHandler      Called for each peer which accepted the request or null
+     */
+    private static void sendToSomePeersWith(final Function<Peer, JSONStreamAware> requestFunction,
+                                            final Consumer<Peer> successHandler) {
+        sendingService.submit(() -> {
             int successful = 0;
             List<Future<JSONObject>> expectedResponses = new ArrayList<>();
             for (final Peer peer : peers.values()) {
@@ -1036,8 +1113,19 @@ public final class Peers {
 
                 if (!peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null
                         && peer.getBlockchainState() != Peer.BlockchainState.LIGHT_CLIENT) {
-                    Future<JSONObject> futureResponse = peersService.submit(() -> peer.send(jsonRequest));
-                    expectedResponses.add(futureResponse);
+                    JSONStreamAware jsonRequest = requestFunction.apply(peer);
+                    if (jsonRequest == null) {
+                        successful += 1;
+                    } else {
+                        Future<JSONObject> futureResponse = peersService.submit(() -> {
+                            JSONObject response = peer.send(jsonRequest);
+                            if (successHandler != null && response != null && response.get("error") == null) {
+                                successHandler.accept(peer);
+                            }
+                            return response;
+                        });
+                        expectedResponses.add(futureResponse);
+                    }
                 }
                 if (expectedResponses.size() >= Peers.sendToPeersLimit - successful) {
                     for (Future<JSONObject> future : expectedResponses) {
@@ -19,11 +19,17 @@ package nxt.peer;
 import nxt.Block;
 import nxt.Nxt;
 import nxt.NxtException;
+import nxt.TransactionProcessor;
+import nxt.crypto.Crypto;
 import nxt.util.Convert;
 import nxt.util.JSON;
+import nxt.util.Logger;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
+import java.util.List;
+
 final class ProcessBlock extends PeerServlet.PeerRequestHandler {
 
     static final ProcessBlock instance = new ProcessBlock();
@@ -39,6 +45,9 @@ final class ProcessBlock extends PeerServlet.PeerRequestHandler {
                         && lastBlock.getTimestamp() > Convert.parseLong(request.get("timestamp")))) {
             Peers.peersService.submit(() -> {
                 try {
+                    if (request.get("transactionIds") != null && !getMissingTransactions(request, peer)) {
+                        return;
+                    }
                     Nxt.getBlockchainProcessor().processPeerBlock(request);
                 } catch (NxtException | RuntimeException e) {
                     if (peer != null) {
@@ -50,6 +59,43 @@ final class ProcessBlock extends PeerServlet.PeerRequestHandler {
         return JSON.emptyJSON;
     }
 
+    /**
+     * Request the compact block transactions which are not in the unconfirmed pool from the peer
+     * and add them to the request
+     *
+     * @param   request             Compact block request
+     * @param   peer                Peer sending the block
+     * @return                      TRUE if the missing transactions were added to the request
+     */
+    private static boolean getMissingTransactions(JSONObject request, Peer peer) {
+        TransactionProcessor transactionProcessor = Nxt.getTransactionProcessor();
+        JSONArray missingIds = new JSONArray();
+        for (Object transactionId : (List)request.get("transactionIds")) {
+            if (transactionProcessor.getUnconfirmedTransaction(Long.parseUnsignedLong((String)transactionId)) == null) {
+                missingIds.add(transactionId);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return true;
+        }
+        if (peer == null) {
+            return false;
+        }
+        Object blockHeader = request.get("blockHeader");
+        byte[] blockBytes = blockHeader instanceof byte[] ? (byte[])blockHeader : Convert.parseHexString((String)blockHeader);
+        JSONObject transactionsRequest = new JSONObject();
+        transactionsRequest.put("requestType", "getBlockTransactions");
+        transactionsRequest.put("blockId", Long.toUnsignedString(Convert.fullHashToId(Crypto.sha256().digest(blockBytes))));
+        transactionsRequest.put("transactionIds", missingIds);
+        JSONObject response = peer.send(JSON.prepareRequest(transactionsRequest), Peers.MAX_MESSAGE_SIZE);
+        if (response == null || response.get("transactions") == null) {
+            Logger.logDebugMessage("Unable to get " + missingIds.size() + " compact block transactions from peer " + peer.getHost());
+            return false;
+        }
+        request.put("transactions", response.get("transactions"));
+        return true;
+    }
+
     @Override
     boolean rejectWhileDownloading() {
         return true;
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous event subscriber
+ *
+ * The listeners created by a subscriber add their events to a bounded queue instead of being called
+ * by the thread notifying the event, so that slow listeners do not delay block processing.  The events
+ * of all the listeners of a subscriber are delivered one at a time, in the order they were notified,
+ * using a shared dispatcher thread pool.
+ *
+ * If the queue is full, the events of a listener are discarded, and its discard handler is called if it has one,
+ * while the events of a blocking listener wait until there is room in the queue.  A filter can be used to queue only the events the listener
+ * is interested in.  For example:
+ * <pre>
+ *     AsyncSubscriber subscriber = new AsyncSubscriber("Demo", 100);
+ *     Account.addListener(subscriber.listener(account -&gt; account.getId() == accountId,
+ *             account -&gt; Logger.logInfoMessage("Balance " + account.getBalanceNQT())), Account.Event.BALANCE);
+ *     Nxt.getBlockchainProcessor().addListener(subscriber.blockingListener(
+ *             block -&gt; Logger.logInfoMessage("Block " + block.getStringId())), BlockchainProcessor.Event.BLOCK_PUSHED);
+ * </pre>
+ *
+ * Listeners which are part of the consensus or which need the state at the time of the event,
+ * such as the database transaction of the notifying thread, must not be asynchronous.
+ */
+public final class AsyncSubscriber {
+
+    /** Dispatcher thread pool shared by all subscribers */
+    private static final ExecutorService dispatcher = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "AsyncSubscriber");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Subscriber name */
+    private final String name;
+
+    /** Pending events */
+    private final BlockingQueue<Runnable> queue;
+
+    /** Dispatch has been scheduled */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Number of discarded events */
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    /**
+     * Create an asynchronous subscriber
+     *
+     * @param   name                Subscriber name used in log messages
+     * @param   capacity            Maximum number of pending events
+     */
+    public AsyncSubscriber(String name, int capacity) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Create an asynchronous listener for this subscriber
+     *
+     * The returned listener must be used to remove the listener
+     *
+     * @param   listener            Listener called by the dispatcher
+     * @return                      Listener to register for the events
+     */
+    public <T> Listener<T> listener(Listener<T> listener) {
+        return t -> submit(() -> listener.notify(t), false);
+    }
+
+    /**
+     * Create an asynchronous listener for this subscriber which only queues the accepted events
+     *
+     * The filter is called by the thread notifying the event.  The returned listener must be used
+     * to remove the listener
+     *
+     * @param   filter              Event filter
+     * @param   listener            Listener called by the dispatcher
+     * @return                      Listener to register for the events
+     */
+    public <T> Listener<T> listener(Filter<T> filter, Listener<T> listener) {
+        return t -> {
+            if (filter.ok(t)) {
+                submit(() -> listener.notify(t), false);
+            }
+        };
+    }
+
+    /**
+     * Create an asynchronous listener for this subscriber with a handler for the discarded events
+     *
+     * The discard handler is called by the thread notifying the event if the queue is full.  The returned
+     * listener must be used to remove the listener
+     *
+     * @param   listener            Listener called by the dispatcher
+     * @param   discardHandler      Handler called when an event is discarded
+     * @return                      Listener to register for the events
+     */
+    public <T> Listener<T> listener(Listener<T> listener, Runnable discardHandler) {
+        return t -> {
+            if (!submit(() -> listener.notify(t), false)) {
+                discardHandler.run();
+            }
+        };
+    }
+
+    /**
+     * Create an asynchronous listener for this subscriber whose events are never discarded
+     *
+     * The thread notifying the event waits if the queue is full.  The returned listener must be used
+     * to remove the listener
+     *
+     * @param   listener            Listener called by the dispatcher
+     * @return                      Listener to register for the events
+     */
+    public <T> Listener<T> blockingListener(Listener<T> listener) {
+        return t -> submit(() -> listener.notify(t), true);
+    }
+
+    /**
+     * Return the number of discarded events
+     *
+     * @return                      Number of events discarded because the queue was full
+     */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    private boolean submit(Runnable event, boolean wait) {
+        boolean added = queue.offer(event);
+        if (!added && wait) {
+            try {
+                queue.put(event);
+                added = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (added) {
+            schedule();
+        } else if (discardedCount.getAndIncrement() % 1000 == 0) {
+            Logger.logWarningMessage(name + " event queue is full, " + discardedCount.get() + " events discarded");
+        }
+        return added;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        Runnable event;
+        while ((event = queue.poll()) != null) {
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                Logger.logErrorMessage(name + " event listener failed", e);
+            }
+        }
+        scheduled.set(false);
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+}
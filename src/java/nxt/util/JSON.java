@@ -99,19 +99,53 @@ public final class JSON {
         }
         if (json instanceof Map) {
             StringBuilder sb = new StringBuilder(1024);
-            encodeObject((Map)json, sb);
-            writer.write(sb.toString());
+            writeObject((Map)json, sb, writer);
+            writer.append(sb);
             return;
         }
         if (json instanceof List) {
             StringBuilder sb = new StringBuilder(1024);
             encodeArray((List)json, sb);
-            writer.write(sb.toString());
+            writer.append(sb);
             return;
         }
         json.writeJSONString(writer);
     }
 
+    /**
+     * Write a map.  Map values which are JSONEncodedArray instances are written directly to the writer
+     * instead of being copied to the string builder.
+     *
+     * @param   map                             Map
+     * @param   sb                              String builder
+     * @param   writer                          Writer
+     * @throws  IOException                     I/O error occurred
+     */
+    private static void writeObject(Map<?, ?> map, StringBuilder sb, Writer writer) throws IOException {
+        Set<Map.Entry<Object, Object>> entries = (Set)map.entrySet();
+        boolean firstElement = true;
+        sb.append('{');
+        for (Map.Entry<Object, Object> entry : entries) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (key == null)
+                continue;
+            if (firstElement)
+                firstElement = false;
+            else
+                sb.append(',');
+            sb.append('\"').append(key.toString()).append("\":");
+            if (value instanceof JSONEncodedArray) {
+                writer.append(sb);
+                sb.setLength(0);
+                ((JSONEncodedArray)value).writeJSONString(writer);
+            } else {
+                encodeValue(value, sb);
+            }
+        }
+        sb.append('}');
+    }
+
     /**
      * Create a formatted string from a list
      *
@@ -193,6 +227,8 @@ public final class JSON {
             encodeObject((Map<Object, Object>)value, sb);
         } else if (value instanceof List) {
             encodeArray((List<Object>)value, sb);
+        } else if (value instanceof JSONAware) {
+            sb.append(((JSONAware)value).toJSONString());
         } else {
             sb.append('\"');
             escapeString(value.toString(), sb);
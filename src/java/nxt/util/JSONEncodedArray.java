@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.util;
+
+import org.json.simple.JSONAware;
+import org.json.simple.JSONStreamAware;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * JSON array which is encoded as the elements are added
+ *
+ * Each element is converted to JSON text when it is added, so a large result does not need to be held as a tree
+ * of JSON objects until the response is written.  The encoded text is written directly to the response writer
+ * when the array is a value of the response object.
+ */
+public final class JSONEncodedArray implements JSONAware, JSONStreamAware {
+
+    /** Encoded elements */
+    private final StringBuilder sb = new StringBuilder(1024);
+
+    /** Number of elements */
+    private int size;
+
+    /**
+     * Add an element
+     *
+     * @param   element                 JSON object
+     */
+    public void add(Map<?, ?> element) {
+        if (size > 0) {
+            sb.append(',');
+        }
+        JSON.encodeObject(element, sb);
+        size++;
+    }
+
+    /**
+     * Return the number of elements
+     *
+     * @return                          Number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the JSON text
+     *
+     * @return                          JSON text
+     */
+    @Override
+    public String toJSONString() {
+        return new StringBuilder(sb.length() + 2).append('[').append(sb).append(']').toString();
+    }
+
+    /**
+     * Write the JSON text
+     *
+     * @param   out                     Writer
+     * @throws  IOException             I/O error occurred
+     */
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        out.write('[');
+        out.append(sb);
+        out.write(']');
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.db.DerivedDbTable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Base class for tests of in-memory state kept for the derived tables.  The tests make their changes within
+ * empty blocks pushed on top of the current blockchain, and the blocks are popped off again after the tests.
+ */
+public abstract class AbstractFakeBlockTest extends AbstractBlockchainTest {
+
+    protected static final Random random = new Random(1);
+    protected static int startHeight;
+    private static BlockImpl previousBlock;
+    private static boolean isNxtInitted = false;
+
+    @BeforeClass
+    public static void initFakeBlocks() {
+        if (!isNxtInitted && !BlockchainTest.isNxtInitted) {
+            initNxt();
+            isNxtInitted = true;
+        }
+        startHeight = blockchain.getHeight();
+    }
+
+    private static void initNxt() {
+        Properties properties = newTestProperties();
+        properties.setProperty("nxt.isTestnet", "true");
+        properties.setProperty("nxt.isOffline", "true");
+        properties.setProperty("nxt.disableProcessTransactionsThread", "true");
+        properties.setProperty("nxt.testnetGuaranteedBalanceConfirmations", "20");
+        init(properties);
+    }
+
+    @AfterClass
+    public static void popFakeBlocks() {
+        popTo(startHeight);
+        shutdown();
+    }
+
+    /**
+     * Begin a database transaction and push an empty block
+     */
+    protected static BlockImpl beginBlock() {
+        blockchain.writeLock();
+        Db.db.beginTransaction();
+        previousBlock = blockchain.getLastBlock();
+        BlockImpl block = new BlockImpl(3, previousBlock.getTimestamp() + 1, previousBlock.getId(), 0, 0, 0, new byte[32],
+                1, new byte[32], new byte[64], new byte[32], BigInteger.ZERO, 1, 0, previousBlock.getHeight() + 1,
+                random.nextLong(), Collections.emptyList());
+        try (Connection con = Db.db.getConnection()) {
+            BlockDb.saveBlock(con, block);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        blockchain.setLastBlock(block);
+        return block;
+    }
+
+    /**
+     * Commit the block started by beginBlock
+     */
+    protected static void commitBlock() {
+        try {
+            Db.db.commitTransaction();
+        } finally {
+            Db.db.endTransaction();
+            blockchain.writeUnlock();
+        }
+    }
+
+    /**
+     * Roll back the block started by beginBlock
+     */
+    protected static void abortBlock() {
+        try {
+            Db.db.rollbackTransaction();
+            blockchain.setLastBlock(previousBlock);
+        } finally {
+            Db.db.endTransaction();
+            blockchain.writeUnlock();
+        }
+    }
+
+    /**
+     * Push blocks making changes, and check the state after each step.  The check is called with "pending"
+     * while the block is open, then with "aborted" or "committed", and with "popped" after blocks are popped off.
+     * <p>
+     * The second block of every six is aborted, and the other blocks are aborted at random.  If popCount is not 0,
+     * that many blocks are popped off after the block half way through, and the following block is aborted.
+     *
+     * @param   numberOfBlocks      Number of blocks, including the aborted blocks
+     * @param   popCount            Number of blocks popped off half way through
+     * @param   changes             Changes made within each block
+     * @param   check               State check
+     */
+    protected static void pushBlocks(int numberOfBlocks, int popCount, Consumer<BlockImpl> changes, Consumer<String> check) {
+        int popBlock = popCount > 0 ? numberOfBlocks / 2 : -1;
+        for (int i = 0; i < numberOfBlocks; i++) {
+            changes.accept(beginBlock());
+            check.accept("pending");
+            if (i % 6 == 1 || (popBlock >= 0 && i == popBlock + 1) || random.nextInt(8) == 0) {
+                abortBlock();
+                check.accept("aborted");
+            } else {
+                commitBlock();
+                check.accept("committed");
+            }
+            if (i == popBlock) {
+                popTo(blockchain.getHeight() - popCount);
+                check.accept("popped");
+            }
+        }
+    }
+
+    /**
+     * Pop off the blocks above a height and roll back the derived tables
+     */
+    protected static void popTo(int height) {
+        if (blockchain.getHeight() <= height) {
+            return;
+        }
+        blockchain.writeLock();
+        try {
+            Db.db.beginTransaction();
+            blockchain.setLastBlock(BlockDb.deleteBlocksFrom(blockchain.getBlockAtHeight(height + 1).getId()));
+            for (DerivedDbTable table : blockchainProcessor.getDerivedTables()) {
+                table.rollback(height);
+            }
+            Db.db.clearCache();
+            Db.db.commitTransaction();
+        } finally {
+            Db.db.endTransaction();
+            blockchain.writeUnlock();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.AccountLedger.LedgerEvent;
+import nxt.db.DerivedDbTable;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class GuaranteedBalanceTest extends AbstractFakeBlockTest {
+
+    private static final long[] accountIds = new long[5];
+    private static DerivedDbTable guaranteedBalanceTable;
+
+    @BeforeClass
+    public static void initAccounts() {
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = random.nextLong();
+        }
+        for (DerivedDbTable table : blockchainProcessor.getDerivedTables()) {
+            if (table.toString().equals("account_guaranteed_balance")) {
+                guaranteedBalanceTable = table;
+            }
+        }
+        Assert.assertNotNull(guaranteedBalanceTable);
+    }
+
+    /**
+     * Change the balances in blocks which are aborted, committed or popped off, and trim the guaranteed balances
+     * every third block, including blocks which are then aborted
+     */
+    @Test
+    public void guaranteedBalances() {
+        pushBlocks(Constants.GUARANTEED_BALANCE_CONFIRMATIONS + 30, 7, block -> {
+            for (long accountId : accountIds) {
+                if (random.nextInt(3) > 0) {
+                    Account account = Account.addOrGetAccount(accountId);
+                    long amountNQT = random.nextInt(4) == 0 ? -account.getBalanceNQT() / 2 : 1 + random.nextInt(1000);
+                    account.addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ORDINARY_PAYMENT, 0, amountNQT);
+                }
+            }
+            if (block.getHeight() % 3 == 0) {
+                guaranteedBalanceTable.trim(block.getHeight());
+            }
+        }, GuaranteedBalanceTest::verify);
+    }
+
+    private static void verify(String state) {
+        int height = blockchain.getHeight();
+        int[] confirmations = {0, 1, 2, 5, Constants.GUARANTEED_BALANCE_CONFIRMATIONS};
+        for (long accountId : accountIds) {
+            Account account = Account.getAccount(accountId);
+            if (account == null) {
+                continue;
+            }
+            for (int currentHeight = height; currentHeight >= height - 3 && currentHeight > startHeight; currentHeight--) {
+                for (int numberOfConfirmations : confirmations) {
+                    int fromHeight = currentHeight - numberOfConfirmations;
+                    long expected = Math.max(account.getBalanceNQT() - selectAdditions(accountId, fromHeight, currentHeight), 0);
+                    Assert.assertEquals(state + " block at height " + height + ", confirmations " + numberOfConfirmations
+                                    + " at height " + currentHeight, expected,
+                            account.getGuaranteedBalanceNQT(numberOfConfirmations, currentHeight));
+                }
+            }
+        }
+    }
+
+    private static long selectAdditions(long accountId, int fromHeight, int toHeight) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT SUM (additions) AS additions "
+                     + "FROM account_guaranteed_balance WHERE account_id = ? AND height > ? AND height <= ?")) {
+            pstmt.setLong(1, accountId);
+            pstmt.setInt(2, fromHeight);
+            pstmt.setInt(3, toHeight);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("additions") : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class IdIndexTest {
+
+    private static final long[] specialIds = {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 32, -(1L << 32)};
+
+    @Test
+    public void bloomFilter() {
+        Random random = new Random(1);
+        int capacity = 100000;
+        IdIndex.BloomFilter filter = new IdIndex.BloomFilter(capacity);
+        Set<Long> ids = new HashSet<>();
+        for (long id : specialIds) {
+            ids.add(id);
+        }
+        while (ids.size() < capacity) {
+            ids.add(random.nextLong());
+        }
+        ids.forEach(filter::add);
+        for (long id : ids) {
+            Assert.assertTrue("Added id " + id, filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        int checks = 0;
+        while (checks < capacity) {
+            long id = random.nextLong();
+            if (!ids.contains(id)) {
+                checks++;
+                if (filter.mightContain(id)) {
+                    falsePositives++;
+                }
+            }
+        }
+        // 10 bits per identifier and 7 hash functions give a false positive rate below 1% at capacity
+        Assert.assertTrue("False positives " + falsePositives, falsePositives < checks / 50);
+    }
+
+    @Test
+    public void heightMap() {
+        Random random = new Random(2);
+        IdIndex.HeightMap heightMap = new IdIndex.HeightMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long id : specialIds) {
+            heightMap.put(id, 7);
+            expected.put(id, 7);
+        }
+        for (int i = 0; i < 10000; i++) {
+            long id = random.nextInt(3) == 0 ? random.nextInt(20000) : random.nextLong();
+            int height = random.nextInt(1000);
+            heightMap.put(id, height);
+            expected.put(id, height);
+            if (i % 1000 == 0) {
+                verify(expected, heightMap, random);
+            }
+        }
+        verify(expected, heightMap, random);
+    }
+
+    private static void verify(Map<Long, Integer> expected, IdIndex.HeightMap heightMap, Random random) {
+        expected.forEach((id, height) -> Assert.assertEquals("Height of id " + id, (int)height, heightMap.get(id)));
+        for (int i = 0; i < 1000; i++) {
+            long id = random.nextLong();
+            if (!expected.containsKey(id)) {
+                Assert.assertEquals("Missing id " + id, -1, heightMap.get(id));
+            }
+        }
+        Map<Long, Integer> actual = new HashMap<>();
+        heightMap.forEach((id, height) -> Assert.assertNull("Duplicate id " + id, actual.put(id, height)));
+        Assert.assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.crypto.Crypto;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+
+public class PeerBytesTest {
+
+    private static final String secretPhrase = "hope peace happen touch easy pretend worthless talk them indeed wheel state";
+
+    private static TransactionImpl newTransaction() throws NxtException.NotValidException {
+        return new TransactionImpl.BuilderImpl((byte)1, Crypto.getPublicKey(secretPhrase), Constants.ONE_NXT, Constants.ONE_NXT,
+                (short)1440, Attachment.ORDINARY_PAYMENT)
+                .recipientId(12345)
+                .timestamp(20000000)
+                .ecBlockHeight(0)
+                .ecBlockId(0)
+                .appendix(new Appendix.PrunablePlainMessage("prunable message"))
+                .build(secretPhrase);
+    }
+
+    private static BlockImpl newBlock(TransactionImpl transaction) {
+        return new BlockImpl(3, 20000100, 1L, transaction.getAmountNQT(), transaction.getFeeNQT(), transaction.getFullSize(),
+                Crypto.sha256().digest(transaction.bytes()), Crypto.getPublicKey(secretPhrase), new byte[32], new byte[32],
+                Collections.singletonList(transaction), secretPhrase);
+    }
+
+    @Test
+    public void transactionRoundTrip() throws Exception {
+        TransactionImpl transaction = newTransaction();
+        TransactionImpl parsed = TransactionImpl.parseTransaction(transaction.getPeerBytes());
+        Assert.assertEquals(transaction.getId(), parsed.getId());
+        Assert.assertEquals(transaction.getFullHash(), parsed.getFullHash());
+        Assert.assertEquals(transaction.getPrunableAttachmentJSON(), parsed.getPrunableAttachmentJSON());
+        Assert.assertArrayEquals(transaction.getPeerBytes(), parsed.getPeerBytes());
+    }
+
+    @Test
+    public void blockRoundTrip() throws Exception {
+        TransactionImpl transaction = newTransaction();
+        BlockImpl block = newBlock(transaction);
+        BlockImpl parsed = BlockImpl.parseBlock(block.peerBytes());
+        Assert.assertEquals(block.getId(), parsed.getId());
+        Assert.assertEquals(1, parsed.getTransactions().size());
+        Assert.assertEquals(transaction.getId(), parsed.getTransactions().get(0).getId());
+        Assert.assertArrayEquals(block.peerBytes(), parsed.peerBytes());
+    }
+
+    @Test
+    public void invalidTransactionLengths() throws Exception {
+        byte[] transactionBytes = newTransaction().bytes();
+        assertInvalidTransaction(buffer(8).putInt(-1).putInt(0).array());
+        assertInvalidTransaction(buffer(8).putInt(Integer.MAX_VALUE).putInt(0).array());
+        assertInvalidTransaction(buffer(8 + transactionBytes.length).putInt(transactionBytes.length).put(transactionBytes)
+                .putInt(Integer.MAX_VALUE).array());
+        assertInvalidTransaction(buffer(8 + transactionBytes.length).putInt(transactionBytes.length).put(transactionBytes)
+                .putInt(-1).array());
+        assertInvalidTransaction(buffer(9 + transactionBytes.length).putInt(transactionBytes.length).put(transactionBytes)
+                .putInt(0).array());
+    }
+
+    @Test
+    public void invalidBlockLengths() throws Exception {
+        TransactionImpl transaction = newTransaction();
+        byte[] blockBytes = newBlock(transaction).getBytes();
+        byte[] transactionData = transaction.getPeerBytes();
+        assertInvalidBlock(buffer(8).putInt(-1).putInt(0).array());
+        assertInvalidBlock(buffer(8).putInt(Integer.MAX_VALUE).putInt(0).array());
+        assertInvalidBlock(buffer(8 + blockBytes.length).putInt(blockBytes.length).put(blockBytes).putInt(-1).array());
+        assertInvalidBlock(buffer(8 + blockBytes.length).putInt(blockBytes.length).put(blockBytes)
+                .putInt(Constants.MAX_NUMBER_OF_TRANSACTIONS + 1).array());
+        assertInvalidBlock(buffer(12 + blockBytes.length).putInt(blockBytes.length).put(blockBytes).putInt(1)
+                .putInt(Integer.MAX_VALUE).array());
+        assertInvalidBlock(buffer(12 + blockBytes.length + transactionData.length).putInt(blockBytes.length).put(blockBytes)
+                .putInt(2).putInt(transactionData.length).put(transactionData).array());
+        assertInvalidBlock(buffer(13 + blockBytes.length + transactionData.length).putInt(blockBytes.length).put(blockBytes)
+                .putInt(1).putInt(transactionData.length).put(transactionData).array());
+    }
+
+    private static ByteBuffer buffer(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void assertInvalidTransaction(byte[] transactionData) {
+        try {
+            TransactionImpl.parseTransaction(transactionData);
+            Assert.fail("Invalid transaction parsed");
+        } catch (NxtException.NotValidException|RuntimeException expected) {
+        }
+    }
+
+    private static void assertInvalidBlock(byte[] blockData) {
+        try {
+            BlockImpl.parseBlock(blockData);
+            Assert.fail("Invalid block parsed");
+        } catch (NxtException.NotValidException|RuntimeException expected) {
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.util.Convert;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class PhasingPollIndexTest extends AbstractFakeBlockTest {
+
+    private final byte[][] linkedFullHashes = new byte[6][];
+    /** Ids of all the polls added, including the polls in blocks which have been aborted or popped off */
+    private final List<Long> pollIds = new ArrayList<>();
+    private int indexLookups;
+
+    /**
+     * Add phasing polls and poll results in blocks which are aborted, committed or popped off, and check that
+     * the lookups answered by the index match the database queries they replace
+     */
+    @Test
+    public void phasingPollIndex() {
+        for (int i = 0; i < linkedFullHashes.length; i++) {
+            linkedFullHashes[i] = new byte[32];
+            random.nextBytes(linkedFullHashes[i]);
+        }
+        pushBlocks(40, 6, block -> {
+            pollIds.addAll(addPolls(block));
+            for (int j = 0; j < 2; j++) {
+                long id = pollIds.get(random.nextInt(pollIds.size()));
+                PhasingPoll poll = PhasingPoll.getPoll(id);
+                if (poll != null && !hasResult(id)) {
+                    poll.finish(1);
+                }
+            }
+        }, this::verify);
+        Assert.assertTrue("Index lookups " + indexLookups, indexLookups > 0);
+    }
+
+    /**
+     * Save three transactions in the block and add a phasing poll for each of them
+     */
+    private List<Long> addPolls(BlockImpl block) {
+        List<Long> ids = new ArrayList<>();
+        int height = block.getHeight();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("INSERT INTO transaction (id, deadline, amount, fee, full_hash, "
+                     + "height, block_id, signature, timestamp, type, subtype, sender_id, block_timestamp, "
+                     + "transaction_index, version) VALUES (?, 1, 0, 0, ?, ?, ?, ?, 0, 0, 0, 1, 0, ?, 1)")) {
+            for (short index = 2; index >= 0; index--) {
+                long id = random.nextLong();
+                byte[] fullHash = new byte[32];
+                random.nextBytes(fullHash);
+                pstmt.setLong(1, id);
+                pstmt.setBytes(2, fullHash);
+                pstmt.setInt(3, height);
+                pstmt.setLong(4, block.getId());
+                pstmt.setBytes(5, new byte[64]);
+                pstmt.setShort(6, index);
+                pstmt.executeUpdate();
+                TransactionDb.transactionIndex.add(id, height);
+                Set<Integer> linked = new TreeSet<>();
+                int linkedCount = random.nextInt(3);
+                while (linked.size() < linkedCount) {
+                    linked.add(random.nextInt(linkedFullHashes.length));
+                }
+                byte[][] fullHashes = new byte[linkedCount][];
+                int j = 0;
+                for (int k : linked) {
+                    fullHashes[j++] = linkedFullHashes[k];
+                }
+                PhasingPoll.addPoll(newTransaction(id, height, index), new Appendix.Phasing(height + 1 + random.nextInt(6),
+                        new PhasingParams((byte)0, 0, 1, 0, (byte)0, new long[0]), fullHashes, null, (byte)0));
+                ids.add(id);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return ids;
+    }
+
+    private void verify(String state) {
+        int height = blockchain.getHeight();
+        for (int finishHeight = height; finishHeight <= height + 8; finishHeight++) {
+            List<Long> expected = selectFinishingIds(finishHeight);
+            List<Long> indexIds = PhasingPoll.pollIndex.getFinishingIds(finishHeight);
+            if (indexIds != null) {
+                indexLookups++;
+                Assert.assertEquals(state + " finishing at " + finishHeight, expected, indexIds);
+            }
+            List<Long> transactionIds = new ArrayList<>();
+            PhasingPoll.getFinishingTransactions(finishHeight).forEach(transaction -> transactionIds.add(transaction.getId()));
+            Assert.assertEquals(state + " finishing transactions at " + finishHeight, expected, transactionIds);
+        }
+        for (byte[] linkedFullHash : linkedFullHashes) {
+            List<Long> indexIds = PhasingPoll.pollIndex.getLinkedIds(linkedFullHash, height);
+            if (indexIds != null) {
+                indexLookups++;
+                Set<Long> expected = selectLinkedIds(linkedFullHash, height);
+                Assert.assertEquals(state + " linked", expected, new HashSet<>(indexIds));
+                Assert.assertEquals(state + " linked ids are unique", expected.size(), indexIds.size());
+            }
+        }
+        for (long id : pollIds) {
+            boolean hasResult = hasResult(id);
+            Assert.assertFalse(state + " no result for " + id, hasResult && PhasingPoll.pollIndex.hasNoResult(id));
+            Assert.assertEquals(state + " result for " + id, hasResult, PhasingPoll.getResult(id) != null);
+        }
+    }
+
+    private static List<Long> selectFinishingIds(int finishHeight) {
+        List<Long> ids = new ArrayList<>();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT transaction.id FROM transaction, phasing_poll "
+                     + "WHERE phasing_poll.id = transaction.id AND phasing_poll.finish_height = ? "
+                     + "ORDER BY transaction.height, transaction.transaction_index")) {
+            pstmt.setInt(1, finishHeight);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("id"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return ids;
+    }
+
+    private static Set<Long> selectLinkedIds(byte[] linkedFullHash, int height) {
+        Set<Long> ids = new HashSet<>();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT phasing_poll_linked_transaction.transaction_id "
+                     + "FROM phasing_poll_linked_transaction, phasing_poll "
+                     + "WHERE phasing_poll.id = phasing_poll_linked_transaction.transaction_id "
+                     + "AND phasing_poll_linked_transaction.linked_transaction_id = ? "
+                     + "AND phasing_poll_linked_transaction.linked_full_hash = ? "
+                     + "AND phasing_poll.finish_height > ?")) {
+            pstmt.setLong(1, Convert.fullHashToId(linkedFullHash));
+            pstmt.setBytes(2, linkedFullHash);
+            pstmt.setInt(3, height);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("transaction_id"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return ids;
+    }
+
+    private static boolean hasResult(long id) {
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT 1 FROM phasing_poll_result WHERE id = ?")) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Return a transaction with the properties used by the phasing poll index
+     */
+    private static Transaction newTransaction(long id, int height, short index) {
+        return (Transaction)Proxy.newProxyInstance(Transaction.class.getClassLoader(), new Class<?>[] {Transaction.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "getSenderId":
+                            return 1L;
+                        case "getHeight":
+                            return height;
+                        case "getIndex":
+                            return index;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
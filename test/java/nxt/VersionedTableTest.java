@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.AccountLedger.LedgerEvent;
+import nxt.db.DerivedDbTable;
+import nxt.db.VersionedTables;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class VersionedTableTest extends AbstractFakeBlockTest {
+
+    private static final String[][] tables = {{"account", "id"}, {"account_asset", "account_id", "asset_id"}};
+    private static final long[] accountIds = new long[8];
+    private static final long[] assetIds = new long[3];
+    private static String accountIdList;
+
+    @BeforeClass
+    public static void initAccounts() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = random.nextLong();
+            sb.append(i > 0 ? "," : "").append(accountIds[i]);
+        }
+        accountIdList = sb.toString();
+        for (int i = 0; i < assetIds.length; i++) {
+            assetIds[i] = random.nextLong();
+        }
+    }
+
+    @Test
+    public void rollback() {
+        for (int round = 0; round < 20; round++) {
+            int height = blockchain.getHeight();
+            pushBlocks(1 + random.nextInt(5), 0, block -> changeAccounts(), state -> {
+                if (!state.equals("pending")) {
+                    checkRollback(state, height);
+                }
+            });
+            List<List<String>> expected = new ArrayList<>();
+            for (String[] table : tables) {
+                expected.add(rollback(table, height, false));
+            }
+            popTo(height);
+            for (int i = 0; i < tables.length; i++) {
+                Assert.assertEquals(tables[i][0] + " pop off to " + height, expected.get(i), rows(tables[i]));
+            }
+            beginBlock();
+            changeAccounts();
+            commitBlock();
+        }
+    }
+
+    /**
+     * Pop off blocks written before the undo logs were started, as after a node restart
+     */
+    @Test
+    public void rollbackAfterRestart() {
+        int height = blockchain.getHeight();
+        for (int i = 0; i < 3; i++) {
+            beginBlock();
+            changeAccounts();
+            commitBlock();
+        }
+        List<List<String>> expected = new ArrayList<>();
+        for (String[] table : tables) {
+            expected.add(rollback(table, height, false));
+            VersionedTables.restartUndoLog(getTable(table[0]));
+        }
+        popTo(height);
+        for (int i = 0; i < tables.length; i++) {
+            Assert.assertEquals(tables[i][0] + " pop off to " + height + " after restart", expected.get(i), rows(tables[i]));
+        }
+    }
+
+    /**
+     * Roll back around the height at which the undo logs were started.  The rows written at the start height are
+     * in the logs, and the rows written below it, before the logs were started, are not.  Only half of the accounts
+     * are changed after the start, so that the keys of the other accounts are not in the logs.
+     */
+    @Test
+    public void rollbackToLogStart() {
+        beginBlock();
+        changeAccounts(accountIds.length);
+        commitBlock();
+        for (String[] table : tables) {
+            VersionedTables.restartUndoLog(getTable(table[0]));
+        }
+        beginBlock();
+        changeAccounts(accountIds.length / 2);
+        commitBlock();
+        int logStartHeight = blockchain.getHeight();
+        for (int i = 0; i < 2; i++) {
+            beginBlock();
+            changeAccounts(accountIds.length / 2);
+            commitBlock();
+        }
+        for (int height = logStartHeight; height >= logStartHeight - 2; height--) {
+            checkRollback("log start " + logStartHeight, height);
+        }
+        List<List<String>> expected = new ArrayList<>();
+        for (String[] table : tables) {
+            expected.add(rollback(table, logStartHeight - 2, false));
+        }
+        popTo(logStartHeight - 2);
+        for (int i = 0; i < tables.length; i++) {
+            Assert.assertEquals(tables[i][0] + " pop off below log start " + logStartHeight, expected.get(i), rows(tables[i]));
+        }
+    }
+
+    /**
+     * A trim in an aborted block must not remove keys from the undo log, as the trimmed rows are restored
+     */
+    @Test
+    public void abortedTrim() {
+        String[] table = tables[0];
+        DerivedDbTable accountTable = getTable(table[0]);
+        VersionedTables.restartUndoLog(accountTable);
+        for (int i = 0; i < 3; i++) {
+            beginBlock();
+            changeAccounts(accountIds.length);
+            commitBlock();
+        }
+        int trimHeight = blockchain.getHeight();
+        beginBlock();
+        accountTable.trim(trimHeight);
+        commitBlock();
+        for (int i = 0; i < 2; i++) {
+            beginBlock();
+            changeAccounts(accountIds.length);
+            commitBlock();
+        }
+        beginBlock();
+        changeAccounts(accountIds.length);
+        accountTable.trim(blockchain.getHeight() - 1);
+        abortBlock();
+        trimHeight = blockchain.getHeight();
+        Assert.assertEquals(table[0] + " trim at " + trimHeight + " after aborted trim",
+                trim(table, trimHeight, false), trim(table, trimHeight, true));
+    }
+
+    /**
+     * Only the account table is trimmed, account_asset is trimmed MAX_DIVIDEND_PAYMENT_ROLLBACK blocks below
+     * the trim height, which is never reached by the test blocks
+     */
+    @Test
+    public void trim() {
+        String[] table = tables[0];
+        int trimHeight = blockchain.getHeight();
+        for (int round = 0; round < 20; round++) {
+            pushBlocks(1 + random.nextInt(4), 0, block -> changeAccounts(), state -> {});
+            trimHeight = Math.max(trimHeight, blockchain.getHeight() - random.nextInt(3));
+            Assert.assertEquals(table[0] + " trim at " + trimHeight, trim(table, trimHeight, false), trim(table, trimHeight, true));
+            blockchain.writeLock();
+            try {
+                Db.db.beginTransaction();
+                getTable(table[0]).trim(trimHeight);
+                Db.db.commitTransaction();
+            } finally {
+                Db.db.endTransaction();
+                blockchain.writeUnlock();
+            }
+        }
+    }
+
+    /**
+     * The rows of the test accounts below the last trim height are no longer in the undo log, and are not
+     * removed when the blocks are popped off
+     */
+    @AfterClass
+    public static void deleteAccounts() {
+        blockchain.writeLock();
+        Db.db.beginTransaction();
+        try (Connection con = Db.db.getConnection();
+             Statement stmt = con.createStatement()) {
+            for (String[] table : tables) {
+                stmt.executeUpdate("DELETE FROM " + table[0] + " WHERE " + table[1] + " IN (" + accountIdList + ")");
+            }
+            Db.db.commitTransaction();
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        } finally {
+            Db.db.endTransaction();
+            blockchain.writeUnlock();
+        }
+    }
+
+    /**
+     * Trim a table within a database transaction which is then discarded, and return the rows of the test accounts
+     */
+    private static List<String> trim(String[] table, int height, boolean useUndoLog) {
+        blockchain.writeLock();
+        try {
+            Db.db.beginTransaction();
+            if (useUndoLog) {
+                getTable(table[0]).trim(height);
+            } else {
+                VersionedTables.trim(table[0], height, Arrays.copyOfRange(table, 1, table.length));
+            }
+            return rows(table);
+        } finally {
+            Db.db.rollbackTransaction();
+            Db.db.endTransaction();
+            blockchain.writeUnlock();
+        }
+    }
+
+    /**
+     * Roll back a table within a database transaction which is then discarded, and return the rows of the test accounts
+     */
+    private static List<String> rollback(String[] table, int height, boolean useUndoLog) {
+        blockchain.writeLock();
+        try {
+            Db.db.beginTransaction();
+            if (useUndoLog) {
+                getTable(table[0]).rollback(height);
+            } else {
+                VersionedTables.rollback(table[0], height, Arrays.copyOfRange(table, 1, table.length));
+            }
+            return rows(table);
+        } finally {
+            Db.db.rollbackTransaction();
+            Db.db.endTransaction();
+            blockchain.writeUnlock();
+        }
+    }
+
+    /**
+     * Check that rolling back the tables using the undo logs removes the same rows as the full table scan
+     */
+    private static void checkRollback(String state, int height) {
+        for (String[] table : tables) {
+            Assert.assertEquals(state + " " + table[0] + " rollback to " + height,
+                    rollback(table, height, false), rollback(table, height, true));
+        }
+    }
+
+    private static DerivedDbTable getTable(String name) {
+        for (DerivedDbTable table : blockchainProcessor.getDerivedTables()) {
+            if (table.toString().equals(name)) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("Table " + name + " not found");
+    }
+
+    private static void changeAccounts() {
+        for (long accountId : accountIds) {
+            if (random.nextInt(3) == 0) {
+                continue;
+            }
+            Account account = Account.addOrGetAccount(accountId);
+            long amountNQT = random.nextBoolean() ? 1 + random.nextInt(1000) : -account.getBalanceNQT() / 2;
+            account.addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ORDINARY_PAYMENT, 0, amountNQT);
+            long assetId = assetIds[random.nextInt(assetIds.length)];
+            long quantityQNT = random.nextBoolean() ? 1 + random.nextInt(1000) : -account.getAssetBalanceQNT(assetId);
+            account.addToAssetAndUnconfirmedAssetBalanceQNT(LedgerEvent.ASSET_TRANSFER, 0, assetId, quantityQNT);
+        }
+    }
+
+    /**
+     * Change the balances of the first test accounts
+     */
+    private static void changeAccounts(int numberOfAccounts) {
+        for (int i = 0; i < numberOfAccounts; i++) {
+            Account account = Account.addOrGetAccount(accountIds[i]);
+            account.addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ORDINARY_PAYMENT, 0, 1);
+            account.addToAssetAndUnconfirmedAssetBalanceQNT(LedgerEvent.ASSET_TRANSFER, 0, assetIds[0], 1);
+        }
+    }
+
+    /**
+     * Return the rows of the test accounts, without the db_id column
+     */
+    private static List<String> rows(String[] table) {
+        List<String> rows = new ArrayList<>();
+        try (Connection con = Db.db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table[0] + " WHERE " + table[1]
+                     + " IN (" + accountIdList + ") ORDER BY "
+                     + String.join(", ", Arrays.copyOfRange(table, 1, table.length)) + ", height");
+             ResultSet rs = pstmt.executeQuery()) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            while (rs.next()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    if (!metaData.getColumnName(i).equalsIgnoreCase("db_id")) {
+                        sb.append(metaData.getColumnName(i)).append('=').append(rs.getString(i)).append(' ');
+                    }
+                }
+                rows.add(sb.toString());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return rows;
+    }
+}
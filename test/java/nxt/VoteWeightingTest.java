@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt;
+
+import nxt.AccountLedger.LedgerEvent;
+import nxt.VoteWeighting.MinBalanceModel;
+import nxt.VoteWeighting.VotingModel;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class VoteWeightingTest extends AbstractFakeBlockTest {
+
+    private static final long[] accountIds = new long[20];
+    private static long assetId;
+    private static long currencyId;
+    private static int firstHeight;
+
+    /**
+     * Push blocks changing the balances of the test accounts, including balances which drop to zero
+     */
+    @BeforeClass
+    public static void pushBlocks() {
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = random.nextLong();
+        }
+        assetId = random.nextLong();
+        currencyId = random.nextLong();
+        beginBlock();
+        for (long accountId : accountIds) {
+            Account.addOrGetAccount(accountId).addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ORDINARY_PAYMENT, 0,
+                    random.nextInt(2000));
+        }
+        commitBlock();
+        firstHeight = blockchain.getHeight();
+        pushBlocks(30, 3, block -> {
+            for (long accountId : accountIds) {
+                if (random.nextBoolean()) {
+                    continue;
+                }
+                Account account = Account.getAccount(accountId);
+                account.addToBalanceAndUnconfirmedBalanceNQT(LedgerEvent.ORDINARY_PAYMENT, 0,
+                        random.nextInt(3) == 0 ? -account.getBalanceNQT() / 2 : random.nextInt(500));
+                account.addToAssetAndUnconfirmedAssetBalanceQNT(LedgerEvent.ASSET_TRANSFER, 0, assetId,
+                        random.nextInt(3) == 0 ? -account.getAssetBalanceQNT(assetId) : random.nextInt(500));
+                account.addToCurrencyAndUnconfirmedCurrencyUnits(LedgerEvent.CURRENCY_TRANSFER, 0, currencyId,
+                        random.nextInt(3) == 0 ? -account.getCurrencyUnits(currencyId) : random.nextInt(500));
+            }
+        }, state -> {});
+    }
+
+    @Test
+    public void getManyAt() {
+        long[] ids = Arrays.copyOf(accountIds, accountIds.length + 1);
+        ids[accountIds.length] = random.nextLong();
+        for (int height = firstHeight - 1; height <= blockchain.getHeight(); height++) {
+            Map<Long, Long> balances = Account.getBalancesNQT(ids, height);
+            Map<Long, Long> assetBalances = Account.getAssetBalancesQNT(ids, assetId, height);
+            Map<Long, Long> currencyUnits = Account.getCurrencyUnits(ids, currencyId, height);
+            for (long id : ids) {
+                Account account = Account.getAccount(id, height);
+                Assert.assertEquals("Balance of " + id + " at height " + height,
+                        account == null ? null : account.getBalanceNQT(), balances.get(id));
+                Assert.assertEquals("Asset balance of " + id + " at height " + height,
+                        Account.getAssetBalanceQNT(id, assetId, height), (long)assetBalances.getOrDefault(id, 0L));
+                Assert.assertEquals("Currency units of " + id + " at height " + height,
+                        Account.getCurrencyUnits(id, currencyId, height), (long)currencyUnits.getOrDefault(id, 0L));
+            }
+        }
+    }
+
+    @Test
+    public void calcWeights() {
+        VoteWeighting[] voteWeightings = {
+                new VoteWeighting(VotingModel.ACCOUNT.getCode(), 0, 0, MinBalanceModel.NONE.getCode()),
+                new VoteWeighting(VotingModel.ACCOUNT.getCode(), 0, 1000, MinBalanceModel.NQT.getCode()),
+                new VoteWeighting(VotingModel.ACCOUNT.getCode(), assetId, 300, MinBalanceModel.ASSET.getCode()),
+                new VoteWeighting(VotingModel.ACCOUNT.getCode(), currencyId, 300, MinBalanceModel.CURRENCY.getCode()),
+                new VoteWeighting(VotingModel.NQT.getCode(), 0, 1000, MinBalanceModel.NQT.getCode()),
+                new VoteWeighting(VotingModel.ASSET.getCode(), assetId, 300, MinBalanceModel.ASSET.getCode()),
+                new VoteWeighting(VotingModel.CURRENCY.getCode(), currencyId, 300, MinBalanceModel.CURRENCY.getCode())
+        };
+        for (int height = firstHeight; height <= blockchain.getHeight(); height++) {
+            for (VoteWeighting voteWeighting : voteWeightings) {
+                VotingModel votingModel = voteWeighting.getVotingModel();
+                long[] weights = votingModel.calcWeights(voteWeighting, accountIds, height);
+                for (int i = 0; i < accountIds.length; i++) {
+                    Assert.assertEquals(votingModel + " " + voteWeighting.getMinBalanceModel() + " weight of " + accountIds[i]
+                                    + " at height " + height,
+                            votingModel.calcWeight(voteWeighting, accountIds[i], height), weights[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.db;
+
+import nxt.Db;
+
+import java.lang.reflect.Field;
+
+/**
+ * Full table scans of versioned tables, as done when a rollback or trim is not covered by the undo log
+ */
+public final class VersionedTables {
+
+    private VersionedTables() {} // never
+
+    public static void rollback(String table, int height, String... idColumns) {
+        VersionedEntityDbTable.rollback(Db.db, table, height, keyFactory(idColumns));
+    }
+
+    public static void trim(String table, int height, String... idColumns) {
+        VersionedEntityDbTable.trim(Db.db, table, height, keyFactory(idColumns));
+    }
+
+    /**
+     * Replace the undo log of a table with a new log, as after a node restart
+     */
+    public static void restartUndoLog(DerivedDbTable table) {
+        try {
+            Field field = EntityDbTable.class.getDeclaredField("undoLog");
+            field.setAccessible(true);
+            field.set(table, new UndoLog(Db.db));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static DbKey.Factory<Object> keyFactory(String... idColumns) {
+        if (idColumns.length == 1) {
+            return new DbKey.LongKeyFactory<Object>(idColumns[0]) {
+                @Override
+                public DbKey newKey(Object o) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+        return new DbKey.LinkKeyFactory<Object>(idColumns[0], idColumns[1]) {
+            @Override
+            public DbKey newKey(Object o) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
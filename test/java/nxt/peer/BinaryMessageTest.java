@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.peer;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.junit.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class BinaryMessageTest {
+
+    private static BinaryMessage.Value value(byte[] bytes) {
+        return new BinaryMessage.Value() {
+            @Override
+            ByteBuffer getBytes() {
+                return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            }
+
+            @Override
+            public String toJSONString() {
+                return "\"json\"";
+            }
+        };
+    }
+
+    @Test
+    public void encodeAndDecode() throws Exception {
+        JSONObject message = new JSONObject();
+        message.put("requestType", "processBlock");
+        message.put("height", 100L);
+        message.put("block", value(new byte[] {1, 2, 3}));
+        message.put("transactions", Arrays.asList(value(new byte[] {4}), value(new byte[0]), value(new byte[] {5, 6})));
+        JSONArray emptyList = new JSONArray();
+        message.put("emptyList", emptyList);
+        JSONObject decoded = BinaryMessage.decode(BinaryMessage.encode(message));
+        assertEquals(5, decoded.size());
+        assertEquals("processBlock", decoded.get("requestType"));
+        assertEquals(100L, decoded.get("height"));
+        assertEquals(emptyList, decoded.get("emptyList"));
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[])decoded.get("block"));
+        JSONArray transactions = (JSONArray)decoded.get("transactions");
+        assertEquals(3, transactions.size());
+        assertArrayEquals(new byte[] {4}, (byte[])transactions.get(0));
+        assertArrayEquals(new byte[0], (byte[])transactions.get(1));
+        assertArrayEquals(new byte[] {5, 6}, (byte[])transactions.get(2));
+    }
+
+    @Test
+    public void encodePreparedRequest() throws Exception {
+        JSONObject jsonRequest = new JSONObject();
+        jsonRequest.put("block", "json");
+        JSONObject binaryRequest = new JSONObject();
+        binaryRequest.put("block", value(new byte[] {7}));
+        JSONStreamAware request = BinaryMessage.prepareRequest(jsonRequest, binaryRequest);
+        JSONObject decoded = BinaryMessage.decode(BinaryMessage.encode(request));
+        assertEquals(1L, decoded.get("protocol"));
+        assertArrayEquals(new byte[] {7}, (byte[])decoded.get("block"));
+    }
+
+    @Test
+    public void encodeWithoutBinaryValues() throws Exception {
+        JSONObject message = new JSONObject();
+        message.put("requestType", "getInfo");
+        JSONObject decoded = BinaryMessage.decode(BinaryMessage.encode(message));
+        assertEquals(message, decoded);
+        assertFalse(decoded.containsKey("protocol"));
+    }
+
+    @Test
+    public void decodeInvalidLengths() {
+        byte[] envelope = "{}".getBytes();
+        assertInvalid(ByteBuffer.allocate(0).array());
+        assertInvalid(ByteBuffer.allocate(8).putInt(-1).putInt(0).array());
+        assertInvalid(ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE).putInt(0).array());
+        assertInvalid(ByteBuffer.allocate(4 + envelope.length).putInt(envelope.length).put(envelope).array());
+        assertInvalid(ByteBuffer.allocate(8 + envelope.length).putInt(envelope.length).put(envelope).putInt(Integer.MAX_VALUE).array());
+        assertInvalid(ByteBuffer.allocate(8 + envelope.length).putInt(envelope.length).put(envelope).putInt(-1).array());
+        assertInvalid(binaryValue(envelope, 3, (byte)0, 1, Integer.MAX_VALUE));
+        assertInvalid(binaryValue(envelope, 3, (byte)0, 1, -1));
+        assertInvalid(binaryValue(envelope, Integer.MAX_VALUE, (byte)0, 1, 0));
+        assertInvalid(binaryValue(envelope, 3, (byte)1, Integer.MAX_VALUE, 0));
+        assertInvalid(binaryValue(envelope, 3, (byte)1, -1, 0));
+        assertInvalid(binaryValue(envelope, 3, (byte)0, 2, 0));
+    }
+
+    @Test
+    public void decodeInvalidEnvelope() {
+        byte[] envelope = "[]".getBytes();
+        assertInvalid(ByteBuffer.allocate(8 + envelope.length).putInt(envelope.length).put(envelope).putInt(0).array());
+        byte[] message = ByteBuffer.allocate(9 + envelope.length).putInt(envelope.length).put(envelope).putInt(0).put((byte)0).array();
+        assertInvalid(message);
+    }
+
+    @Test
+    public void decodeExtraBytes() throws Exception {
+        JSONObject message = new JSONObject();
+        message.put("block", value(new byte[] {1}));
+        byte[] bytes = BinaryMessage.encode(message);
+        BinaryMessage.decode(bytes);
+        assertInvalid(Arrays.copyOf(bytes, bytes.length + 1));
+        assertInvalid(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    /**
+     * Create a message with one binary value
+     */
+    private static byte[] binaryValue(byte[] envelope, int keyLength, byte isList, int elementCount, int elementLength) {
+        ByteBuffer buf = ByteBuffer.allocate(4 + envelope.length + 4 + 4 + 3 + 1 + 4 + 4);
+        buf.putInt(envelope.length).put(envelope).putInt(1);
+        buf.putInt(keyLength).put("key".getBytes()).put(isList).putInt(elementCount).putInt(elementLength);
+        return buf.array();
+    }
+
+    private static void assertInvalid(byte[] bytes) {
+        try {
+            BinaryMessage.decode(bytes);
+            fail("Invalid message decoded: " + Arrays.toString(bytes));
+        } catch (ProtocolException expected) {
+        } catch (Exception e) {
+            fail("Unexpected exception " + e.toString());
+        }
+    }
+}
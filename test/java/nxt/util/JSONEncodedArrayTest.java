@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2013-2016 The Nxt Core Developers.
+ * Copyright © 2016-2017 Jelurida IP B.V.
+ *
+ * See the LICENSE.txt file at the top-level directory of this distribution
+ * for licensing information.
+ *
+ * Unless otherwise agreed in a custom licensing agreement with Jelurida B.V.,
+ * no part of the Nxt software, including this file, may be copied, modified,
+ * propagated, or distributed except according to the terms contained in the
+ * LICENSE.txt file.
+ *
+ * Removal or modification of this copyright notice is prohibited.
+ *
+ */
+
+package nxt.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+public class JSONEncodedArrayTest {
+
+    @Test
+    public void encodedArrayMatchesJSONArray() throws Exception {
+        JSONArray array = new JSONArray();
+        JSONEncodedArray encodedArray = new JSONEncodedArray();
+        for (int i = 0; i < 3; i++) {
+            JSONObject element = new JSONObject();
+            element.put("id", Long.toUnsignedString(-i));
+            element.put("height", i);
+            element.put("message", "line\n\"" + i + "\"");
+            array.add(element);
+            encodedArray.add(element);
+        }
+        Assert.assertEquals(3, encodedArray.size());
+        Assert.assertEquals(JSON.toJSONString(array), encodedArray.toJSONString());
+
+        JSONObject response = new JSONObject();
+        response.put("blocks", array);
+        response.put("requestProcessingTime", 1);
+        JSONObject encodedResponse = new JSONObject();
+        encodedResponse.put("blocks", encodedArray);
+        encodedResponse.put("requestProcessingTime", 1);
+        StringWriter writer = new StringWriter();
+        JSON.writeJSONString(encodedResponse, writer);
+        Assert.assertEquals(JSON.toJSONString(response), writer.toString());
+        Assert.assertEquals(JSON.toJSONString(response), JSON.toJSONString(encodedResponse));
+    }
+
+    @Test
+    public void emptyArray() {
+        Assert.assertEquals("[]", new JSONEncodedArray().toJSONString());
+    }
+}